@@ -5,31 +5,73 @@ import finance.mngmt.repository.*;
 import finance.mngmt.model.*;
 import finance.mngmt.exception.*;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class CLI {
     private final UserService userService;
     private final FinanceService financeService;
     private final StatisticsService statisticsService;
+    private final ResultCache resultCache;
+    private final AdminAnalyticsService adminAnalyticsService;
     private final AlertService alertService;
     private final FileStorage fileStorage;
     private final UserRepository userRepository;
+    private final Checkpointer checkpointer;
+    // Общая блокировка данных с фоновыми контрольными точками; CLI отпускает ее только на время ожидания ввода
+    private final ReentrantLock dataLock;
     private final Scanner scanner;
 
     public CLI() {
-        this.userRepository = new UserRepository();
-        this.fileStorage = new FileStorage();
+        this(new FileStorage(), System.in, new ReentrantLock());
+    }
+
+    CLI(FileStorage fileStorage, InputStream in, ReentrantLock dataLock) {
+        this.fileStorage = fileStorage;
+        this.dataLock = dataLock;
+        // Сколько кошельков держать в памяти: -Dfinance.cache.maxWallets, -Dfinance.cache.maxBytes (0 — без ограничения)
+        this.userRepository = new UserRepository(fileStorage.getWalletRepository(),
+                Integer.getInteger("finance.cache.maxWallets", 1000),
+                Long.getLong("finance.cache.maxBytes", 0L));
         this.alertService = new AlertService();
-        this.userService = new UserService(userRepository);
-        this.financeService = new FinanceService(userService, alertService);
-        this.statisticsService = new StatisticsService();
-        this.scanner = new Scanner(System.in);
+        // Администратор — пользователь, заданный -Dfinance.adminUser; если его еще нет,
+        // он создается обычной регистрацией с этим именем. Без параметра общая аналитика отключена
+        String adminUser = System.getProperty("finance.adminUser", "").trim();
+        this.userService = new UserService(userRepository, fileStorage.getJournal(),
+                adminUser.isEmpty() ? null : adminUser);
+        // Сколько результатов статистики и отчетов держать в кэше: -Dfinance.cache.maxReports (0 — без кэша)
+        this.resultCache = new ResultCache(Integer.getInteger("finance.cache.maxReports",
+                ResultCache.DEFAULT_MAX_ENTRIES));
+        this.financeService = new FinanceService(userService, alertService, fileStorage.getJournal(), resultCache);
+        this.statisticsService = new StatisticsService(resultCache);
+        this.adminAnalyticsService = new AdminAnalyticsService(userService, userRepository);
+        this.scanner = new Scanner(in);
 
         // Загружаем пользователей из файла
         loadUsers();
+
+        // Период фоновых контрольных точек: -Dfinance.checkpoint.intervalSeconds (0 — отключены)
+        this.checkpointer = new Checkpointer(fileStorage, userRepository, dataLock);
+        checkpointer.start(Long.getLong("finance.checkpoint.intervalSeconds", 30L) * 1000);
+    }
+
+    private String readLine() {
+        dataLock.unlock();
+        try {
+            return scanner.nextLine();
+        } finally {
+            dataLock.lock();
+        }
+    }
+
+    // Подтверждение тоже ждет ввода без блокировки данных
+    boolean confirm(String message) {
+        System.out.print(message + " (да/нет): ");
+        return CommandParser.isConfirmed(readLine());
     }
 
     private void loadUsers() {
@@ -48,6 +90,7 @@ public class CLI {
     }
 
     public void start() {
+        dataLock.lock();
         printWelcome();
 
         while (true) {
@@ -86,6 +129,7 @@ public class CLI {
         System.out.println("add_expense [сумма] [категория] [описание] - Добавить расход");
         System.out.println("add_category [название] - Добавить категорию");
         System.out.println("remove_category [название] - Удалить категорию");
+        System.out.println("remove_transaction [id] [id...] - Удалить транзакции (id из списка transactions)");
 
         System.out.println("\n--- БЮДЖЕТЫ ---");
         System.out.println("set_budget [категория] [лимит] - Установить бюджет");
@@ -103,12 +147,18 @@ public class CLI {
 
         System.out.println("\n--- ЭКСПОРТ/ИМПОРТ ---");
         System.out.println("export [имя_файла]      - Экспорт в CSV");
+        System.out.println("export_json [имя_файла] - Экспорт в JSON (с id, бюджетами и категориями)");
+        System.out.println("import_json [имя_файла] - Импорт из JSON");
+        System.out.println("export_new [csv|json]   - Дописать в CSV или JSON Lines только новые транзакции");
         System.out.println("import [имя_файла]      - Импорт из CSV");
 
         System.out.println("\n--- ПРОЧЕЕ ---");
         System.out.println("alerts                  - Показать оповещения");
         System.out.println("transfer [пользователь] [сумма] [описание] - Перевод денег");
         System.out.println("change_password         - Изменить пароль");
+        System.out.println("cache_stats             - Статистика кэша кошельков и отчетов");
+        System.out.println("admin_stats             - Общая аналитика по всем пользователям (администратор, -Dfinance.adminUser)");
+        System.out.println("checkpoint_stats        - Статистика контрольных точек");
         System.out.println("help                    - Показать эту справку");
         System.out.println("clear                   - Очистить экран");
     }
@@ -121,7 +171,7 @@ public class CLI {
         System.out.println("4. Справка");
         System.out.print("Выберите действие (1-4): ");
 
-        String choice = scanner.nextLine().trim();
+        String choice = readLine().trim();
 
         switch (choice) {
             case "1":
@@ -165,7 +215,7 @@ public class CLI {
         System.out.println("\nДополнительно: stats, category_stats, alerts, clear, help");
         System.out.print("\nВведите команду или номер: ");
 
-        String input = scanner.nextLine().trim();
+        String input = readLine().trim();
 
         // Обработка числового выбора
         if (input.matches("\\d+")) {
@@ -224,7 +274,7 @@ public class CLI {
                     break;
                 case 15:
                     userService.logout();
-                    saveUsers();
+                    checkpointer.checkpoint();
                     break;
                 default:
                     System.out.println("Неверный номер команды");
@@ -249,7 +299,7 @@ public class CLI {
                     break;
                 case "logout":
                     userService.logout();
-                    saveUsers();
+                    checkpointer.checkpoint();
                     break;
                 case "exit":
                     exit();
@@ -275,6 +325,9 @@ public class CLI {
                 case "remove_budget":
                     handleRemoveBudget(args);
                     break;
+                case "remove_transaction":
+                    handleRemoveTransaction(args);
+                    break;
                 case "balance":
                     showBalance();
                     break;
@@ -299,6 +352,15 @@ public class CLI {
                 case "export":
                     handleExport(args);
                     break;
+                case "export_json":
+                    handleExportJson(args);
+                    break;
+                case "import_json":
+                    handleImportJson(args);
+                    break;
+                case "export_new":
+                    handleExportNew(args);
+                    break;
                 case "import":
                     handleImport(args);
                     break;
@@ -311,6 +373,15 @@ public class CLI {
                 case "change_password":
                     changePassword();
                     break;
+                case "cache_stats":
+                    showCacheStats();
+                    break;
+                case "admin_stats":
+                    showAdminStats();
+                    break;
+                case "checkpoint_stats":
+                    showCheckpointStats();
+                    break;
                 case "help":
                     printHelp();
                     break;
@@ -330,10 +401,10 @@ public class CLI {
 
     private void handleLogin() {
         System.out.print("Имя пользователя: ");
-        String username = scanner.nextLine().trim();
+        String username = readLine().trim();
 
         System.out.print("Пароль: ");
-        String password = scanner.nextLine().trim();
+        String password = readLine().trim();
 
         userService.login(username, password);
     }
@@ -350,13 +421,13 @@ public class CLI {
 
     private void handleRegister() {
         System.out.print("Имя пользователя: ");
-        String username = scanner.nextLine().trim();
+        String username = readLine().trim();
 
         System.out.print("Пароль: ");
-        String password = scanner.nextLine().trim();
+        String password = readLine().trim();
 
         System.out.print("Подтвердите пароль: ");
-        String confirmPassword = scanner.nextLine().trim();
+        String confirmPassword = readLine().trim();
 
         userService.register(username, password, confirmPassword);
     }
@@ -375,13 +446,13 @@ public class CLI {
     private void addIncome() {
         try {
             System.out.print("Сумма дохода: ");
-            double amount = CommandParser.parseAmount(scanner.nextLine());
+            long amount = CommandParser.parseAmount(readLine());
 
             System.out.print("Категория: ");
-            String category = scanner.nextLine().trim();
+            String category = readLine().trim();
 
             System.out.print("Описание (необязательно): ");
-            String description = scanner.nextLine().trim();
+            String description = readLine().trim();
 
             financeService.addIncome(amount, category, description);
             Formatter.printSuccess("Доход добавлен");
@@ -398,7 +469,7 @@ public class CLI {
         }
 
         try {
-            double amount = CommandParser.parseAmount(argList.get(0));
+            long amount = CommandParser.parseAmount(argList.get(0));
             String category = argList.get(1);
             String description = argList.size() > 2 ? argList.get(2) : "";
 
@@ -412,13 +483,13 @@ public class CLI {
     private void addExpense() {
         try {
             System.out.print("Сумма расхода: ");
-            double amount = CommandParser.parseAmount(scanner.nextLine());
+            long amount = CommandParser.parseAmount(readLine());
 
             System.out.print("Категория: ");
-            String category = scanner.nextLine().trim();
+            String category = readLine().trim();
 
             System.out.print("Описание (необязательно): ");
-            String description = scanner.nextLine().trim();
+            String description = readLine().trim();
 
             financeService.addExpense(amount, category, description);
             Formatter.printSuccess("Расход добавлен");
@@ -435,7 +506,7 @@ public class CLI {
         }
 
         try {
-            double amount = CommandParser.parseAmount(argList.get(0));
+            long amount = CommandParser.parseAmount(argList.get(0));
             String category = argList.get(1);
             String description = argList.size() > 2 ? argList.get(2) : "";
 
@@ -448,7 +519,7 @@ public class CLI {
 
     private void addCategory() {
         System.out.print("Название категории: ");
-        String category = scanner.nextLine().trim();
+        String category = readLine().trim();
 
         financeService.addCategory(category);
         Formatter.printSuccess("Категория добавлена");
@@ -477,10 +548,10 @@ public class CLI {
     private void setBudget() {
         try {
             System.out.print("Категория: ");
-            String category = scanner.nextLine().trim();
+            String category = readLine().trim();
 
             System.out.print("Лимит бюджета: ");
-            double limit = CommandParser.parseAmount(scanner.nextLine());
+            long limit = CommandParser.parseAmount(readLine());
 
             financeService.setBudget(category, limit);
             Formatter.printSuccess("Бюджет установлен");
@@ -498,7 +569,7 @@ public class CLI {
 
         try {
             String category = argList.get(0);
-            double limit = CommandParser.parseAmount(argList.get(1));
+            long limit = CommandParser.parseAmount(argList.get(1));
 
             financeService.setBudget(category, limit);
             Formatter.printSuccess("Бюджет установлен");
@@ -510,10 +581,10 @@ public class CLI {
     private void editBudget() {
         try {
             System.out.print("Категория: ");
-            String category = scanner.nextLine().trim();
+            String category = readLine().trim();
 
             System.out.print("Новый лимит бюджета: ");
-            double newLimit = CommandParser.parseAmount(scanner.nextLine());
+            long newLimit = CommandParser.parseAmount(readLine());
 
             financeService.editBudget(category, newLimit);
             Formatter.printSuccess("Бюджет обновлен");
@@ -531,7 +602,7 @@ public class CLI {
 
         try {
             String category = argList.get(0);
-            double newLimit = CommandParser.parseAmount(argList.get(1));
+            long newLimit = CommandParser.parseAmount(argList.get(1));
 
             financeService.editBudget(category, newLimit);
             Formatter.printSuccess("Бюджет обновлен");
@@ -540,6 +611,22 @@ public class CLI {
         }
     }
 
+    private void handleRemoveTransaction(String args) {
+        List<String> ids = CommandParser.parseArguments(args);
+        if (ids.isEmpty()) {
+            System.out.println("Использование: remove_transaction [id] [id...]");
+            return;
+        }
+
+        if (!confirm("Удалить транзакции (" + ids.size() + ")?")) {
+            System.out.println("Удаление отменено");
+            return;
+        }
+
+        financeService.removeTransactions(new LinkedHashSet<>(ids));
+        Formatter.printSuccess("Транзакции удалены");
+    }
+
     private void handleRemoveBudget(String args) {
         if (args.trim().isEmpty()) {
             System.out.println("Использование: remove_budget [категория]");
@@ -598,10 +685,10 @@ public class CLI {
 
     private void showStatistics() {
         System.out.print("Начальная дата (дд.мм.гггг) или Enter для начала месяца: ");
-        String startStr = scanner.nextLine().trim();
+        String startStr = readLine().trim();
 
         System.out.print("Конечная дата (дд.мм.гггг) или Enter для сегодня: ");
-        String endStr = scanner.nextLine().trim();
+        String endStr = readLine().trim();
 
         LocalDate startDate;
         LocalDate endDate;
@@ -618,7 +705,7 @@ public class CLI {
             endDate = CommandParser.parseDate(endStr);
         }
 
-        Map<String, Object> stats = financeService.getStatistics(startDate, endDate);
+        PeriodStatistics stats = financeService.getStatistics(startDate, endDate);
 
         Formatter.printSection("СТАТИСТИКА ЗА ПЕРИОД");
         System.out.printf("Период: %s - %s%n",
@@ -626,26 +713,24 @@ public class CLI {
                 Formatter.formatDate(endDate));
 
         System.out.printf("\nОбщий доход: %s%n",
-                Formatter.formatCurrency((double) stats.get("totalIncome")));
+                Formatter.formatCurrency(stats.getTotalIncome()));
         System.out.printf("Общие расходы: %s%n",
-                Formatter.formatCurrency((double) stats.get("totalExpenses")));
+                Formatter.formatCurrency(stats.getTotalExpenses()));
         System.out.printf("Баланс: %s%n",
-                Formatter.formatCurrency((double) stats.get("balance")));
+                Formatter.formatCurrency(stats.getBalance()));
 
-        @SuppressWarnings("unchecked")
-        Map<String, Double> incomeByCategory = (Map<String, Double>) stats.get("incomeByCategory");
-        if (!incomeByCategory.isEmpty()) {
-            System.out.println("\nДоходы по категориям:");
-            incomeByCategory.forEach((category, amount) ->
-                    System.out.printf("  %-20s %s%n", category + ":", Formatter.formatCurrency(amount)));
-        }
+        printCategoryAmounts("\nДоходы по категориям:", stats.getIncomeByCategory());
+        printCategoryAmounts("\nРасходы по категориям:", stats.getExpensesByCategory());
+    }
 
-        @SuppressWarnings("unchecked")
-        Map<String, Double> expensesByCategory = (Map<String, Double>) stats.get("expensesByCategory");
-        if (!expensesByCategory.isEmpty()) {
-            System.out.println("\nРасходы по категориям:");
-            expensesByCategory.forEach((category, amount) ->
-                    System.out.printf("  %-20s %s%n", category + ":", Formatter.formatCurrency(amount)));
+    private static void printCategoryAmounts(String title, CategoryAmounts amounts) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        System.out.println(title);
+        for (int i = 0; i < amounts.size(); i++) {
+            System.out.printf("  %-20s %s%n", amounts.getName(i) + ":",
+                    Formatter.formatCurrency(amounts.getAmount(i)));
         }
     }
 
@@ -662,7 +747,7 @@ public class CLI {
             endDate = CommandParser.parseDate(argList.get(1));
         }
 
-        Map<String, Object> stats = financeService.getStatistics(startDate, endDate);
+        PeriodStatistics stats = financeService.getStatistics(startDate, endDate);
 
         Formatter.printSection("СТАТИСТИКА ЗА ПЕРИОД");
         System.out.printf("Период: %s - %s%n",
@@ -670,11 +755,11 @@ public class CLI {
                 Formatter.formatDate(endDate));
 
         System.out.printf("\nОбщий доход: %s%n",
-                Formatter.formatCurrency((double) stats.get("totalIncome")));
+                Formatter.formatCurrency(stats.getTotalIncome()));
         System.out.printf("Общие расходы: %s%n",
-                Formatter.formatCurrency((double) stats.get("totalExpenses")));
+                Formatter.formatCurrency(stats.getTotalExpenses()));
         System.out.printf("Баланс: %s%n",
-                Formatter.formatCurrency((double) stats.get("balance")));
+                Formatter.formatCurrency(stats.getBalance()));
     }
 
     private void handleStatsMonth(String args) {
@@ -696,17 +781,17 @@ public class CLI {
         LocalDate startDate = month.atDay(1);
         LocalDate endDate = month.atEndOfMonth();
 
-        Map<String, Object> stats = financeService.getStatistics(startDate, endDate);
+        PeriodStatistics stats = financeService.getStatistics(startDate, endDate);
 
         Formatter.printSection("СТАТИСТИКА ЗА МЕСЯЦ");
         System.out.printf("Месяц: %s%n", month.toString());
 
         System.out.printf("\nДоход за месяц: %s%n",
-                Formatter.formatCurrency((double) stats.get("totalIncome")));
+                Formatter.formatCurrency(stats.getTotalIncome()));
         System.out.printf("Расходы за месяц: %s%n",
-                Formatter.formatCurrency((double) stats.get("totalExpenses")));
+                Formatter.formatCurrency(stats.getTotalExpenses()));
         System.out.printf("Баланс за месяц: %s%n",
-                Formatter.formatCurrency((double) stats.get("balance")));
+                Formatter.formatCurrency(stats.getBalance()));
     }
 
     private void handleCategoryStats(String args) {
@@ -716,30 +801,25 @@ public class CLI {
         }
 
         List<String> categories = CommandParser.parseCategories(args);
-        Map<String, Map<String, Object>> stats = financeService.getCategoryStatistics(categories);
+        Map<String, CategoryStatistics> stats = financeService.getCategoryStatistics(categories);
 
         Formatter.printSection("СТАТИСТИКА ПО КАТЕГОРИЯМ");
 
-        for (Map.Entry<String, Map<String, Object>> entry : stats.entrySet()) {
-            String category = entry.getKey();
-            Map<String, Object> categoryStats = entry.getValue();
-
-            System.out.printf("\nКатегория: %s%n", category);
-            System.out.printf("  Доходы: %s%n",
-                    Formatter.formatCurrency((Double) categoryStats.get("income")));
-            System.out.printf("  Расходы: %s%n",
-                    Formatter.formatCurrency((Double) categoryStats.get("expenses")));
-            System.out.printf("  Баланс: %s%n",
-                    Formatter.formatCurrency((Double) categoryStats.get("balance")));
+        for (CategoryStatistics categoryStats : stats.values()) {
+            System.out.printf("\nКатегория: %s%n", categoryStats.getCategory());
+            System.out.printf("  Доходы: %s%n", Formatter.formatCurrency(categoryStats.getIncome()));
+            System.out.printf("  Расходы: %s%n", Formatter.formatCurrency(categoryStats.getExpenses()));
+            System.out.printf("  Баланс: %s%n", Formatter.formatCurrency(categoryStats.getBalance()));
 
-            if (categoryStats.containsKey("budgetLimit")) {
+            BudgetStatus budget = categoryStats.getBudget();
+            if (budget != null) {
                 System.out.printf("  Бюджет: %s (потрачено: %s, осталось: %s)%n",
-                        Formatter.formatCurrency((Double) categoryStats.get("budgetLimit")),
-                        Formatter.formatCurrency((Double) categoryStats.get("budgetSpent")),
-                        Formatter.formatCurrency((Double) categoryStats.get("budgetRemaining")));
+                        Formatter.formatCurrency(budget.getLimit()),
+                        Formatter.formatCurrency(budget.getSpent()),
+                        Formatter.formatCurrency(budget.getRemaining()));
 
                 // Проверяем, превышен ли бюджет
-                if ((Boolean) categoryStats.get("budgetExceeded")) {
+                if (budget.isExceeded()) {
                     System.out.println("  ⚠ ВНИМАНИЕ: Бюджет превышен!");
                 }
             }
@@ -757,22 +837,24 @@ public class CLI {
 
         Formatter.printSection("ВСЕ ТРАНЗАКЦИИ");
 
-        // Сортируем по дате (сначала новые)
+        // Сортируем по дате (сначала новые); список кошелька только для чтения, сортируется копия
+        transactions = new ArrayList<>(transactions);
         transactions.sort((t1, t2) -> t2.getDate().compareTo(t1.getDate()));
 
-        String[] headers = {"Дата", "Тип", "Категория", "Сумма", "Описание"};
-        String[][] data = new String[transactions.size()][5];
+        String[] headers = {"ID", "Дата", "Тип", "Категория", "Сумма", "Описание"};
+        String[][] data = new String[transactions.size()][6];
 
         for (int i = 0; i < transactions.size(); i++) {
             Transaction t = transactions.get(i);
-            data[i][0] = t.getFormattedDate();
-            data[i][1] = t.getType().getDescription();
-            data[i][2] = t.getCategory();
-            data[i][3] = Formatter.formatCurrency(t.getAmount());
-            data[i][4] = t.getDescription();
-
-            if (data[i][4].length() > 30) {
-                data[i][4] = data[i][4].substring(0, 27) + "...";
+            data[i][0] = t.getId();
+            data[i][1] = t.getFormattedDate();
+            data[i][2] = t.getType().getDescription();
+            data[i][3] = t.getCategory();
+            data[i][4] = Formatter.formatCents(t.getAmountCents());
+            data[i][5] = t.getDescription();
+
+            if (data[i][5].length() > 30) {
+                data[i][5] = data[i][5].substring(0, 27) + "...";
             }
         }
 
@@ -782,10 +864,10 @@ public class CLI {
 
     private void generateReport() {
         System.out.print("Начальная дата отчета (дд.мм.гггг) или Enter для начала года: ");
-        String startStr = scanner.nextLine().trim();
+        String startStr = readLine().trim();
 
         System.out.print("Конечная дата отчета (дд.мм.гггг) или Enter для сегодня: ");
-        String endStr = scanner.nextLine().trim();
+        String endStr = readLine().trim();
 
         LocalDate startDate;
         LocalDate endDate;
@@ -803,7 +885,7 @@ public class CLI {
         }
 
         User user = userService.getCurrentUser();
-        Map<String, Object> report = statisticsService.generateFullReport(
+        FinancialReport report = statisticsService.generateFullReport(
                 user.getWallet(), startDate, endDate);
 
         statisticsService.printReport(report);
@@ -823,7 +905,7 @@ public class CLI {
         }
 
         User user = userService.getCurrentUser();
-        Map<String, Object> report = statisticsService.generateFullReport(
+        FinancialReport report = statisticsService.generateFullReport(
                 user.getWallet(), startDate, endDate);
 
         statisticsService.printReport(report);
@@ -831,7 +913,7 @@ public class CLI {
 
     private void exportData() {
         System.out.print("Имя файла для экспорта (без .csv): ");
-        String filename = scanner.nextLine().trim();
+        String filename = readLine().trim();
 
         if (filename.isEmpty()) {
             filename = userService.getCurrentUser().getUsername() + "_export_" +
@@ -856,14 +938,14 @@ public class CLI {
 
     private void importData() {
         System.out.print("Имя файла для импорта (без .csv): ");
-        String filename = scanner.nextLine().trim();
+        String filename = readLine().trim();
 
         if (filename.isEmpty()) {
             System.out.println("Не указано имя файла");
             return;
         }
 
-        if (!CommandParser.confirm("Импортировать данные? Существующие данные не будут удалены.", scanner)) {
+        if (!confirm("Импортировать данные? Существующие данные не будут удалены.")) {
             System.out.println("Импорт отменен");
             return;
         }
@@ -878,7 +960,7 @@ public class CLI {
             return;
         }
 
-        if (!CommandParser.confirm("Импортировать данные? Существующие данные не будут удалены.", scanner)) {
+        if (!confirm("Импортировать данные? Существующие данные не будут удалены.")) {
             System.out.println("Импорт отменен");
             return;
         }
@@ -887,22 +969,56 @@ public class CLI {
         Formatter.printSuccess("Данные импортированы");
     }
 
+    private void handleExportNew(String args) {
+        String format = args.trim().toLowerCase();
+        if (!format.isEmpty() && !format.equals("csv") && !format.equals("json")) {
+            Formatter.printError("Формат: csv или json");
+            return;
+        }
+        fileStorage.exportIncremental(userService.getCurrentUser(), format.equals("json"));
+    }
+
+    private void handleExportJson(String args) {
+        String filename = args.trim();
+
+        if (filename.isEmpty()) {
+            filename = userService.getCurrentUser().getUsername() + "_export_" +
+                    LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        }
+
+        fileStorage.exportToJSON(userService.getCurrentUser(), filename);
+    }
+
+    private void handleImportJson(String args) {
+        if (args.trim().isEmpty()) {
+            System.out.println("Использование: import_json [имя_файла]");
+            return;
+        }
+
+        if (!confirm("Импортировать данные? Существующие данные не будут удалены.")) {
+            System.out.println("Импорт отменен");
+            return;
+        }
+
+        fileStorage.importFromJSON(userService.getCurrentUser(), args.trim());
+    }
+
     private void transferMoney() {
         System.out.print("Имя пользователя-получателя: ");
-        String toUsername = scanner.nextLine().trim();
+        String toUsername = readLine().trim();
 
         System.out.print("Сумма перевода: ");
-        double amount;
+        long amount;
         try {
-            amount = CommandParser.parseAmount(scanner.nextLine());
+            amount = CommandParser.parseAmount(readLine());
         } catch (Exception e) {
             throw new ValidationException(e.getMessage());
         }
 
         System.out.print("Описание перевода: ");
-        String description = scanner.nextLine().trim();
+        String description = readLine().trim();
 
-        if (!CommandParser.confirm("Подтвердить перевод?", scanner)) {
+        if (!confirm("Подтвердить перевод?")) {
             System.out.println("Перевод отменен");
             return;
         }
@@ -919,7 +1035,7 @@ public class CLI {
         }
 
         String toUsername = argList.get(0);
-        double amount;
+        long amount;
         try {
             amount = CommandParser.parseAmount(argList.get(1));
         } catch (Exception e) {
@@ -928,7 +1044,7 @@ public class CLI {
 
         String description = argList.size() > 2 ? argList.get(2) : "";
 
-        if (!CommandParser.confirm("Подтвердить перевод?", scanner)) {
+        if (!confirm("Подтвердить перевод?")) {
             System.out.println("Перевод отменен");
             return;
         }
@@ -939,25 +1055,84 @@ public class CLI {
 
     private void changePassword() {
         System.out.print("Текущий пароль: ");
-        String oldPassword = scanner.nextLine().trim();
+        String oldPassword = readLine().trim();
 
         System.out.print("Новый пароль: ");
-        String newPassword = scanner.nextLine().trim();
+        String newPassword = readLine().trim();
 
         System.out.print("Подтвердите новый пароль: ");
-        String confirmPassword = scanner.nextLine().trim();
+        String confirmPassword = readLine().trim();
 
         userService.changePassword(oldPassword, newPassword, confirmPassword);
         Formatter.printSuccess("Пароль изменен");
     }
 
+    private void showCheckpointStats() {
+        Formatter.printSection("КОНТРОЛЬНЫЕ ТОЧКИ");
+        System.out.printf("Версия снимка: %d, версия данных: %d (%s)%n",
+                checkpointer.getCheckpointVersion(), fileStorage.getJournal().getLastSeq(),
+                checkpointer.isDirty() ? "есть несохраненные изменения" : "сохранено");
+        System.out.printf("Контрольных точек: %d%n", checkpointer.getCheckpointCount());
+        System.out.printf("Последняя: %d мс, %d байт, кошельков: %d%n",
+                checkpointer.getLastDurationMillis(), checkpointer.getLastSizeBytes(),
+                checkpointer.getLastWalletCount());
+    }
+
+    private void showCacheStats() {
+        Formatter.printSection("КЭШ КОШЕЛЬКОВ");
+        System.out.printf("Пользователей: %d%n", userRepository.getUserCount());
+        System.out.printf("Кошельков в памяти: %d (~%d КБ)%n",
+                userRepository.getResidentWalletCount(), userRepository.getResidentWalletBytes() / 1024);
+        System.out.printf("Попадания: %d, промахи: %d, вытеснения: %d%n",
+                userRepository.getCacheHits(), userRepository.getCacheMisses(), userRepository.getCacheEvictions());
+
+        Formatter.printSection("КЭШ ОТЧЕТОВ");
+        System.out.printf("Записей: %d%n", resultCache.size());
+        System.out.printf("Попадания: %d, промахи: %d (%.1f%% попаданий), вытеснения: %d%n",
+                resultCache.getHits(), resultCache.getMisses(), resultCache.getHitRate(),
+                resultCache.getEvictions());
+    }
+
+    private void showAdminStats() {
+        AdminReport report = adminAnalyticsService.getAdminReport();
+
+        Formatter.printSection("ОБЩАЯ АНАЛИТИКА");
+        System.out.printf("Кошельков: %d%n", report.getWalletCount());
+        if (report.getFailedCount() > 0) {
+            System.out.printf("Не удалось прочитать: %d%n", report.getFailedCount());
+        }
+        System.out.printf("Общий доход: %s%n", Formatter.formatCurrency(report.getTotalIncome()));
+        System.out.printf("Общие расходы: %s%n", Formatter.formatCurrency(report.getTotalExpenses()));
+
+        printCategoryAmounts("\nРасходы по категориям:", report.getExpensesByCategory());
+
+        System.out.println("\nФинансовое здоровье пользователей:");
+        for (int i = 0; i < report.getHealthLevelCount(); i++) {
+            System.out.printf("  %-20s %d%n", report.getHealthLevel(i) + ":", report.getUsersAtHealthLevel(i));
+        }
+
+        if (!report.getMostExceededBudgets().isEmpty()) {
+            System.out.println("\nЧаще всего превышаемые бюджеты:");
+            for (AdminReport.BudgetOverrun overrun : report.getMostExceededBudgets()) {
+                System.out.printf("  %-20s превышен у %d из %d, сверх лимита %s%n", overrun.getCategory() + ":",
+                        overrun.getExceededCount(), overrun.getBudgetCount(),
+                        Formatter.formatCurrency(overrun.getOverspend()));
+            }
+        }
+    }
+
     private void clearScreen() {
         System.out.print("\033[H\033[2J");
         System.out.flush();
     }
 
     private void exit() {
+        // Текущая фоновая точка должна доработать, пока блокировка свободна
+        dataLock.unlock();
+        checkpointer.close();
+        dataLock.lock();
         saveUsers();
+        fileStorage.close();
         System.out.println("\nСпасибо за использование системы управления финансами!");
         System.out.println("До свидания!");
         scanner.close();
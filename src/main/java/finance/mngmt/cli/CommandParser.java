@@ -1,5 +1,6 @@
 package finance.mngmt.cli;
 
+import finance.mngmt.model.Money;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -64,19 +65,18 @@ public class CommandParser {
         }
     }
 
-    public static double parseAmount(String amountStr) {
+    // Сумма в копейках
+    public static long parseAmount(String amountStr) {
         try {
-            // Заменяем запятую на точку для корректного парсинга
-            amountStr = amountStr.replace(',', '.');
-            double amount = Double.parseDouble(amountStr);
+            // Разбор сразу в копейки (запятая и точка, округление до 2 знаков), без double
+            long cents = Money.parse(amountStr);
 
-            if (amount <= 0) {
+            if (cents <= 0) {
                 throw new IllegalArgumentException("Сумма должна быть положительной");
             }
 
-            // Округляем до 2 знаков после запятой
-            return Math.round(amount * 100.0) / 100.0;
-        } catch (NumberFormatException e) {
+            return cents;
+        } catch (NumberFormatException | ArithmeticException e) {
             throw new IllegalArgumentException("Неверный формат суммы");
         }
     }
@@ -98,9 +98,8 @@ public class CommandParser {
         return result;
     }
 
-    public static boolean confirm(String message, Scanner scanner) {
-        System.out.print(message + " (да/нет): ");
-        String response = scanner.nextLine().trim().toLowerCase();
+    public static boolean isConfirmed(String input) {
+        String response = input.trim().toLowerCase();
         return response.equals("да") || response.equals("д") || response.equals("y") || response.equals("yes");
     }
 }
@@ -1,23 +1,18 @@
 package finance.mngmt.cli;
 
-import java.text.NumberFormat;
+import finance.mngmt.model.Money;
 import java.time.format.DateTimeFormatter;
-import java.util.Locale;
 
 public class Formatter {
-    private static final NumberFormat CURRENCY_FORMATTER;
-    private static final DateTimeFormatter DATE_FORMATTER;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
 
-    static {
-        CURRENCY_FORMATTER = NumberFormat.getNumberInstance(Locale.US);
-        CURRENCY_FORMATTER.setMinimumFractionDigits(2);
-        CURRENCY_FORMATTER.setMaximumFractionDigits(2);
-
-        DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    public static String formatCurrency(double amount) {
+        return formatCents(Money.toCents(amount));
     }
 
-    public static String formatCurrency(double amount) {
-        return CURRENCY_FORMATTER.format(amount);
+    // 1,234.56 — как прежний NumberFormat с Locale.US
+    public static String formatCents(long cents) {
+        return Money.format(cents);
     }
 
     public static String formatDate(java.time.LocalDate date) {
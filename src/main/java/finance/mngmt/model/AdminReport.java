@@ -0,0 +1,68 @@
+package finance.mngmt.model;
+
+import java.util.Collections;
+import java.util.List;
+
+// Общая аналитика по всем кошелькам (AdminAnalyticsService): суммарные доходы и расходы,
+// расходы по категориям, распределение пользователей по норме сбережений и чаще всего
+// превышаемые бюджеты
+public final class AdminReport {
+    private final int walletCount;
+    private final int failedCount;
+    private final long totalIncomeCents;
+    private final long totalExpenseCents;
+    private final CategoryAmounts expensesByCategory;
+    private final String[] healthLevels;
+    private final int[] healthCounts;
+    private final List<BudgetOverrun> mostExceededBudgets;
+
+    public AdminReport(int walletCount, int failedCount, long totalIncomeCents, long totalExpenseCents,
+                       CategoryAmounts expensesByCategory, String[] healthLevels, int[] healthCounts,
+                       List<BudgetOverrun> mostExceededBudgets) {
+        this.walletCount = walletCount;
+        this.failedCount = failedCount;
+        this.totalIncomeCents = totalIncomeCents;
+        this.totalExpenseCents = totalExpenseCents;
+        this.expensesByCategory = expensesByCategory;
+        this.healthLevels = healthLevels.clone();
+        this.healthCounts = healthCounts.clone();
+        this.mostExceededBudgets = Collections.unmodifiableList(mostExceededBudgets);
+    }
+
+    public int getWalletCount() { return walletCount; }
+    // Кошельки, которые не удалось прочитать; в итоги они не вошли
+    public int getFailedCount() { return failedCount; }
+    public long getTotalIncomeCents() { return totalIncomeCents; }
+    public long getTotalExpenseCents() { return totalExpenseCents; }
+    public double getTotalIncome() { return Money.toDouble(totalIncomeCents); }
+    public double getTotalExpenses() { return Money.toDouble(totalExpenseCents); }
+    // По убыванию суммы
+    public CategoryAmounts getExpensesByCategory() { return expensesByCategory; }
+    // Уровни финансового здоровья от лучшего к худшему и число пользователей на каждом
+    public int getHealthLevelCount() { return healthLevels.length; }
+    public String getHealthLevel(int index) { return healthLevels[index]; }
+    public int getUsersAtHealthLevel(int index) { return healthCounts[index]; }
+    public List<BudgetOverrun> getMostExceededBudgets() { return mostExceededBudgets; }
+
+    public static final class BudgetOverrun {
+        private final String category;
+        private final int budgetCount;
+        private final int exceededCount;
+        private final long overspendCents;
+
+        public BudgetOverrun(String category, int budgetCount, int exceededCount, long overspendCents) {
+            this.category = category;
+            this.budgetCount = budgetCount;
+            this.exceededCount = exceededCount;
+            this.overspendCents = overspendCents;
+        }
+
+        public String getCategory() { return category; }
+        // Сколько пользователей задали бюджет для категории и у скольких он превышен
+        public int getBudgetCount() { return budgetCount; }
+        public int getExceededCount() { return exceededCount; }
+        // Суммарное превышение лимитов
+        public long getOverspendCents() { return overspendCents; }
+        public double getOverspend() { return Money.toDouble(overspendCents); }
+    }
+}
@@ -1,54 +1,75 @@
 package finance.mngmt.model;
 
 public class Budget {
+    public static final double DEFAULT_WARNING_THRESHOLD = 0.8; // предупреждение при 80%
+
     private String category;
-    private double limit;
-    private double currentSpending;
+    // Лимит и траты в копейках, см. Money
+    private long limitCents;
+    private long spentCents;
     private double warningThreshold; // порог предупреждения (например, 80%)
 
     public Budget(String category, double limit) {
-        this(category, limit, 0.8); // по умолчанию предупреждение при 80%
+        this(category, limit, DEFAULT_WARNING_THRESHOLD);
     }
 
     public Budget(String category, double limit, double warningThreshold) {
         this.category = category;
-        this.limit = limit;
-        this.currentSpending = 0;
+        this.limitCents = Money.toCents(limit);
+        this.spentCents = 0;
         this.warningThreshold = warningThreshold;
     }
 
     public double getRemaining() {
-        return limit - currentSpending;
+        return Money.toDouble(getRemainingCents());
+    }
+
+    public long getRemainingCents() {
+        return limitCents - spentCents;
     }
 
     public boolean isExceeded() {
-        return currentSpending > limit;
+        return spentCents > limitCents;
     }
 
     public boolean isWarning() {
-        return currentSpending >= limit * warningThreshold && !isExceeded();
+        return spentCents >= limitCents * warningThreshold && !isExceeded();
     }
 
     public void addSpending(double amount) {
-        this.currentSpending += amount;
+        addSpendingCents(Money.toCents(amount));
+    }
+
+    public void addSpendingCents(long amountCents) {
+        this.spentCents += amountCents;
+    }
+
+    // Откат траты при удалении транзакции. Траты до появления бюджета в нем не учтены,
+    // поэтому значение не опускается ниже нуля.
+    public void removeSpendingCents(long amountCents) {
+        this.spentCents = Math.max(0, spentCents - amountCents);
     }
 
     public void resetSpending() {
-        this.currentSpending = 0;
+        this.spentCents = 0;
     }
 
     // Геттеры и сеттеры
     public String getCategory() { return category; }
-    public double getLimit() { return limit; }
-    public void setLimit(double limit) { this.limit = limit; }
-    public double getCurrentSpending() { return currentSpending; }
-    public void setCurrentSpending(double currentSpending) { this.currentSpending = currentSpending; }
+    public double getLimit() { return Money.toDouble(limitCents); }
+    public long getLimitCents() { return limitCents; }
+    public void setLimit(double limit) { this.limitCents = Money.toCents(limit); }
+    public void setLimitCents(long limitCents) { this.limitCents = limitCents; }
+    public double getCurrentSpending() { return Money.toDouble(spentCents); }
+    public long getCurrentSpendingCents() { return spentCents; }
+    public void setCurrentSpending(double currentSpending) { this.spentCents = Money.toCents(currentSpending); }
+    public void setCurrentSpendingCents(long spentCents) { this.spentCents = spentCents; }
     public double getWarningThreshold() { return warningThreshold; }
     public void setWarningThreshold(double warningThreshold) { this.warningThreshold = warningThreshold; }
 
     @Override
     public String toString() {
         return String.format("Бюджет '%s': лимит=%.2f, потрачено=%.2f, осталось=%.2f",
-                category, limit, currentSpending, getRemaining());
+                category, getLimit(), getCurrentSpending(), getRemaining());
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package finance.mngmt.model;
+
+// Снимок бюджета для отчетов: значения на момент построения, не меняются вместе с Budget
+public final class BudgetStatus {
+    private final String category;
+    private final long limitCents;
+    private final long spentCents;
+    private final long periodSpentCents;
+    private final boolean exceeded;
+    private final boolean warning;
+
+    public BudgetStatus(Budget budget, long periodSpentCents) {
+        this.category = budget.getCategory();
+        this.limitCents = budget.getLimitCents();
+        this.spentCents = budget.getCurrentSpendingCents();
+        this.periodSpentCents = periodSpentCents;
+        this.exceeded = budget.isExceeded();
+        this.warning = budget.isWarning();
+    }
+
+    public String getCategory() { return category; }
+    public long getLimitCents() { return limitCents; }
+    public long getSpentCents() { return spentCents; }
+    public long getRemainingCents() { return limitCents - spentCents; }
+    // Расходы категории за период отчета (для статистики по категориям — за все время)
+    public long getPeriodSpentCents() { return periodSpentCents; }
+    public double getLimit() { return Money.toDouble(limitCents); }
+    public double getSpent() { return Money.toDouble(spentCents); }
+    public double getRemaining() { return Money.toDouble(limitCents - spentCents); }
+    public double getPeriodSpent() { return Money.toDouble(periodSpentCents); }
+    public boolean isExceeded() { return exceeded; }
+    public boolean isWarning() { return warning; }
+}
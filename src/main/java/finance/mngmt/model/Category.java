@@ -3,14 +3,25 @@ package finance.mngmt.model;
 import java.util.Objects;
 
 public class Category {
+    // Номер в словаре кошелька (см. CategoryDictionary); -1 у категории вне словаря
+    private final int id;
     private String name;
     private CategoryType type;
 
     public Category(String name, CategoryType type) {
+        this(-1, name, type);
+    }
+
+    Category(int id, String name, CategoryType type) {
+        this.id = id;
         this.name = name;
         this.type = type;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,60 @@
+package finance.mngmt.model;
+
+import java.util.Arrays;
+
+// Суммы по категориям для отчетов: параллельные массивы имен и сумм в копейках, без Map и Double.
+// Неизменяемый; порядок задает тот, кто собирает (по номеру категории или по убыванию суммы).
+public final class CategoryAmounts {
+    private static final CategoryAmounts EMPTY = new CategoryAmounts(new String[0], new long[0]);
+
+    private final String[] names;
+    private final long[] cents;
+
+    private CategoryAmounts(String[] names, long[] cents) {
+        this.names = names;
+        this.cents = cents;
+    }
+
+    public static CategoryAmounts empty() { return EMPTY; }
+
+    public int size() { return names.length; }
+    public boolean isEmpty() { return names.length == 0; }
+    public String getName(int index) { return names[index]; }
+    public long getCents(int index) { return cents[index]; }
+    public double getAmount(int index) { return Money.toDouble(cents[index]); }
+
+    // 0, если категории нет среди сумм
+    public long getCents(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return cents[i];
+            }
+        }
+        return 0;
+    }
+
+    public static class Builder {
+        private String[] names;
+        private long[] cents;
+        private int size;
+
+        public Builder(int capacity) {
+            this.names = new String[Math.max(capacity, 1)];
+            this.cents = new long[Math.max(capacity, 1)];
+        }
+
+        public Builder add(String name, long amountCents) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                cents = Arrays.copyOf(cents, size * 2);
+            }
+            names[size] = name;
+            cents[size++] = amountCents;
+            return this;
+        }
+
+        public CategoryAmounts build() {
+            return size == 0 ? EMPTY : new CategoryAmounts(Arrays.copyOf(names, size), Arrays.copyOf(cents, size));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package finance.mngmt.model;
+
+import java.util.*;
+
+// Словарь категорий кошелька: имя -> плотный номер (Category.getId()). Транзакции, бюджеты и индексы
+// кошелька держат номер или общий объект Category, а суммы по категориям копятся в массивах
+// по номеру. Номер удаленной категории не переиспользуется, поэтому такие массивы не устаревают.
+public class CategoryDictionary {
+    private final List<Category> byId = new ArrayList<>();
+    private final Map<String, Category> byName = new HashMap<>();
+
+    public Category get(String name) {
+        return byName.get(name);
+    }
+
+    // null, если категория удалена
+    public Category get(int id) {
+        return byId.get(id);
+    }
+
+    public int idOf(String name) {
+        Category category = byName.get(name);
+        return category != null ? category.getId() : -1;
+    }
+
+    public boolean contains(String name) {
+        return byName.containsKey(name);
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    // Верхняя граница номеров: длина массивов, проиндексированных номером категории
+    public int capacity() {
+        return byId.size();
+    }
+
+    // Представление только для чтения, без копирования
+    public Set<String> names() {
+        return Collections.unmodifiableSet(byName.keySet());
+    }
+
+    // Существующая категория или новая с заданным типом
+    Category intern(String name, CategoryType type) {
+        Category category = byName.get(name);
+        if (category == null) {
+            category = new Category(byId.size(), name, type);
+            byId.add(category);
+            byName.put(name, category);
+        }
+        return category;
+    }
+
+    void remove(String name) {
+        Category category = byName.remove(name);
+        if (category != null) {
+            byId.set(category.getId(), null);
+        }
+    }
+}
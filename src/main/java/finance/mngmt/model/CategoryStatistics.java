@@ -0,0 +1,26 @@
+package finance.mngmt.model;
+
+// Итоги одной категории за все время и состояние ее бюджета (FinanceService.getCategoryStatistics)
+public final class CategoryStatistics {
+    private final String category;
+    private final long incomeCents;
+    private final long expenseCents;
+    private final BudgetStatus budget;
+
+    public CategoryStatistics(String category, long incomeCents, long expenseCents, BudgetStatus budget) {
+        this.category = category;
+        this.incomeCents = incomeCents;
+        this.expenseCents = expenseCents;
+        this.budget = budget;
+    }
+
+    public String getCategory() { return category; }
+    public long getIncomeCents() { return incomeCents; }
+    public long getExpenseCents() { return expenseCents; }
+    public double getIncome() { return Money.toDouble(incomeCents); }
+    public double getExpenses() { return Money.toDouble(expenseCents); }
+    public double getBalance() { return Money.toDouble(incomeCents - expenseCents); }
+    public boolean hasBudget() { return budget != null; }
+    // null, если бюджет для категории не задан
+    public BudgetStatus getBudget() { return budget; }
+}
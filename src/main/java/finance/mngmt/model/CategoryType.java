@@ -2,5 +2,9 @@ package finance.mngmt.model;
 
 public enum CategoryType {
     INCOME,
-    EXPENSE
+    EXPENSE;
+
+    public static CategoryType of(TransactionType type) {
+        return type == TransactionType.INCOME ? INCOME : EXPENSE;
+    }
 }
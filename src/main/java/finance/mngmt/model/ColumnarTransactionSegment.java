@@ -0,0 +1,388 @@
+package finance.mngmt.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Сжатый блок транзакций в куче: параллельные массивы примитивов вместо объектов Transaction.
+// Строка — дата (epoch ms UTC) | сумма в копейках | тип | номер категории | вид id | id (число
+// TransactionIds или UUID старых данных двумя long) | смещение описания в общем массиве символов,
+// около 46 байт против 250+ у объекта с id-строкой и LocalDateTime. Строки упорядочены по дате; get(row) собирает Transaction только по требованию.
+// Блок неизменяем: удаление строки или отрезание старых строк дают новый блок.
+public class ColumnarTransactionSegment implements TransactionSegment {
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private static final byte ID_UUID = 0;
+    private static final byte ID_NUMERIC = 1;
+    private static final byte ID_TEXT = 2;
+
+    private final int size;
+    private final long[] epochMillis;
+    private final long[] amounts;
+    private final byte[] types;
+    private final int[] categoryIds;
+    private final String[] categories;
+    private final Map<String, Integer> categoryIdsByName;
+    private final byte[] idKinds;
+    // Числовой id лежит в idHigh
+    private final long[] idHigh;
+    private final long[] idLow;
+    // Только для id вида ID_TEXT; null, если таких нет
+    private final String[] stringIds;
+    private final char[] descriptions;
+    private final int[] descriptionOffsets;
+    private final long totalIncome;
+    private final long totalExpense;
+
+    private ColumnarTransactionSegment(Builder builder, int[] order) {
+        this.size = order.length;
+        this.epochMillis = new long[size];
+        this.amounts = new long[size];
+        this.types = new byte[size];
+        this.categoryIds = new int[size];
+        this.idKinds = new byte[size];
+        this.idHigh = new long[size];
+        this.idLow = new long[size];
+        this.stringIds = builder.hasStringIds ? new String[size] : null;
+        this.descriptionOffsets = new int[size + 1];
+        this.categories = builder.categories.toArray(new String[0]);
+        this.categoryIdsByName = new HashMap<>(builder.categoryIds);
+
+        char[] pool = new char[builder.descriptions.length()];
+        int poolSize = 0;
+        long income = 0;
+        long expense = 0;
+        for (int row = 0; row < size; row++) {
+            int from = order[row];
+            epochMillis[row] = builder.epochMillis[from];
+            amounts[row] = builder.amounts[from];
+            types[row] = builder.types[from];
+            categoryIds[row] = builder.categoryColumn[from];
+            idKinds[row] = builder.idKinds[from];
+            idHigh[row] = builder.idHigh[from];
+            idLow[row] = builder.idLow[from];
+            if (stringIds != null) {
+                stringIds[row] = builder.stringIds[from];
+            }
+
+            int start = builder.descriptionOffsets[from];
+            int length = builder.descriptionOffsets[from + 1] - start;
+            builder.descriptions.getChars(start, start + length, pool, poolSize);
+            descriptionOffsets[row] = poolSize;
+            poolSize += length;
+
+            if (types[row] == TransactionType.INCOME.ordinal()) {
+                income += amounts[row];
+            } else {
+                expense += amounts[row];
+            }
+        }
+        descriptionOffsets[size] = poolSize;
+        this.descriptions = pool;
+        this.totalIncome = income;
+        this.totalExpense = expense;
+    }
+
+    // Накопитель строк; build() упорядочивает их по дате (при равной дате — в порядке добавления)
+    public static class Builder {
+        private long[] epochMillis;
+        private long[] amounts;
+        private byte[] types;
+        private int[] categoryColumn;
+        private byte[] idKinds;
+        private long[] idHigh;
+        private long[] idLow;
+        private String[] stringIds;
+        private boolean hasStringIds;
+        private int[] descriptionOffsets;
+        private final StringBuilder descriptions = new StringBuilder();
+        private final List<String> categories = new ArrayList<>();
+        private final Map<String, Integer> categoryIds = new HashMap<>();
+        private int size;
+
+        public Builder(int capacity) {
+            capacity = Math.max(16, capacity);
+            epochMillis = new long[capacity];
+            amounts = new long[capacity];
+            types = new byte[capacity];
+            categoryColumn = new int[capacity];
+            idKinds = new byte[capacity];
+            idHigh = new long[capacity];
+            idLow = new long[capacity];
+            stringIds = new String[capacity];
+            descriptionOffsets = new int[capacity + 1];
+        }
+
+        public Builder append(Transaction transaction) {
+            if (transaction.hasNumericId()) {
+                return appendNumeric(transaction.getNumericId(), transaction.getType(), transaction.getAmountCents(),
+                        transaction.getCategory(), toEpochMilli(transaction.getDate()), transaction.getDescription());
+            }
+            return append(transaction.getId(), transaction.getType(), transaction.getAmountCents(),
+                    transaction.getCategory(), toEpochMilli(transaction.getDate()), transaction.getDescription());
+        }
+
+        public Builder append(String id, TransactionType type, long amountCents, String category,
+                              long epochMilli, String description) {
+            long numericId = TransactionIds.parse(id);
+            if (numericId >= 0) {
+                return appendNumeric(numericId, type, amountCents, category, epochMilli, description);
+            }
+            UUID uuid = parseUuid(id);
+            if (uuid != null) {
+                return appendUuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                        type, amountCents, category, epochMilli, description);
+            }
+            int row = appendRow(type, amountCents, category, epochMilli, description);
+            idKinds[row] = ID_TEXT;
+            stringIds[row] = id;
+            hasStringIds = true;
+            return this;
+        }
+
+        // id — значение из TransactionIds
+        public Builder appendNumeric(long id, TransactionType type, long amountCents, String category,
+                                     long epochMilli, String description) {
+            int row = appendRow(type, amountCents, category, epochMilli, description);
+            idKinds[row] = ID_NUMERIC;
+            idHigh[row] = id;
+            return this;
+        }
+
+        // Для чтения снимка: UUID приходит уже двумя long, строка id не создается
+        public Builder appendUuid(long high, long low, TransactionType type, long amountCents, String category,
+                                  long epochMilli, String description) {
+            int row = appendRow(type, amountCents, category, epochMilli, description);
+            idKinds[row] = ID_UUID;
+            idHigh[row] = high;
+            idLow[row] = low;
+            return this;
+        }
+
+        // Копирует строку другого блока без сборки объекта
+        public Builder append(ColumnarTransactionSegment source, int row) {
+            int to = appendRow(source.getType(row), source.amounts[row],
+                    source.categories[source.categoryIds[row]], source.epochMillis[row], "");
+            idKinds[to] = source.idKinds[row];
+            idHigh[to] = source.idHigh[row];
+            idLow[to] = source.idLow[row];
+            if (source.stringIds != null && source.stringIds[row] != null) {
+                stringIds[to] = source.stringIds[row];
+                hasStringIds = true;
+            }
+            descriptions.append(source.descriptions, source.descriptionOffsets[row],
+                    source.descriptionOffsets[row + 1] - source.descriptionOffsets[row]);
+            descriptionOffsets[to + 1] = descriptions.length();
+            return this;
+        }
+
+        private int appendRow(TransactionType type, long amountCents, String category,
+                              long epochMilli, String description) {
+            if (size == epochMillis.length) {
+                grow();
+            }
+            int row = size++;
+            epochMillis[row] = epochMilli;
+            amounts[row] = amountCents;
+            types[row] = (byte) type.ordinal();
+            Integer categoryId = categoryIds.get(category);
+            if (categoryId == null) {
+                categoryId = categories.size();
+                categories.add(category);
+                categoryIds.put(category, categoryId);
+            }
+            categoryColumn[row] = categoryId;
+            descriptions.append(description);
+            descriptionOffsets[row + 1] = descriptions.length();
+            return row;
+        }
+
+        private void grow() {
+            int capacity = epochMillis.length * 2;
+            epochMillis = Arrays.copyOf(epochMillis, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            types = Arrays.copyOf(types, capacity);
+            categoryColumn = Arrays.copyOf(categoryColumn, capacity);
+            idKinds = Arrays.copyOf(idKinds, capacity);
+            idHigh = Arrays.copyOf(idHigh, capacity);
+            idLow = Arrays.copyOf(idLow, capacity);
+            stringIds = Arrays.copyOf(stringIds, capacity);
+            descriptionOffsets = Arrays.copyOf(descriptionOffsets, capacity + 1);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public ColumnarTransactionSegment build() {
+            int[] order = new int[size];
+            boolean sorted = true;
+            for (int row = 0; row < size; row++) {
+                order[row] = row;
+                sorted &= row == 0 || epochMillis[row - 1] <= epochMillis[row];
+            }
+            if (!sorted) {
+                // Сортировка объектов устойчива, равные даты сохраняют порядок добавления
+                Integer[] boxed = new Integer[size];
+                for (int row = 0; row < size; row++) {
+                    boxed[row] = row;
+                }
+                Arrays.sort(boxed, Comparator.comparingLong(row -> epochMillis[row]));
+                for (int row = 0; row < size; row++) {
+                    order[row] = boxed[row];
+                }
+            }
+            return new ColumnarTransactionSegment(this, order);
+        }
+    }
+
+    // Тот же блок без отмеченных строк
+    public ColumnarTransactionSegment without(BitSet removedRows) {
+        Builder builder = new Builder(size - removedRows.cardinality());
+        for (int row = removedRows.nextClearBit(0); row < size; row = removedRows.nextClearBit(row + 1)) {
+            builder.append(this, row);
+        }
+        return builder.build();
+    }
+
+    // Строки начиная с firstRow (более старые отрезаются)
+    public ColumnarTransactionSegment from(int firstRow) {
+        Builder builder = new Builder(size - firstRow);
+        for (int row = firstRow; row < size; row++) {
+            builder.append(this, row);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getEpochMilli(int row) {
+        return epochMillis[row];
+    }
+
+    @Override
+    public long getAmountCents(int row) {
+        return amounts[row];
+    }
+
+    @Override
+    public TransactionType getType(int row) {
+        return TYPES[types[row]];
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        return categoryIds[row];
+    }
+
+    @Override
+    public int findCategory(String category) {
+        Integer id = categoryIdsByName.get(category);
+        return id != null ? id : -1;
+    }
+
+    @Override
+    public String getCategoryName(int categoryId) {
+        return categories[categoryId];
+    }
+
+    @Override
+    public long getNumericId(int row) {
+        return idKinds[row] == ID_NUMERIC ? idHigh[row] : -1;
+    }
+
+    @Override
+    public String getId(int row) {
+        if (idKinds[row] == ID_NUMERIC) {
+            return TransactionIds.format(idHigh[row]);
+        }
+        if (idKinds[row] == ID_TEXT) {
+            return stringIds[row];
+        }
+        return new UUID(idHigh[row], idLow[row]).toString();
+    }
+
+    public String getDescription(int row) {
+        return new String(descriptions, descriptionOffsets[row], descriptionOffsets[row + 1] - descriptionOffsets[row]);
+    }
+
+    @Override
+    public int indexOf(String transactionId) {
+        long numericId = TransactionIds.parse(transactionId);
+        if (numericId >= 0) {
+            for (int row = 0; row < size; row++) {
+                if (idHigh[row] == numericId && idKinds[row] == ID_NUMERIC) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        UUID uuid = parseUuid(transactionId);
+        if (uuid != null) {
+            long high = uuid.getMostSignificantBits();
+            long low = uuid.getLeastSignificantBits();
+            for (int row = 0; row < size; row++) {
+                if (idLow[row] == low && idHigh[row] == high && idKinds[row] == ID_UUID) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        if (stringIds != null) {
+            for (int row = 0; row < size; row++) {
+                if (transactionId.equals(stringIds[row])) {
+                    return row;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getTotalCents(TransactionType type) {
+        return type == TransactionType.INCOME ? totalIncome : totalExpense;
+    }
+
+    @Override
+    public long getMaxEpochMilli() {
+        return size == 0 ? Long.MIN_VALUE : epochMillis[size - 1];
+    }
+
+    @Override
+    public Transaction get(int row) {
+        if (idKinds[row] == ID_NUMERIC) {
+            return Transaction.ofCents(idHigh[row], amounts[row], getType(row), categories[categoryIds[row]],
+                    fromEpochMilli(epochMillis[row]), getDescription(row));
+        }
+        return Transaction.ofCents(getId(row), amounts[row], getType(row), categories[categoryIds[row]],
+                fromEpochMilli(epochMillis[row]), getDescription(row));
+    }
+
+    // null, если id не UUID в канонической записи (иначе при обратном преобразовании получится другая строка)
+    private static UUID parseUuid(String id) {
+        if (id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static long toEpochMilli(LocalDateTime date) {
+        return date.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromEpochMilli(long epochMilli) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMilli, 1000L),
+                (int) Math.floorMod(epochMilli, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,91 @@
+package finance.mngmt.model;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+// Полный отчет (StatisticsService.generateFullReport): итоги кошелька, статистика за период,
+// бюджеты и анализ. Неизменяемый; печать и экспорт читают поля напрямую, без приведения типов.
+public final class FinancialReport {
+    private final String owner;
+    private final LocalDateTime generatedAt;
+    private final long balanceCents;
+    private final long totalIncomeCents;
+    private final long totalExpenseCents;
+    private final PeriodStatistics period;
+    private final List<BudgetStatus> budgets;
+    private final Analysis analysis;
+
+    public FinancialReport(String owner, LocalDateTime generatedAt, long totalIncomeCents, long totalExpenseCents,
+                           PeriodStatistics period, List<BudgetStatus> budgets, Analysis analysis) {
+        this.owner = owner;
+        this.generatedAt = generatedAt;
+        this.balanceCents = totalIncomeCents - totalExpenseCents;
+        this.totalIncomeCents = totalIncomeCents;
+        this.totalExpenseCents = totalExpenseCents;
+        this.period = period;
+        this.budgets = Collections.unmodifiableList(budgets);
+        this.analysis = analysis;
+    }
+
+    private FinancialReport(FinancialReport report, LocalDateTime generatedAt) {
+        this.owner = report.owner;
+        this.generatedAt = generatedAt;
+        this.balanceCents = report.balanceCents;
+        this.totalIncomeCents = report.totalIncomeCents;
+        this.totalExpenseCents = report.totalExpenseCents;
+        this.period = report.period;
+        this.budgets = report.budgets;
+        this.analysis = report.analysis;
+    }
+
+    // Тот же отчет с другим временем формирования; остальные части общие
+    public FinancialReport withGeneratedAt(LocalDateTime generatedAt) {
+        return new FinancialReport(this, generatedAt);
+    }
+
+    public String getOwner() { return owner; }
+    public LocalDateTime getGeneratedAt() { return generatedAt; }
+    public long getBalanceCents() { return balanceCents; }
+    public long getTotalIncomeCents() { return totalIncomeCents; }
+    public long getTotalExpenseCents() { return totalExpenseCents; }
+    public double getCurrentBalance() { return Money.toDouble(balanceCents); }
+    public double getTotalIncome() { return Money.toDouble(totalIncomeCents); }
+    public double getTotalExpenses() { return Money.toDouble(totalExpenseCents); }
+    public PeriodStatistics getPeriod() { return period; }
+    public List<BudgetStatus> getBudgets() { return budgets; }
+    public Analysis getAnalysis() { return analysis; }
+
+    public static final class Analysis {
+        private final double avgExpense;
+        private final double savingsRate;
+        private final String financialHealth;
+        private final CategoryAmounts topExpenseCategories;
+        private final CategoryAmounts smallestExpenses;
+        private final CategoryAmounts largestExpensesByCategory;
+        private final List<Transaction> largestExpenses;
+
+        public Analysis(double avgExpense, double savingsRate, String financialHealth,
+                        CategoryAmounts topExpenseCategories, CategoryAmounts smallestExpenses,
+                        CategoryAmounts largestExpensesByCategory, List<Transaction> largestExpenses) {
+            this.avgExpense = avgExpense;
+            this.savingsRate = savingsRate;
+            this.financialHealth = financialHealth;
+            this.topExpenseCategories = topExpenseCategories;
+            this.smallestExpenses = smallestExpenses;
+            this.largestExpensesByCategory = largestExpensesByCategory;
+            this.largestExpenses = Collections.unmodifiableList(largestExpenses);
+        }
+
+        // Средний расход за период в расчете на одну транзакцию расхода
+        public double getAvgExpense() { return avgExpense; }
+        public double getSavingsRate() { return savingsRate; }
+        public String getFinancialHealth() { return financialHealth; }
+        // По убыванию суммы
+        public CategoryAmounts getTopExpenseCategories() { return topExpenseCategories; }
+        // Самый мелкий и самый крупный расход за период в тех же категориях и том же порядке
+        public CategoryAmounts getSmallestExpenses() { return smallestExpenses; }
+        public CategoryAmounts getLargestExpensesByCategory() { return largestExpensesByCategory; }
+        public List<Transaction> getLargestExpenses() { return largestExpenses; }
+    }
+}
@@ -0,0 +1,129 @@
+package finance.mngmt.model;
+
+// Денежные суммы хранятся целым числом копеек (long): сложение точное, без накопления
+// погрешности double. На границах (ввод, вывод, старые форматы файлов) — перевод из/в double.
+public final class Money {
+    public static final long CENTS_PER_UNIT = 100;
+
+    // Больше 16 знаков целой части в long копеек не помещается с запасом
+    private static final int MAX_INTEGER_DIGITS = 16;
+
+    private Money() {
+    }
+
+    // Округление до копейки (половина — от нуля)
+    public static long toCents(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount) || Math.abs(amount) >= 1e16) {
+            throw new ArithmeticException("Сумма вне допустимого диапазона: " + amount);
+        }
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    // "1234", "1234,5", "-0.07", "12.345" (округляется до 12.35). Десятичная запись разбирается
+    // без double; прочие формы, которые понимает Double.parseDouble (1e3), — через него.
+    public static long parse(String text) {
+        String s = text.trim();
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int integerDigits = 0;
+        while (i < length && isDigit(s.charAt(i))) {
+            units = units * 10 + (s.charAt(i++) - '0');
+            if (++integerDigits > MAX_INTEGER_DIGITS) {
+                throw new NumberFormatException("Слишком большая сумма: " + text);
+            }
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < length && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+            i++;
+            while (i < length && isDigit(s.charAt(i))) {
+                int digit = s.charAt(i++) - '0';
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + digit;
+                } else if (fractionDigits == 2) {
+                    roundUp = digit >= 5;
+                }
+                fractionDigits++;
+            }
+        }
+
+        if (i != length || (integerDigits == 0 && fractionDigits == 0)) {
+            return toCents(parseOther(s.replace(',', '.'), text));
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long cents = units * CENTS_PER_UNIT + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    private static double parseOther(String s, String text) {
+        double value = Double.parseDouble(s);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new NumberFormatException("Неверная сумма: " + text);
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Без разделителей групп: -1234.56 (как в CSV и JSON)
+    public static void appendPlain(StringBuilder out, long cents, char decimalSeparator) {
+        appendDigits(out, cents, (char) 0, decimalSeparator);
+    }
+
+    // С разделителями групп: -1,234.56
+    public static void appendGrouped(StringBuilder out, long cents, char groupSeparator, char decimalSeparator) {
+        appendDigits(out, cents, groupSeparator, decimalSeparator);
+    }
+
+    public static String format(long cents) {
+        StringBuilder out = new StringBuilder(24);
+        appendGrouped(out, cents, ',', '.');
+        return out.toString();
+    }
+
+    // Цифры пишутся справа налево в небольшой char[], без NumberFormat и промежуточных строк
+    private static void appendDigits(StringBuilder out, long cents, char groupSeparator, char decimalSeparator) {
+        char[] buffer = new char[32];
+        int position = buffer.length;
+        // Long.MIN_VALUE по модулю не помещается в long, поэтому цифры берутся из отрицательного числа
+        long value = cents > 0 ? -cents : cents;
+
+        buffer[--position] = (char) ('0' - value % 10);
+        value /= 10;
+        buffer[--position] = (char) ('0' - value % 10);
+        value /= 10;
+        buffer[--position] = decimalSeparator;
+
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % 3 == 0 && groupSeparator != 0) {
+                buffer[--position] = groupSeparator;
+            }
+            buffer[--position] = (char) ('0' - value % 10);
+            value /= 10;
+            digits++;
+        } while (value != 0);
+
+        if (cents < 0) {
+            buffer[--position] = '-';
+        }
+        out.append(buffer, position, buffer.length - position);
+    }
+}
@@ -0,0 +1,154 @@
+package finance.mngmt.model;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Заранее сложенные суммы кошелька по дням, месяцам и годам: в каждой корзине — сумма и число
+// транзакций по ячейкам [номер категории * 2 + тип]. Корзины обновляются при каждом изменении
+// кошелька, поэтому сумма за период складывается из нескольких корзин, а не из всех транзакций.
+// Ключи: день — номер дня от 1970-01-01 (UTC, как даты сегментов), месяц — год * 12 + (месяц - 1), год.
+class PeriodRollups {
+    private final NavigableMap<Long, Bucket> days = new TreeMap<>();
+    private final NavigableMap<Long, Bucket> months = new TreeMap<>();
+    private final NavigableMap<Long, Bucket> years = new TreeMap<>();
+
+    private static class Bucket {
+        long[] amounts = new long[0];
+        int[] counts = new int[0];
+        int size; // транзакций в корзине; пустая корзина удаляется
+
+        void add(int cell, long amount, int count) {
+            if (cell >= amounts.length) {
+                int length = Math.max(cell + 2, amounts.length * 2);
+                amounts = Arrays.copyOf(amounts, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+            amounts[cell] += amount;
+            counts[cell] += count;
+            size += count;
+        }
+    }
+
+    void add(LocalDate date, int categoryId, TransactionType type, long amount, int count) {
+        int cell = categoryId * 2 + type.ordinal();
+        add(days, date.toEpochDay(), cell, amount, count);
+        add(months, monthKey(date), cell, amount, count);
+        add(years, date.getYear(), cell, amount, count);
+    }
+
+    // Строки сегмента, кроме удаленных (sign = 1 — подключение, -1 — отключение). Строки
+    // отсортированы по дате, поэтому суммы копятся в массиве по номеру категории сегмента
+    // и сбрасываются в корзины один раз на каждый день
+    void addSegment(TransactionSegment segment, Category[] local, BitSet deleted, int sign) {
+        long[] amounts = new long[local.length * 2];
+        int[] counts = new int[local.length * 2];
+        long day = 0;
+        for (int row = 0; row < segment.size(); row++) {
+            if (deleted != null && deleted.get(row)) {
+                continue;
+            }
+            long rowDay = Math.floorDiv(segment.getEpochMilli(row), 86_400_000L);
+            if (rowDay != day) {
+                flush(day, local, amounts, counts, sign);
+            }
+            day = rowDay;
+            int cell = segment.getCategoryId(row) * 2 + segment.getType(row).ordinal();
+            amounts[cell] += segment.getAmountCents(row);
+            counts[cell]++;
+        }
+        flush(day, local, amounts, counts, sign);
+    }
+
+    private void flush(long day, Category[] local, long[] amounts, int[] counts, int sign) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        for (int cell = 0; cell < counts.length; cell++) {
+            if (counts[cell] > 0) {
+                int walletCell = local[cell / 2].getId() * 2 + cell % 2;
+                add(days, day, walletCell, sign * amounts[cell], sign * counts[cell]);
+                add(months, monthKey(date), walletCell, sign * amounts[cell], sign * counts[cell]);
+                add(years, date.getYear(), walletCell, sign * amounts[cell], sign * counts[cell]);
+                amounts[cell] = 0;
+                counts[cell] = 0;
+            }
+        }
+    }
+
+    private static void add(NavigableMap<Long, Bucket> level, long key, int cell, long amount, int count) {
+        Bucket bucket = level.computeIfAbsent(key, k -> new Bucket());
+        bucket.add(cell, amount, count);
+        if (bucket.size == 0) {
+            level.remove(key);
+        }
+    }
+
+    // Суммы за дни с start по end включительно: неполные месяцы по краям — из дневных корзин,
+    // полные месяцы вне полных лет — из месячных, остальное — из годовых
+    void collect(LocalDate start, LocalDate end, PeriodTotals target) {
+        if (start.isAfter(end)) {
+            return;
+        }
+        long firstMonth = start.getDayOfMonth() == 1 ? monthKey(start) : monthKey(start) + 1;
+        long lastMonth = end.getDayOfMonth() == end.lengthOfMonth() ? monthKey(end) : monthKey(end) - 1;
+        if (firstMonth > lastMonth) {
+            collect(days, start.toEpochDay(), end.toEpochDay(), target);
+            return;
+        }
+        collect(days, start.toEpochDay(), monthStart(firstMonth).toEpochDay() - 1, target);
+        collect(days, monthEnd(lastMonth).toEpochDay() + 1, end.toEpochDay(), target);
+
+        long firstYear = Math.floorMod(firstMonth, 12) == 0
+                ? Math.floorDiv(firstMonth, 12) : Math.floorDiv(firstMonth, 12) + 1;
+        long lastYear = Math.floorMod(lastMonth, 12) == 11
+                ? Math.floorDiv(lastMonth, 12) : Math.floorDiv(lastMonth, 12) - 1;
+        if (firstYear > lastYear) {
+            collect(months, firstMonth, lastMonth, target);
+            return;
+        }
+        collect(months, firstMonth, firstYear * 12 - 1, target);
+        collect(months, lastYear * 12 + 12, lastMonth, target);
+        collect(years, firstYear, lastYear, target);
+    }
+
+    private static void collect(NavigableMap<Long, Bucket> level, long from, long to, PeriodTotals target) {
+        if (from > to) {
+            return;
+        }
+        for (Bucket bucket : level.subMap(from, true, to, true).values()) {
+            target.add(bucket.amounts, bucket.counts);
+        }
+    }
+
+    private static long monthKey(LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue() - 1;
+    }
+
+    private static LocalDate monthStart(long monthKey) {
+        return LocalDate.of((int) Math.floorDiv(monthKey, 12), Math.floorMod(monthKey, 12) + 1, 1);
+    }
+
+    private static LocalDate monthEnd(long monthKey) {
+        LocalDate start = monthStart(monthKey);
+        return start.withDayOfMonth(start.lengthOfMonth());
+    }
+
+    // Для проверки накопленных корзин (Wallet.verifyTotals)
+    boolean sameAs(PeriodRollups other) {
+        return same(days, other.days) && same(months, other.months) && same(years, other.years);
+    }
+
+    private static boolean same(NavigableMap<Long, Bucket> a, NavigableMap<Long, Bucket> b) {
+        if (!a.keySet().equals(b.keySet())) {
+            return false;
+        }
+        for (Map.Entry<Long, Bucket> entry : a.entrySet()) {
+            Bucket x = entry.getValue();
+            Bucket y = b.get(entry.getKey());
+            int length = Math.max(x.amounts.length, y.amounts.length);
+            if (!Arrays.equals(Arrays.copyOf(x.amounts, length), Arrays.copyOf(y.amounts, length))
+                    || !Arrays.equals(Arrays.copyOf(x.counts, length), Arrays.copyOf(y.counts, length))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
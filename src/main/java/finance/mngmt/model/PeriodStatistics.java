@@ -0,0 +1,43 @@
+package finance.mngmt.model;
+
+import java.time.LocalDate;
+
+// Статистика за период (FinanceService.getStatistics): итоги в копейках и суммы по категориям
+public final class PeriodStatistics {
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final long incomeCents;
+    private final long expenseCents;
+    private final int transactionCount;
+    private final CategoryAmounts incomeByCategory;
+    private final CategoryAmounts expensesByCategory;
+
+    public PeriodStatistics(LocalDate startDate, LocalDate endDate, long incomeCents, long expenseCents,
+                            int transactionCount, CategoryAmounts incomeByCategory,
+                            CategoryAmounts expensesByCategory) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.incomeCents = incomeCents;
+        this.expenseCents = expenseCents;
+        this.transactionCount = transactionCount;
+        this.incomeByCategory = incomeByCategory;
+        this.expensesByCategory = expensesByCategory;
+    }
+
+    public LocalDate getStartDate() { return startDate; }
+    public LocalDate getEndDate() { return endDate; }
+    public long getIncomeCents() { return incomeCents; }
+    public long getExpenseCents() { return expenseCents; }
+    public long getBalanceCents() { return incomeCents - expenseCents; }
+    public double getTotalIncome() { return Money.toDouble(incomeCents); }
+    public double getTotalExpenses() { return Money.toDouble(expenseCents); }
+    public double getBalance() { return Money.toDouble(incomeCents - expenseCents); }
+    public int getTransactionCount() { return transactionCount; }
+    public CategoryAmounts getIncomeByCategory() { return incomeByCategory; }
+    public CategoryAmounts getExpensesByCategory() { return expensesByCategory; }
+
+    @Override
+    public String toString() {
+        return startDate + " - " + endDate;
+    }
+}
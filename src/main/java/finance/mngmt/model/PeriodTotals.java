@@ -0,0 +1,68 @@
+package finance.mngmt.model;
+
+import java.util.Arrays;
+
+// Суммы и число транзакций за период по категориям и типам (см. Wallet.getPeriodTotals).
+// Ячейки по номеру категории из словаря кошелька: [номер * 2 + тип].
+public class PeriodTotals {
+    private final CategoryDictionary categories;
+    long[] amounts;
+    int[] counts;
+
+    public interface CategoryVisitor {
+        void visit(Category category, TransactionType type, long amountCents, int count);
+    }
+
+    PeriodTotals(CategoryDictionary categories) {
+        this.categories = categories;
+        this.amounts = new long[categories.capacity() * 2];
+        this.counts = new int[categories.capacity() * 2];
+    }
+
+    void add(long[] bucketAmounts, int[] bucketCounts) {
+        if (bucketAmounts.length > amounts.length) {
+            amounts = Arrays.copyOf(amounts, bucketAmounts.length);
+            counts = Arrays.copyOf(counts, bucketAmounts.length);
+        }
+        for (int i = 0; i < bucketAmounts.length; i++) {
+            amounts[i] += bucketAmounts[i];
+            counts[i] += bucketCounts[i];
+        }
+    }
+
+    public long getTotalCents(TransactionType type) {
+        long total = 0;
+        for (int i = type.ordinal(); i < amounts.length; i += 2) {
+            total += amounts[i];
+        }
+        return total;
+    }
+
+    public int getCount(TransactionType type) {
+        int count = 0;
+        for (int i = type.ordinal(); i < counts.length; i += 2) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    public int getTransactionCount() {
+        return getCount(TransactionType.INCOME) + getCount(TransactionType.EXPENSE);
+    }
+
+    public long getCategoryTotalCents(String category, TransactionType type) {
+        int cell = categories.idOf(category) * 2 + type.ordinal();
+        return cell >= 0 && cell < amounts.length ? amounts[cell] : 0;
+    }
+
+    // Один проход по всем ячейкам, где за период были транзакции
+    public void forEachCategory(CategoryVisitor visitor) {
+        TransactionType[] types = TransactionType.values();
+        for (int cell = 0; cell < counts.length; cell++) {
+            Category category = counts[cell] > 0 ? categories.get(cell / 2) : null;
+            if (category != null) {
+                visitor.visit(category, types[cell % 2], amounts[cell], counts[cell]);
+            }
+        }
+    }
+}
@@ -2,42 +2,70 @@ package finance.mngmt.model;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
 
 public class Transaction {
-    private String id;
-    private double amount;
+    // Id из TransactionIds хранится числом, строка собирается только по запросу getId().
+    // Прочие id (UUID из старых файлов, id, заданные при импорте) хранятся строкой в textId.
+    private long numericId;
+    private String textId;
+    private long amountCents; // сумма в копейках, см. Money
     private TransactionType type;
-    private String category;
+    // Пока транзакция не добавлена в кошелек — своя категория; кошелек заменяет ее общей из словаря
+    private Category category;
     private LocalDateTime date;
     private String description;
 
     public Transaction(double amount, TransactionType type, String category, String description) {
-        this.id = UUID.randomUUID().toString();
-        this.amount = amount;
-        this.type = type;
-        this.category = category;
-        this.date = LocalDateTime.now();
-        this.description = description;
+        this(TransactionIds.next(), null, Money.toCents(amount), type, category, LocalDateTime.now(), description);
     }
 
     public Transaction(String id, double amount, TransactionType type, String category,
                        LocalDateTime date, String description) {
-        this.id = id;
-        this.amount = amount;
+        this(TransactionIds.parse(id), id, Money.toCents(amount), type, category, date, description);
+    }
+
+    // Отдельная фабрика, а не перегруженный конструктор: иначе вызов с целым литералом
+    // (new Transaction(id, 100, ...)) молча означал бы копейки
+    public static Transaction ofCents(String id, long amountCents, TransactionType type, String category,
+                                      LocalDateTime date, String description) {
+        return new Transaction(TransactionIds.parse(id), id, amountCents, type, category, date, description);
+    }
+
+    // id — значение из TransactionIds
+    public static Transaction ofCents(long id, long amountCents, TransactionType type, String category,
+                                      LocalDateTime date, String description) {
+        return new Transaction(id, null, amountCents, type, category, date, description);
+    }
+
+    // numericId < 0 — id не в формате TransactionIds, хранится textId
+    private Transaction(long numericId, String textId, long amountCents, TransactionType type, String category,
+                        LocalDateTime date, String description) {
+        this.numericId = numericId;
+        this.textId = numericId >= 0 ? null : textId;
+        this.amountCents = amountCents;
         this.type = type;
-        this.category = category;
+        this.category = new Category(category, CategoryType.of(type));
         this.date = date;
         this.description = description;
     }
 
-    public String getId() { return id; }
-    public double getAmount() { return amount; }
+    public String getId() { return textId != null ? textId : TransactionIds.format(numericId); }
+    public boolean hasNumericId() { return textId == null; }
+    // Значение из TransactionIds; -1, если id хранится строкой
+    public long getNumericId() { return numericId; }
+    public double getAmount() { return Money.toDouble(amountCents); }
+    public long getAmountCents() { return amountCents; }
     public TransactionType getType() { return type; }
-    public String getCategory() { return category; }
+    public String getCategory() { return category.getName(); }
+    // Номер категории в словаре кошелька; -1, пока транзакция не добавлена в кошелек
+    public int getCategoryId() { return category.getId(); }
     public LocalDateTime getDate() { return date; }
     public String getDescription() { return description; }
 
+    void bindCategory(Category category) {
+        this.category = category;
+    }
+
     public String getFormattedDate() {
         return date.format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"));
     }
@@ -48,7 +76,7 @@ public class Transaction {
                 getFormattedDate(),
                 type.getDescription(),
                 category,
-                amount,
+                getAmount(),
                 description.isEmpty() ? "без описания" : description
         );
     }
@@ -0,0 +1,117 @@
+package finance.mngmt.model;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Подсчет TransactionStats по срезу кошелька. Срез режется на куски (строки сегмента или отрезок
+// хвоста); небольшой срез считается в текущем потоке, большой — делением кусков пополам
+// в общем ForkJoinPool. Части сливаются по порядку, поэтому результат не зависит от режима.
+class TransactionAggregation extends RecursiveTask<TransactionStats> {
+    private static final long serialVersionUID = 1L;
+
+    static final int CHUNK_SIZE = 1 << 14;
+    // Меньше этого числа транзакций параллельный подсчет не окупает накладные расходы
+    static final int PARALLEL_THRESHOLD = 1 << 17;
+
+    // Куски среза: строки [from, to) сегмента либо отрезок списка транзакций хвоста
+    static class Chunk {
+        final TransactionSegment segment;
+        final Category[] local;
+        // Удаленные строки сегмента или null
+        final BitSet deleted;
+        final List<Transaction> live;
+        final int from;
+        final int to;
+
+        private Chunk(TransactionSegment segment, Category[] local, BitSet deleted, List<Transaction> live,
+                      int from, int to) {
+            this.segment = segment;
+            this.local = local;
+            this.deleted = deleted;
+            this.live = live;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    static void addSegment(List<Chunk> chunks, TransactionSegment segment, Category[] local, BitSet deleted,
+                           int from, int to) {
+        for (int start = from; start < to; start += CHUNK_SIZE) {
+            chunks.add(new Chunk(segment, local, deleted, null, start, Math.min(to, start + CHUNK_SIZE)));
+        }
+    }
+
+    static void addLive(List<Chunk> chunks, List<Transaction> live) {
+        for (int start = 0; start < live.size(); start += CHUNK_SIZE) {
+            chunks.add(new Chunk(null, null, null, live, start, Math.min(live.size(), start + CHUNK_SIZE)));
+        }
+    }
+
+    static TransactionStats run(CategoryDictionary categories, List<Chunk> chunks) {
+        long size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.to - chunk.from;
+        }
+        TransactionAggregation task = new TransactionAggregation(categories, chunks, 0, chunks.size());
+        return size < PARALLEL_THRESHOLD ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private final CategoryDictionary categories;
+    private final List<Chunk> chunks;
+    private final int first;
+    private final int last;
+
+    private TransactionAggregation(CategoryDictionary categories, List<Chunk> chunks, int first, int last) {
+        this.categories = categories;
+        this.chunks = chunks;
+        this.first = first;
+        this.last = last;
+    }
+
+    @Override
+    protected TransactionStats compute() {
+        if (last - first > 1 && inForkJoinPool()) {
+            int middle = (first + last) >>> 1;
+            TransactionAggregation right = new TransactionAggregation(categories, chunks, middle, last);
+            right.fork();
+            TransactionStats stats = new TransactionAggregation(categories, chunks, first, middle).compute();
+            stats.merge(right.join());
+            return stats;
+        }
+        TransactionStats stats = new TransactionStats(categories);
+        for (int i = first; i < last; i++) {
+            aggregate(chunks.get(i), stats);
+        }
+        return stats;
+    }
+
+    private static void aggregate(Chunk chunk, TransactionStats stats) {
+        if (chunk.live != null) {
+            for (Transaction transaction : chunk.live.subList(chunk.from, chunk.to)) {
+                long amount = transaction.getAmountCents();
+                stats.add(transaction.getCategoryId(), transaction.getType(), amount);
+                if (transaction.getType() == TransactionType.EXPENSE && stats.isLargeExpense(amount)) {
+                    stats.offerExpense(transaction, amount);
+                }
+            }
+            return;
+        }
+        TransactionSegment segment = chunk.segment;
+        for (int row = chunk.from; row < chunk.to; row++) {
+            if (chunk.deleted != null && chunk.deleted.get(row)) {
+                continue;
+            }
+            long amount = segment.getAmountCents(row);
+            TransactionType type = segment.getType(row);
+            Category category = chunk.local[segment.getCategoryId(row)];
+            stats.add(category.getId(), type, amount);
+            if (type == TransactionType.EXPENSE && stats.isLargeExpense(amount)) {
+                Transaction transaction = segment.get(row);
+                transaction.bindCategory(category);
+                stats.offerExpense(transaction, amount);
+            }
+        }
+    }
+}
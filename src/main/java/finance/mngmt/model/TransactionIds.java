@@ -0,0 +1,74 @@
+package finance.mngmt.model;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// 64-битные id транзакций, возрастающие по времени создания:
+// 41 бит — миллисекунды от 2024-01-01 UTC | 10 бит — номер узла | 12 бит — счетчик в пределах миллисекунды.
+// Внутри хранится long; строкой (13 символов base36 с ведущими нулями, порядок строк совпадает
+// с порядком чисел) id становится только на границах — в CLI, журнале и файлах экспорта.
+public final class TransactionIds {
+    public static final int TEXT_LENGTH = 13;
+
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    // Номер узла задается свойством finance.nodeId, иначе выбирается случайно при запуске
+    private static final long NODE = Long.getLong("finance.nodeId",
+            ThreadLocalRandom.current().nextLong(1L << NODE_BITS)) & ((1L << NODE_BITS) - 1);
+
+    private static long lastMillis = -1;
+    private static long sequence;
+
+    private TransactionIds() {
+    }
+
+    // Строго возрастает в пределах процесса: при переводе часов назад продолжает с последней
+    // отметки, а исчерпав счетчик, занимает следующую миллисекунду, не дожидаясь ее
+    public static synchronized long next() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else if (++sequence > MAX_SEQUENCE) {
+            lastMillis++;
+            sequence = 0;
+        }
+        return lastMillis << (NODE_BITS + SEQUENCE_BITS) | NODE << SEQUENCE_BITS | sequence;
+    }
+
+    // Наибольший id, который мог быть выдан в эту миллисекунду UTC (-1 для времени до эпохи id)
+    public static long lastAt(long epochMilli) {
+        long millis = epochMilli - EPOCH_MILLIS;
+        if (millis < 0) {
+            return -1;
+        }
+        return (millis + 1 << (NODE_BITS + SEQUENCE_BITS)) - 1;
+    }
+
+    public static String format(long id) {
+        char[] text = new char[TEXT_LENGTH];
+        for (int i = TEXT_LENGTH - 1; i >= 0; i--) {
+            text[i] = Character.forDigit((int) (id % 36), 36);
+            id /= 36;
+        }
+        return new String(text);
+    }
+
+    // -1, если строка не в формате format() (старые UUID, id импорта): такой id хранится строкой
+    public static long parse(String text) {
+        if (text.length() != TEXT_LENGTH) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            char c = text.charAt(i);
+            int digit = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'z' ? c - 'a' + 10 : -1;
+            if (digit < 0 || id > (Long.MAX_VALUE - digit) / 36) {
+                return -1;
+            }
+            id = id * 36 + digit;
+        }
+        return id;
+    }
+}
@@ -0,0 +1,38 @@
+package finance.mngmt.model;
+
+// Запечатанный (неизменяемый) блок старых транзакций кошелька. Поля читаются по номеру
+// строки без создания объектов Transaction; get(row) собирает объект только по требованию.
+// Строки упорядочены по дате, на этом держится поиск по периоду в Wallet.
+public interface TransactionSegment {
+    int size();
+
+    long getEpochMilli(int row);
+
+    // Суммы в копейках, см. Money
+    long getAmountCents(int row);
+
+    TransactionType getType(int row);
+
+    // Категории внутри сегмента хранятся номерами в его собственной таблице строк
+    int getCategoryId(int row);
+
+    // -1, если в сегменте нет транзакций этой категории
+    int findCategory(String category);
+
+    String getCategoryName(int categoryId);
+
+    String getId(int row);
+
+    // Числовой id строки (см. TransactionIds) или -1, если id хранится строкой
+    long getNumericId(int row);
+
+    // Номер строки с этим идентификатором или -1
+    int indexOf(String transactionId);
+
+    long getTotalCents(TransactionType type);
+
+    // Самая поздняя дата в сегменте, чтобы пропускать его целиком
+    long getMaxEpochMilli();
+
+    Transaction get(int row);
+}
@@ -0,0 +1,122 @@
+package finance.mngmt.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Показатели по транзакциям периода, которых нет в корзинах PeriodRollups: минимум и максимум
+// по категориям и самые крупные расходы (см. Wallet.getTransactionStats). Ячейки по номеру
+// категории из словаря кошелька: [номер * 2 + тип]. Накопители частей периода сливаются через merge,
+// поэтому период можно считать по кускам параллельно.
+public class TransactionStats {
+    public static final int LARGEST_EXPENSES = 5;
+
+    private final CategoryDictionary categories;
+    private long[] sums;
+    private int[] counts;
+    private long[] min;
+    private long[] max;
+    // Крупнейшие расходы по убыванию суммы; при равных суммах раньше стоит более ранняя транзакция
+    private final long[] topAmounts = new long[LARGEST_EXPENSES];
+    private final Transaction[] top = new Transaction[LARGEST_EXPENSES];
+    private int topSize;
+
+    TransactionStats(CategoryDictionary categories) {
+        this.categories = categories;
+        int cells = categories.capacity() * 2;
+        this.sums = new long[cells];
+        this.counts = new int[cells];
+        this.min = new long[cells];
+        this.max = new long[cells];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+    }
+
+    void add(int categoryId, TransactionType type, long amount) {
+        int cell = categoryId * 2 + type.ordinal();
+        if (cell >= sums.length) {
+            grow(cell + 2);
+        }
+        sums[cell] += amount;
+        counts[cell]++;
+        min[cell] = Math.min(min[cell], amount);
+        max[cell] = Math.max(max[cell], amount);
+    }
+
+    // Попадет ли расход с такой суммой в крупнейшие: транзакцию строки сегмента собираем только тогда
+    boolean isLargeExpense(long amount) {
+        return topSize < LARGEST_EXPENSES || amount > topAmounts[LARGEST_EXPENSES - 1];
+    }
+
+    void offerExpense(Transaction transaction, long amount) {
+        int position = topSize;
+        while (position > 0 && topAmounts[position - 1] < amount) {
+            position--;
+        }
+        if (position == LARGEST_EXPENSES) {
+            return;
+        }
+        int last = Math.min(topSize, LARGEST_EXPENSES - 1);
+        System.arraycopy(topAmounts, position, topAmounts, position + 1, last - position);
+        System.arraycopy(top, position, top, position + 1, last - position);
+        topAmounts[position] = amount;
+        top[position] = transaction;
+        topSize = Math.min(topSize + 1, LARGEST_EXPENSES);
+    }
+
+    // Добавляет показатели следующей по времени части периода
+    void merge(TransactionStats later) {
+        if (later.sums.length > sums.length) {
+            grow(later.sums.length);
+        }
+        for (int cell = 0; cell < later.sums.length; cell++) {
+            sums[cell] += later.sums[cell];
+            counts[cell] += later.counts[cell];
+            min[cell] = Math.min(min[cell], later.min[cell]);
+            max[cell] = Math.max(max[cell], later.max[cell]);
+        }
+        for (int i = 0; i < later.topSize; i++) {
+            offerExpense(later.top[i], later.topAmounts[i]);
+        }
+    }
+
+    private void grow(int length) {
+        int from = sums.length;
+        sums = Arrays.copyOf(sums, length);
+        counts = Arrays.copyOf(counts, length);
+        min = Arrays.copyOf(min, length);
+        max = Arrays.copyOf(max, length);
+        Arrays.fill(min, from, length, Long.MAX_VALUE);
+        Arrays.fill(max, from, length, Long.MIN_VALUE);
+    }
+
+    private int cell(String category, TransactionType type) {
+        int cell = categories.idOf(category) * 2 + type.ordinal();
+        return cell >= 0 && cell < counts.length && counts[cell] > 0 ? cell : -1;
+    }
+
+    public int getCount(String category, TransactionType type) {
+        int cell = cell(category, type);
+        return cell >= 0 ? counts[cell] : 0;
+    }
+
+    public long getTotalCents(String category, TransactionType type) {
+        int cell = cell(category, type);
+        return cell >= 0 ? sums[cell] : 0;
+    }
+
+    // 0, если за период по категории не было транзакций этого типа
+    public long getMinCents(String category, TransactionType type) {
+        int cell = cell(category, type);
+        return cell >= 0 ? min[cell] : 0;
+    }
+
+    public long getMaxCents(String category, TransactionType type) {
+        int cell = cell(category, type);
+        return cell >= 0 ? max[cell] : 0;
+    }
+
+    public List<Transaction> getLargestExpenses() {
+        return new ArrayList<>(Arrays.asList(top).subList(0, topSize));
+    }
+}
@@ -13,6 +13,13 @@ public class User {
         this.wallet = new Wallet(username);
     }
 
+    // wallet == null: кошелек хранится отдельно и еще не загружен с диска
+    public User(String username, String password, Wallet wallet) {
+        this.username = username;
+        this.password = password;
+        this.wallet = wallet;
+    }
+
     public boolean checkPassword(String password) {
         return this.password.equals(password);
     }
@@ -24,6 +31,7 @@ public class User {
     public void setPassword(String password) { this.password = password; }
     public Wallet getWallet() { return wallet; }
     public void setWallet(Wallet wallet) { this.wallet = wallet; }
+    public boolean isWalletLoaded() { return wallet != null; }
 
     @Override
     public boolean equals(Object o) {
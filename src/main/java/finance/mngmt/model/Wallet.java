@@ -1,19 +1,69 @@
 package finance.mngmt.model;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class Wallet {
     private String owner;
+    // «Живой» хвост с надгробиями: удаленная транзакция оставляет null на своем месте,
+    // а список уплотняется пачкой, когда надгробий становится больше половины
     private List<Transaction> transactions;
+    private int tombstones;
+    // id -> место в хвосте: удаление по id без поиска. Числовые id (TransactionIds) — ключом Long,
+    // строковые id старых данных — в отдельной таблице
+    private Map<Long, Integer> liveSlots;
+    private Map<String, Integer> liveTextSlots;
+    // Старые транзакции, вынесенные из кучи в запечатанные сегменты; transactions — «живой» хвост
+    private List<TransactionSegment> sealedSegments;
+    // Удаленные строки запечатанных сегментов: файл сегмента не меняется, строки пропускаются
+    // при обходе и не входят в суммы; отметки сохраняются вместе с кошельком
+    private Map<TransactionSegment, BitSet> deletedRows;
     private Map<String, Budget> budgets;
-    private Set<String> categories;
+    // Те же бюджеты по номеру категории: расход находит свой бюджет без поиска по имени
+    private List<Budget> budgetsById;
+    // Словарь категорий: транзакции и индексы ссылаются на категории по номеру
+    private CategoryDictionary categories;
+    // Текущие суммы обновляются при каждом изменении, поэтому баланс и итоги читаются за O(1)
+    // Суммы в копейках (см. Money), поэтому накопленные значения точны
+    private long totalIncome;
+    private long totalExpense;
+    // Индекс по категориям (по номеру категории): суммы и сами транзакции категории, чтобы
+    // выборки по категории стоили O(k) от числа ее транзакций, а не от всей истории
+    private List<CategoryIndex> categoryIndex;
+    // Номера категорий в таблице сегмента -> категории словаря кошелька
+    private Map<TransactionSegment, Category[]> segmentCategories;
+    // Хвост, упорядоченный по дате: запросы за период берут только свой срез, в каком бы
+    // порядке транзакции ни добавлялись (импорт задним числом)
+    private NavigableMap<LocalDateTime, List<Transaction>> liveByDate;
+    // Суммы по дням, месяцам и годам для статистики за период (см. getPeriodTotals)
+    private PeriodRollups rollups;
+    // Растет при каждом изменении списка транзакций; по нему представления из getTransactions()
+    // узнают, что устарели
+    private int version;
+    // Отметка состояния кошелька: новая при любом изменении транзакций, бюджетов или категорий.
+    // Отметки берутся из общего счетчика, поэтому не повторяются и у заново загруженного кошелька;
+    // по ним кэш результатов (ResultCache) отличает свежие результаты от устаревших
+    private static final AtomicLong STAMPS = new AtomicLong();
+    private long stamp = STAMPS.incrementAndGet();
 
     public Wallet(String owner) {
         this.owner = owner;
         this.transactions = new ArrayList<>();
+        this.liveSlots = new HashMap<>();
+        this.liveTextSlots = new HashMap<>();
+        this.sealedSegments = new ArrayList<>();
+        this.deletedRows = new HashMap<>();
         this.budgets = new HashMap<>();
-        this.categories = new HashSet<>();
+        this.budgetsById = new ArrayList<>();
+        this.categories = new CategoryDictionary();
+        this.categoryIndex = new ArrayList<>();
+        this.segmentCategories = new HashMap<>();
+        this.liveByDate = new TreeMap<>();
+        this.rollups = new PeriodRollups();
 
         // Добавляем стандартные категории
         addDefaultCategories();
@@ -21,115 +71,1067 @@ public class Wallet {
 
     private void addDefaultCategories() {
         // Стандартные категории доходов
-        categories.add("Зарплата");
-        categories.add("Бонус");
-        categories.add("Инвестиции");
-        categories.add("Подарок");
+        categories.intern("Зарплата", CategoryType.INCOME);
+        categories.intern("Бонус", CategoryType.INCOME);
+        categories.intern("Инвестиции", CategoryType.INCOME);
+        categories.intern("Подарок", CategoryType.INCOME);
 
         // Стандартные категории расходов
-        categories.add("Еда");
-        categories.add("Развлечения");
-        categories.add("Коммунальные услуги");
-        categories.add("Транспорт");
-        categories.add("Такси");
-        categories.add("Одежда");
-        categories.add("Здоровье");
-        categories.add("Образование");
+        categories.intern("Еда", CategoryType.EXPENSE);
+        categories.intern("Развлечения", CategoryType.EXPENSE);
+        categories.intern("Коммунальные услуги", CategoryType.EXPENSE);
+        categories.intern("Транспорт", CategoryType.EXPENSE);
+        categories.intern("Такси", CategoryType.EXPENSE);
+        categories.intern("Одежда", CategoryType.EXPENSE);
+        categories.intern("Здоровье", CategoryType.EXPENSE);
+        categories.intern("Образование", CategoryType.EXPENSE);
     }
 
     public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        categories.add(transaction.getCategory());
+        version++;
+        touch();
+        bind(transaction);
+        appendLive(transaction);
 
         // Если это расход и есть бюджет для этой категории - обновляем бюджет
         if (transaction.getType() == TransactionType.EXPENSE) {
-            Budget budget = budgets.get(transaction.getCategory());
+            Budget budget = budgetOf(transaction.getCategoryId());
+            if (budget != null) {
+                budget.addSpendingCents(transaction.getAmountCents());
+            }
+        }
+    }
+
+    // Пакетное добавление (импорт): список расширяется один раз на весь пакет
+    public void addTransactions(List<Transaction> batch) {
+        version++;
+        touch();
+        int firstSlot = transactions.size();
+        transactions.addAll(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            Transaction transaction = batch.get(i);
+            bind(transaction);
+            putSlot(transaction, firstSlot + i);
+            index(transaction, firstSlot + i);
+            if (transaction.getType() == TransactionType.EXPENSE) {
+                Budget budget = budgetOf(transaction.getCategoryId());
+                if (budget != null) {
+                    budget.addSpendingCents(transaction.getAmountCents());
+                }
+            }
+        }
+    }
+
+    private void appendLive(Transaction transaction) {
+        int slot = transactions.size();
+        transactions.add(transaction);
+        putSlot(transaction, slot);
+        index(transaction, slot);
+    }
+
+    private void putSlot(Transaction transaction, int slot) {
+        if (transaction.hasNumericId()) {
+            liveSlots.put(transaction.getNumericId(), slot);
+        } else {
+            liveTextSlots.put(transaction.getId(), slot);
+        }
+    }
+
+    private Integer removeSlot(String transactionId) {
+        long numericId = TransactionIds.parse(transactionId);
+        return numericId >= 0 ? liveSlots.remove(numericId) : liveTextSlots.remove(transactionId);
+    }
+
+    // Есть ли в кошельке транзакция с этим id и датой. Хвост проверяется по индексу id, сегменты —
+    // двоичным поиском по дате и сравнением id строк с той же миллисекундой, без обхода всего кошелька
+    public boolean containsTransaction(String transactionId, LocalDateTime date) {
+        long numericId = TransactionIds.parse(transactionId);
+        if (numericId >= 0 ? liveSlots.containsKey(numericId) : liveTextSlots.containsKey(transactionId)) {
+            return true;
+        }
+        long millis = toEpochMilli(date);
+        for (TransactionSegment segment : sealedSegments) {
+            if (segment.size() == 0 || segment.getMaxEpochMilli() < millis || segment.getEpochMilli(0) > millis) {
+                continue;
+            }
+            for (int row = firstRowAtOrAfter(segment, millis);
+                 row < segment.size() && segment.getEpochMilli(row) == millis; row++) {
+                boolean same = numericId >= 0 ? segment.getNumericId(row) == numericId
+                        : segment.getNumericId(row) < 0 && segment.getId(row).equals(transactionId);
+                if (same && !isDeleted(segment, row)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // false, если транзакции с таким id нет
+    public boolean removeTransaction(String transactionId) {
+        return removeTransactions(Collections.singleton(transactionId)) > 0;
+    }
+
+    // Удаление пачкой; возвращает число удаленных. Транзакция хвоста находится по id за O(1)
+    // и оставляет надгробие; строка запечатанного сегмента отмечается удаленной, сжатый блок
+    // в куче пересобирается один раз на пачку. Суммы, индексы и траты бюджетов откатываются.
+    public int removeTransactions(Collection<String> transactionIds) {
+        List<Transaction> removedLive = new ArrayList<>();
+        Set<String> sealedIds = new HashSet<>();
+        for (String transactionId : transactionIds) {
+            Integer slot = removeSlot(transactionId);
+            if (slot != null) {
+                Transaction transaction = transactions.set(slot, null);
+                tombstones++;
+                removedLive.add(transaction);
+                rollbackBudget(transaction.getCategoryId(), transaction.getType(), transaction.getAmountCents());
+            } else {
+                sealedIds.add(transactionId);
+            }
+        }
+        dropFromIndexes(removedLive);
+        if (tombstones * 2 > transactions.size()) {
+            compactLive();
+        }
+
+        int removedSealed = 0;
+        for (ListIterator<TransactionSegment> iterator = sealedSegments.listIterator();
+             iterator.hasNext() && !sealedIds.isEmpty(); ) {
+            TransactionSegment segment = iterator.next();
+            BitSet rows = findRows(segment, sealedIds, deletedRows.get(segment));
+            if (rows.isEmpty()) {
+                continue;
+            }
+            removedSealed += rows.cardinality();
+            Category[] local = segmentCategories.get(segment);
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                sealedIds.remove(segment.getId(row));
+                rollbackBudget(local[segment.getCategoryId(row)].getId(), segment.getType(row),
+                        segment.getAmountCents(row));
+            }
+
+            if (segment instanceof ColumnarTransactionSegment) {
+                // Сжатый блок пересобирается без строк, объекты Transaction не создаются
+                ColumnarTransactionSegment rest = ((ColumnarTransactionSegment) segment).without(rows);
+                indexSegment(segment, -1);
+                if (rest.size() > 0) {
+                    iterator.set(rest);
+                    indexSegment(rest, 1);
+                } else {
+                    iterator.remove();
+                }
+                continue;
+            }
+            // Запечатанный сегмент неизменяем: строки только отмечаются удаленными, а суммы
+            // и индексы уменьшаются на каждую строку. Сегмент переписывается лишь при уплотнении
+            BitSet deleted = deletedRows.computeIfAbsent(segment, s -> new BitSet());
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                dropSealedRow(segment, local, row);
+            }
+            deleted.or(rows);
+            if (deleted.cardinality() * 2 > segment.size()) {
+                compactSegment(iterator, segment, local);
+            }
+        }
+
+        int removed = removedLive.size() + removedSealed;
+        if (removed > 0) {
+            version++;
+            touch();
+        }
+        return removed;
+    }
+
+    private void dropSealedRow(TransactionSegment segment, Category[] local, int row) {
+        int categoryId = local[segment.getCategoryId(row)].getId();
+        TransactionType type = segment.getType(row);
+        long amount = segment.getAmountCents(row);
+        CategoryIndex entry = entry(categoryId);
+        entry.sealedCount--;
+        addTotal(entry, type, -amount);
+        rollups.add(LocalDate.ofEpochDay(Math.floorDiv(segment.getEpochMilli(row), 86_400_000L)),
+                categoryId, type, -amount, -1);
+    }
+
+    // Уплотнение сегмента, в котором удалено больше половины строк, — как уплотнение хвоста:
+    // оставшиеся строки переходят в сжатый блок в куче, и при следующем сохранении старые
+    // из них запечатываются в новый файл
+    private void compactSegment(ListIterator<TransactionSegment> iterator, TransactionSegment segment,
+                                Category[] local) {
+        BitSet deleted = deletedRows.get(segment);
+        ColumnarTransactionSegment.Builder builder =
+                new ColumnarTransactionSegment.Builder(segment.size() - deleted.cardinality());
+        for (int row = deleted.nextClearBit(0); row < segment.size(); row = deleted.nextClearBit(row + 1)) {
+            builder.append(get(segment, local, row));
+        }
+        indexSegment(segment, -1);
+        deletedRows.remove(segment);
+        if (builder.size() > 0) {
+            ColumnarTransactionSegment rest = builder.build();
+            iterator.set(rest);
+            indexSegment(rest, 1);
+        } else {
+            iterator.remove();
+        }
+    }
+
+    // Строки сегмента с этими id, кроме уже удаленных: для нескольких id — поиск каждого,
+    // для большой пачки — один проход
+    private static BitSet findRows(TransactionSegment segment, Set<String> ids, BitSet deleted) {
+        BitSet rows = new BitSet();
+        if (ids.size() <= 8) {
+            for (String id : ids) {
+                int row = segment.indexOf(id);
+                if (row >= 0) {
+                    rows.set(row);
+                }
+            }
+        } else {
+            for (int row = 0; row < segment.size(); row++) {
+                if (ids.contains(segment.getId(row))) {
+                    rows.set(row);
+                }
+            }
+        }
+        if (deleted != null) {
+            rows.andNot(deleted);
+        }
+        return rows;
+    }
+
+    private void rollbackBudget(int categoryId, TransactionType type, long amountCents) {
+        if (type == TransactionType.EXPENSE) {
+            Budget budget = budgetOf(categoryId);
             if (budget != null) {
-                budget.addSpending(transaction.getAmount());
+                budget.removeSpendingCents(amountCents);
             }
         }
     }
 
-    public void removeTransaction(String transactionId) {
-        transactions.removeIf(t -> t.getId().equals(transactionId));
+    // Транзакции хвоста и сжатых блоков с датой раньше cutoff, по возрастанию даты
+    public List<Transaction> getUnsealedTransactionsBefore(LocalDateTime cutoff) {
+        long cutoffMillis = toEpochMilli(cutoff);
+        List<Transaction> result = new ArrayList<>();
+        for (TransactionSegment segment : sealedSegments) {
+            if (segment instanceof ColumnarTransactionSegment) {
+                Category[] local = segmentCategories.get(segment);
+                for (int row = 0; row < segment.size() && segment.getEpochMilli(row) < cutoffMillis; row++) {
+                    result.add(get(segment, local, row));
+                }
+            }
+        }
+        for (List<Transaction> sameDate : liveByDate.headMap(cutoff, false).values()) {
+            result.addAll(sameDate);
+        }
+        result.sort(Comparator.comparing(Transaction::getDate));
+        return result;
+    }
+
+    // Переносит в только что записанный сегмент те же транзакции, что вернул getUnsealedTransactionsBefore(cutoff)
+    public void seal(TransactionSegment segment, LocalDateTime cutoff) {
+        version++;
+        touch();
+        List<Transaction> sealedLive = new ArrayList<>();
+        for (List<Transaction> sameDate : liveByDate.headMap(cutoff, false).values()) {
+            sealedLive.addAll(sameDate);
+        }
+        unindexAll(sealedLive);
+
+        long cutoffMillis = toEpochMilli(cutoff);
+        for (ListIterator<TransactionSegment> iterator = sealedSegments.listIterator(); iterator.hasNext(); ) {
+            TransactionSegment block = iterator.next();
+            if (!(block instanceof ColumnarTransactionSegment)) {
+                continue;
+            }
+            int firstKept = firstRowAtOrAfter(block, cutoffMillis);
+            if (firstKept == 0) {
+                continue;
+            }
+            indexSegment(block, -1);
+            if (firstKept < block.size()) {
+                ColumnarTransactionSegment rest = ((ColumnarTransactionSegment) block).from(firstKept);
+                iterator.set(rest);
+                indexSegment(rest, 1);
+            } else {
+                iterator.remove();
+            }
+        }
+
+        sealedSegments.add(segment);
+        indexSegment(segment, 1);
+    }
+
+    // Переносит хвост и прежние сжатые блоки в один ColumnarTransactionSegment
+    public void compact() {
+        List<ColumnarTransactionSegment> blocks = new ArrayList<>();
+        List<Transaction> live = getLiveTransactions();
+        int rows = live.size();
+        for (TransactionSegment segment : sealedSegments) {
+            if (segment instanceof ColumnarTransactionSegment) {
+                blocks.add((ColumnarTransactionSegment) segment);
+                rows += segment.size();
+            }
+        }
+        if (live.isEmpty() && blocks.size() < 2) {
+            return;
+        }
+
+        ColumnarTransactionSegment.Builder builder = new ColumnarTransactionSegment.Builder(rows);
+        for (ColumnarTransactionSegment block : blocks) {
+            for (int row = 0; row < block.size(); row++) {
+                builder.append(block, row);
+            }
+        }
+        for (Transaction transaction : live) {
+            builder.append(transaction);
+        }
+        ColumnarTransactionSegment compacted = builder.build();
+        version++;
+        touch();
+
+        for (ColumnarTransactionSegment block : blocks) {
+            sealedSegments.remove(block);
+            indexSegment(block, -1);
+        }
+        unindexAll(live);
+        sealedSegments.add(compacted);
+        indexSegment(compacted, 1);
+    }
+
+    // Убирает из хвоста сразу много транзакций (перенос в сегмент): хвост уплотняется один раз
+    private void unindexAll(Collection<Transaction> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        Set<Transaction> removedSet = dropFromIndexes(removed);
+        for (int slot = 0; slot < transactions.size(); slot++) {
+            if (removedSet.contains(transactions.get(slot))) {
+                transactions.set(slot, null);
+                tombstones++;
+            }
+        }
+        compactLive();
+    }
+
+    // Вычитает транзакции хвоста из сумм и индексов; списки по дате чистятся одним проходом на дату
+    private Set<Transaction> dropFromIndexes(Collection<Transaction> removed) {
+        Set<Transaction> removedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<LocalDateTime> removedDates = new HashSet<>();
+        for (Transaction transaction : removed) {
+            CategoryIndex entry = entry(transaction.getCategoryId());
+            entry.liveCount--;
+            addTotal(entry, transaction.getType(), -transaction.getAmountCents());
+            rollups.add(transaction.getDate().toLocalDate(), transaction.getCategoryId(),
+                    transaction.getType(), -transaction.getAmountCents(), -1);
+            removedSet.add(transaction);
+            removedDates.add(transaction.getDate());
+        }
+        for (LocalDateTime date : removedDates) {
+            List<Transaction> sameDate = liveByDate.get(date);
+            if (sameDate != null && sameDate.removeIf(removedSet::contains) && sameDate.isEmpty()) {
+                liveByDate.remove(date);
+            }
+        }
+        return removedSet;
+    }
+
+    // Убирает надгробия: хвост и места в индексе категорий строятся заново
+    private void compactLive() {
+        List<Transaction> kept = new ArrayList<>(transactions.size() - tombstones);
+        for (Transaction transaction : transactions) {
+            if (transaction != null) {
+                kept.add(transaction);
+            }
+        }
+        transactions = kept;
+        tombstones = 0;
+        liveSlots.clear();
+        liveTextSlots.clear();
+        for (CategoryIndex entry : categoryIndex) {
+            if (entry != null) {
+                entry.liveSlotCount = 0;
+                entry.liveCount = 0;
+            }
+        }
+        for (int slot = 0; slot < kept.size(); slot++) {
+            Transaction transaction = kept.get(slot);
+            putSlot(transaction, slot);
+            entry(transaction.getCategoryId()).addLive(slot);
+        }
+    }
+
+    // Подключает ранее запечатанный сегмент при загрузке кошелька
+    public void attachSegment(TransactionSegment segment) {
+        attachSegment(segment, new BitSet());
+    }
+
+    // deleted — строки, удаленные до сохранения кошелька (см. getDeletedRows)
+    public void attachSegment(TransactionSegment segment, BitSet deleted) {
+        version++;
+        touch();
+        sealedSegments.add(segment);
+        if (!deleted.isEmpty()) {
+            deletedRows.put(segment, (BitSet) deleted.clone());
+        }
+        indexSegment(segment, 1);
+    }
+
+    private boolean isDeleted(TransactionSegment segment, int row) {
+        BitSet deleted = deletedRows.get(segment);
+        return deleted != null && deleted.get(row);
+    }
+
+    private int liveRowCount(TransactionSegment segment) {
+        BitSet deleted = deletedRows.get(segment);
+        return deleted != null ? segment.size() - deleted.cardinality() : segment.size();
+    }
+
+    // Транзакции и суммы одной категории
+    private static class CategoryIndex {
+        final long[] totals = new long[2]; // [доход, расход] в копейках
+        // Места транзакций категории в хвосте по порядку добавления; место удаленной
+        // остается (в хвосте там null) до уплотнения хвоста
+        int[] liveSlots = new int[2];
+        int liveSlotCount;
+        int liveCount;
+        // Строки категории в каждом сегменте, в порядке подключения сегментов
+        final Map<TransactionSegment, int[]> sealedRows = new LinkedHashMap<>();
+        int sealedCount;
+
+        void addLive(int slot) {
+            if (liveSlotCount == liveSlots.length) {
+                liveSlots = Arrays.copyOf(liveSlots, liveSlotCount * 2);
+            }
+            liveSlots[liveSlotCount++] = slot;
+            liveCount++;
+        }
+    }
+
+    private CategoryIndex entry(int categoryId) {
+        CategoryIndex entry = categoryId < categoryIndex.size() ? categoryIndex.get(categoryId) : null;
+        if (entry == null) {
+            entry = new CategoryIndex();
+            set(categoryIndex, categoryId, entry);
+        }
+        return entry;
+    }
+
+    // null, если категории нет в словаре или по ней еще ничего не проиндексировано
+    private CategoryIndex findEntry(String category) {
+        int id = categories.idOf(category);
+        return id >= 0 && id < categoryIndex.size() ? categoryIndex.get(id) : null;
+    }
+
+    private static <T> void set(List<T> byId, int id, T value) {
+        while (byId.size() <= id) {
+            byId.add(null);
+        }
+        byId.set(id, value);
+    }
+
+    // Категория из словаря вместо собственной категории транзакции
+    private void bind(Transaction transaction) {
+        transaction.bindCategory(intern(transaction.getCategory(), CategoryType.of(transaction.getType())));
+    }
+
+    private Category intern(String name, CategoryType type) {
+        Category category = categories.get(name);
+        if (category == null) {
+            category = categories.intern(name, type);
+            touch();
+            // Бюджет мог быть задан раньше, чем появилась категория
+            Budget budget = budgets.get(name);
+            if (budget != null) {
+                set(budgetsById, category.getId(), budget);
+            }
+        }
+        return category;
+    }
+
+    private Budget budgetOf(int categoryId) {
+        return categoryId < budgetsById.size() ? budgetsById.get(categoryId) : null;
+    }
+
+    // Транзакция строки сегмента с категорией из словаря кошелька
+    private static Transaction get(TransactionSegment segment, Category[] local, int row) {
+        Transaction transaction = segment.get(row);
+        transaction.bindCategory(local[segment.getCategoryId(row)]);
+        return transaction;
+    }
+
+    private void index(Transaction transaction, int slot) {
+        CategoryIndex entry = entry(transaction.getCategoryId());
+        entry.addLive(slot);
+        addTotal(entry, transaction.getType(), transaction.getAmountCents());
+        rollups.add(transaction.getDate().toLocalDate(), transaction.getCategoryId(),
+                transaction.getType(), transaction.getAmountCents(), 1);
+        liveByDate.computeIfAbsent(transaction.getDate(), date -> new ArrayList<>(1)).add(transaction);
+    }
+
+    private void addTotal(CategoryIndex entry, TransactionType type, long amount) {
+        if (type == TransactionType.INCOME) {
+            totalIncome += amount;
+        } else {
+            totalExpense += amount;
+        }
+        entry.totals[type.ordinal()] += amount;
+    }
+
+    // Суммы и строки сегмента по категориям копятся в массивах по номеру категории, без сборки объектов.
+    // sign = 1 — сегмент подключается, -1 — отключается.
+    private void indexSegment(TransactionSegment segment, int sign) {
+        Category[] local = sign > 0 ? mapCategories(segment) : segmentCategories.remove(segment);
+        BitSet deleted = deletedRows.get(segment);
+        long[] totals = new long[local.length * 2];
+        for (int row = 0; row < segment.size(); row++) {
+            if (deleted == null || !deleted.get(row)) {
+                totals[segment.getCategoryId(row) * 2 + segment.getType(row).ordinal()] += segment.getAmountCents(row);
+            }
+        }
+        for (int id = 0; id < local.length; id++) {
+            if (local[id] == null) {
+                continue;
+            }
+            CategoryIndex entry = entry(local[id].getId());
+            entry.totals[0] += sign * totals[id * 2];
+            entry.totals[1] += sign * totals[id * 2 + 1];
+            totalIncome += sign * totals[id * 2];
+            totalExpense += sign * totals[id * 2 + 1];
+            if (sign < 0) {
+                // Строки, удаленные после подключения, из счетчика уже вычтены
+                int[] rows = entry.sealedRows.remove(segment);
+                if (rows != null) {
+                    for (int row : rows) {
+                        if (deleted == null || !deleted.get(row)) {
+                            entry.sealedCount--;
+                        }
+                    }
+                }
+            }
+        }
+        rollups.addSegment(segment, local, deleted, sign);
+        if (sign > 0) {
+            indexSegmentRows(segment, local, deleted);
+        }
     }
 
+    // Таблица категорий сегмента -> словарь кошелька; новые имена заводятся в словаре
+    private Category[] mapCategories(TransactionSegment segment) {
+        int count = 0;
+        for (int row = 0; row < segment.size(); row++) {
+            count = Math.max(count, segment.getCategoryId(row) + 1);
+        }
+        Category[] local = new Category[count];
+        for (int row = 0; row < segment.size(); row++) {
+            int id = segment.getCategoryId(row);
+            if (local[id] == null) {
+                local[id] = intern(segment.getCategoryName(id), CategoryType.of(segment.getType(row)));
+            }
+        }
+        segmentCategories.put(segment, local);
+        return local;
+    }
+
+    // Строки, удаленные позже, остаются в массивах и пропускаются при обходе
+    private void indexSegmentRows(TransactionSegment segment, Category[] local, BitSet deleted) {
+        int[][] rowsById = new int[local.length][];
+        int[] counts = new int[local.length];
+        for (int row = 0; row < segment.size(); row++) {
+            if (deleted == null || !deleted.get(row)) {
+                counts[segment.getCategoryId(row)]++;
+            }
+        }
+        for (int id = 0; id < local.length; id++) {
+            rowsById[id] = new int[counts[id]];
+            counts[id] = 0;
+        }
+        for (int row = 0; row < segment.size(); row++) {
+            if (deleted == null || !deleted.get(row)) {
+                int id = segment.getCategoryId(row);
+                rowsById[id][counts[id]++] = row;
+            }
+        }
+        for (int id = 0; id < local.length; id++) {
+            if (local[id] != null) {
+                CategoryIndex entry = entry(local[id].getId());
+                entry.sealedRows.put(segment, rowsById[id]);
+                entry.sealedCount += rowsById[id].length;
+            }
+        }
+    }
+
+    // Проверка текущих сумм: пересчитывает их и индекс категорий с нуля и заменяет накопленные.
+    // false, если накопленные значения расходились с пересчитанными.
+    public boolean verifyTotals() {
+        long income = totalIncome;
+        long expense = totalExpense;
+        List<CategoryIndex> before = categoryIndex;
+        PeriodRollups rollupsBefore = rollups;
+
+        totalIncome = 0;
+        totalExpense = 0;
+        categoryIndex = new ArrayList<>();
+        liveByDate = new TreeMap<>();
+        rollups = new PeriodRollups();
+        for (TransactionSegment segment : sealedSegments) {
+            indexSegment(segment, 1);
+        }
+        for (int slot = 0; slot < transactions.size(); slot++) {
+            if (transactions.get(slot) != null) {
+                index(transactions.get(slot), slot);
+            }
+        }
+
+        boolean consistent = income == totalIncome && expense == totalExpense
+                && rollupsBefore.sameAs(rollups);
+        CategoryIndex empty = new CategoryIndex();
+        for (int id = 0; id < Math.max(before.size(), categoryIndex.size()); id++) {
+            CategoryIndex was = id < before.size() && before.get(id) != null ? before.get(id) : empty;
+            CategoryIndex now = id < categoryIndex.size() && categoryIndex.get(id) != null
+                    ? categoryIndex.get(id) : empty;
+            consistent &= Arrays.equals(was.totals, now.totals)
+                    && was.liveCount == now.liveCount && was.sealedCount == now.sealedCount;
+        }
+        return consistent;
+    }
+
+    // Новая категория без транзакций считается категорией расходов
     public void addCategory(String category) {
-        categories.add(category);
+        intern(category, CategoryType.EXPENSE);
     }
 
     public void removeCategory(String category) {
         // Не удаляем категорию, если есть транзакции с этой категорией
-        boolean hasTransactions = transactions.stream()
-                .anyMatch(t -> t.getCategory().equals(category));
-
-        if (!hasTransactions) {
+        if (!hasTransactions(category)) {
+            int id = categories.idOf(category);
+            if (id >= 0) {
+                set(categoryIndex, id, null);
+                set(budgetsById, id, null);
+            }
             categories.remove(category);
             budgets.remove(category);
+            touch();
         }
     }
 
     public void setBudget(String category, double limit) {
-        budgets.put(category, new Budget(category, limit));
+        setBudgetCents(category, Money.toCents(limit));
+    }
+
+    public void setBudgetCents(String category, long limitCents) {
+        Budget budget = new Budget(category, 0);
+        budget.setLimitCents(limitCents);
+        putBudget(budget);
+    }
+
+    // Новый лимит существующего бюджета; false, если бюджета для категории нет
+    public boolean editBudget(String category, double limit) {
+        return editBudgetCents(category, Money.toCents(limit));
+    }
+
+    public boolean editBudgetCents(String category, long limitCents) {
+        Budget budget = budgets.get(category);
+        if (budget == null) {
+            return false;
+        }
+        budget.setLimitCents(limitCents);
+        touch();
+        return true;
+    }
+
+    // Бюджет с уже накопленными тратами: восстановление из файла, журнала или импорта
+    public Budget restoreBudget(String category, long limitCents, long spentCents, double warningThreshold) {
+        Budget budget = new Budget(category, 0, warningThreshold);
+        budget.setLimitCents(limitCents);
+        budget.setCurrentSpendingCents(spentCents);
+        putBudget(budget);
+        return budget;
+    }
+
+    private void putBudget(Budget budget) {
+        touch();
+        budgets.put(budget.getCategory(), budget);
+        int id = categories.idOf(budget.getCategory());
+        if (id >= 0) {
+            set(budgetsById, id, budget);
+        }
     }
 
     public void removeBudget(String category) {
+        touch();
         budgets.remove(category);
+        int id = categories.idOf(category);
+        if (id >= 0) {
+            set(budgetsById, id, null);
+        }
     }
 
-    public double getBalance() {
-        double income = transactions.stream()
-                .filter(t -> t.getType() == TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+    private void touch() {
+        stamp = STAMPS.incrementAndGet();
+    }
 
-        double expense = transactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+    public long getStamp() {
+        return stamp;
+    }
 
-        return income - expense;
+    public double getBalance() {
+        return Money.toDouble(getBalanceCents());
+    }
+
+    public long getBalanceCents() {
+        return totalIncome - totalExpense;
     }
 
     // Геттеры
     public String getOwner() { return owner; }
-    public List<Transaction> getTransactions() { return new ArrayList<>(transactions); }
-    public Map<String, Budget> getBudgets() { return new HashMap<>(budgets); }
-    public Set<String> getCategories() { return new HashSet<>(categories); }
+
+    // Все транзакции (сначала сегменты, затем хвост) без копирования: представление только для чтения.
+    // Действительно, пока транзакции кошелька не меняются, затем бросает ConcurrentModificationException.
+    // Только чтение: хвост с надгробиями не уплотняется здесь, а обходится представлением,
+    // поэтому параллельные читатели (аналитика, контрольная точка) кошелек не меняют
+    public List<Transaction> getTransactions() {
+        return new TransactionsView();
+    }
+
+    private class TransactionsView extends AbstractList<Transaction> implements RandomAccess {
+        private final int expectedVersion = version;
+        private final int size = getTransactionCount();
+        // Оставшиеся строки сегментов с удаленными строками; собираются при первом обращении
+        private final Map<TransactionSegment, int[]> liveRows = new HashMap<>();
+        // Занятые ячейки хвоста, если в нем есть надгробия; собираются при первом обращении
+        private int[] tailSlots;
+
+        @Override
+        public Transaction get(int index) {
+            checkVersion();
+            Objects.checkIndex(index, size);
+            for (TransactionSegment segment : sealedSegments) {
+                int[] rows = deletedRows.containsKey(segment)
+                        ? liveRows.computeIfAbsent(segment, this::collectLiveRows) : null;
+                int count = rows != null ? rows.length : segment.size();
+                if (index < count) {
+                    return Wallet.get(segment, segmentCategories.get(segment), rows != null ? rows[index] : index);
+                }
+                index -= count;
+            }
+            if (tombstones == 0) {
+                return transactions.get(index);
+            }
+            if (tailSlots == null) {
+                tailSlots = collectTailSlots();
+            }
+            return transactions.get(tailSlots[index]);
+        }
+
+        private int[] collectTailSlots() {
+            int[] slots = new int[transactions.size() - tombstones];
+            int i = 0;
+            for (int slot = 0; slot < transactions.size(); slot++) {
+                if (transactions.get(slot) != null) {
+                    slots[i++] = slot;
+                }
+            }
+            return slots;
+        }
+
+        private int[] collectLiveRows(TransactionSegment segment) {
+            BitSet deleted = deletedRows.get(segment);
+            int[] rows = new int[segment.size() - deleted.cardinality()];
+            int i = 0;
+            for (int row = deleted.nextClearBit(0); row < segment.size(); row = deleted.nextClearBit(row + 1)) {
+                rows[i++] = row;
+            }
+            return rows;
+        }
+
+        @Override
+        public int size() {
+            checkVersion();
+            return size;
+        }
+
+        @Override
+        public void forEach(Consumer<? super Transaction> action) {
+            checkVersion();
+            forEachTransaction(action::accept);
+        }
+
+        private void checkVersion() {
+            if (version != expectedVersion) {
+                throw new ConcurrentModificationException("Транзакции кошелька изменились");
+            }
+        }
+    }
+
+    // Обход всех транзакций (сначала сегменты, затем хвост) без копирования списка
+    public void forEachTransaction(Consumer<Transaction> action) {
+        for (TransactionSegment segment : sealedSegments) {
+            Category[] local = segmentCategories.get(segment);
+            for (int row = 0; row < segment.size(); row++) {
+                if (!isDeleted(segment, row)) {
+                    action.accept(get(segment, local, row));
+                }
+            }
+        }
+        for (Transaction transaction : transactions) {
+            if (transaction != null) {
+                action.accept(transaction);
+            }
+        }
+    }
+
+    // Транзакции, созданные после транзакции afterId, в любом порядке, независимо от их даты:
+    // числовые id растут по времени создания (см. TransactionIds). Транзакции со строковыми id
+    // передаются в textAction — их порядок создания неизвестен. Сегменты проверяются по столбцу id
+    // без сборки объектов Transaction.
+    public void forEachTransactionCreatedAfter(long afterId, Consumer<Transaction> action,
+                                               Consumer<Transaction> textAction) {
+        for (TransactionSegment segment : sealedSegments) {
+            Category[] local = segmentCategories.get(segment);
+            for (int row = 0; row < segment.size(); row++) {
+                long id = segment.getNumericId(row);
+                if ((id < 0 || id > afterId) && !isDeleted(segment, row)) {
+                    (id < 0 ? textAction : action).accept(get(segment, local, row));
+                }
+            }
+        }
+        for (Transaction transaction : transactions) {
+            if (transaction == null) {
+                continue;
+            }
+            if (!transaction.hasNumericId()) {
+                textAction.accept(transaction);
+            } else if (transaction.getNumericId() > afterId) {
+                action.accept(transaction);
+            }
+        }
+    }
+
+    // Транзакции с датой не раньше from
+    public void forEachTransactionSince(LocalDateTime from, Consumer<Transaction> action) {
+        forEachTransactionBetween(from, LocalDateTime.MAX, action);
+    }
+
+    // Транзакции с датой в [from, to): сначала сегменты, затем хвост, каждый по возрастанию даты.
+    // Строки сегмента отсортированы по дате, поэтому его срез ищется двоичным поиском
+    // (сегменты хранят даты в миллисекундах UTC), а срез хвоста берется из liveByDate.
+    public void forEachTransactionBetween(LocalDateTime from, LocalDateTime to, Consumer<Transaction> action) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        long fromMillis = toEpochMilli(from);
+        long toMillis = toEpochMilli(to);
+        for (TransactionSegment segment : sealedSegments) {
+            if (segment.size() == 0 || segment.getMaxEpochMilli() < fromMillis
+                    || segment.getEpochMilli(0) >= toMillis) {
+                continue;
+            }
+            Category[] local = segmentCategories.get(segment);
+            for (int row = firstRowAtOrAfter(segment, fromMillis);
+                 row < segment.size() && segment.getEpochMilli(row) < toMillis; row++) {
+                if (!isDeleted(segment, row)) {
+                    action.accept(get(segment, local, row));
+                }
+            }
+        }
+        for (List<Transaction> sameDate : liveByDate.subMap(from, true, to, false).values()) {
+            for (Transaction transaction : sameDate) {
+                action.accept(transaction);
+            }
+        }
+    }
+
+    // Транзакции за дни с startDate по endDate включительно, по возрастанию даты
+    public List<Transaction> getTransactionsForPeriod(LocalDate startDate, LocalDate endDate) {
+        List<Transaction> result = new ArrayList<>();
+        LocalDateTime to = endDate.equals(LocalDate.MAX) ? LocalDateTime.MAX : endDate.plusDays(1).atStartOfDay();
+        forEachTransactionBetween(startDate.atStartOfDay(), to, result::add);
+        // Список склеен из уже упорядоченных кусков (сегменты и хвост), TimSort сливает их почти за линейное время
+        result.sort(Comparator.comparing(Transaction::getDate));
+        return result;
+    }
+
+    // Суммы по категориям и типам за дни с startDate по endDate включительно — из корзин
+    // по дням, месяцам и годам, без обхода транзакций периода
+    public PeriodTotals getPeriodTotals(LocalDate startDate, LocalDate endDate) {
+        PeriodTotals totals = new PeriodTotals(categories);
+        rollups.collect(startDate, endDate, totals);
+        return totals;
+    }
+
+    // Минимум и максимум по категориям и крупнейшие расходы за дни с startDate по endDate включительно.
+    // В отличие от getPeriodTotals требует обхода транзакций периода; большой период
+    // обходится параллельно (см. TransactionAggregation)
+    public TransactionStats getTransactionStats(LocalDate startDate, LocalDate endDate) {
+        List<TransactionAggregation.Chunk> chunks = new ArrayList<>();
+        if (!startDate.isAfter(endDate)) {
+            LocalDateTime from = startDate.atStartOfDay();
+            LocalDateTime to = endDate.equals(LocalDate.MAX) ? LocalDateTime.MAX : endDate.plusDays(1).atStartOfDay();
+            long fromMillis = toEpochMilli(from);
+            long toMillis = toEpochMilli(to);
+            for (TransactionSegment segment : sealedSegments) {
+                TransactionAggregation.addSegment(chunks, segment, segmentCategories.get(segment),
+                        deletedRows.get(segment), firstRowAtOrAfter(segment, fromMillis),
+                        firstRowAtOrAfter(segment, toMillis));
+            }
+            List<Transaction> live = new ArrayList<>();
+            for (List<Transaction> sameDate : liveByDate.subMap(from, true, to, false).values()) {
+                live.addAll(sameDate);
+            }
+            TransactionAggregation.addLive(chunks, live);
+        }
+        return TransactionAggregation.run(categories, chunks);
+    }
+
+    private static int firstRowAtOrAfter(TransactionSegment segment, long millis) {
+        int low = 0;
+        int high = segment.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.getEpochMilli(mid) < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Границы вроде LocalDateTime.MIN/MAX не помещаются в long миллисекунд
+    private static long toEpochMilli(LocalDateTime date) {
+        try {
+            return date.toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (ArithmeticException e) {
+            return date.getYear() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    public int getTransactionCount() {
+        int count = getLiveTransactionCount();
+        for (TransactionSegment segment : sealedSegments) {
+            count += liveRowCount(segment);
+        }
+        return count;
+    }
+
+    public List<Transaction> getLiveTransactions() {
+        List<Transaction> live = new ArrayList<>(getLiveTransactionCount());
+        for (Transaction transaction : transactions) {
+            if (transaction != null) {
+                live.add(transaction);
+            }
+        }
+        return live;
+    }
+
+    public int getLiveTransactionCount() { return transactions.size() - tombstones; }
+    public List<TransactionSegment> getSealedSegments() { return new ArrayList<>(sealedSegments); }
+
+    // Копия отметок удаленных строк сегмента (пустая, если удалений не было)
+    public BitSet getDeletedRows(TransactionSegment segment) {
+        BitSet deleted = deletedRows.get(segment);
+        return deleted != null ? (BitSet) deleted.clone() : new BitSet();
+    }
+    // Представления только для чтения, без копирования; изменения — через методы кошелька
+    public Map<String, Budget> getBudgets() { return Collections.unmodifiableMap(budgets); }
+    public Budget getBudget(String category) { return budgets.get(category); }
+    public Set<String> getCategories() { return categories.names(); }
+    public CategoryDictionary getCategoryDictionary() { return categories; }
 
     public List<Transaction> getTransactionsByCategory(String category) {
-        return transactions.stream()
-                .filter(t -> t.getCategory().equals(category))
-                .collect(Collectors.toList());  // Исправлено с toList() на collect(Collectors.toList())
+        List<Transaction> result = new ArrayList<>(getCategoryTransactionCount(category));
+        forEachTransactionInCategory(category, result::add);
+        return result;
+    }
+
+    // Обход транзакций одной категории (сначала сегменты, затем хвост) по индексу
+    public void forEachTransactionInCategory(String category, Consumer<Transaction> action) {
+        CategoryIndex entry = findEntry(category);
+        if (entry == null) {
+            return;
+        }
+        Category shared = categories.get(category);
+        for (Map.Entry<TransactionSegment, int[]> sealed : entry.sealedRows.entrySet()) {
+            BitSet deleted = deletedRows.get(sealed.getKey());
+            for (int row : sealed.getValue()) {
+                if (deleted != null && deleted.get(row)) {
+                    continue;
+                }
+                Transaction transaction = sealed.getKey().get(row);
+                transaction.bindCategory(shared);
+                action.accept(transaction);
+            }
+        }
+        for (int i = 0; i < entry.liveSlotCount; i++) {
+            Transaction transaction = transactions.get(entry.liveSlots[i]);
+            if (transaction != null) {
+                action.accept(transaction);
+            }
+        }
+    }
+
+    public int getCategoryTransactionCount(String category) {
+        CategoryIndex entry = findEntry(category);
+        return entry != null ? entry.sealedCount + entry.liveCount : 0;
+    }
+
+    public boolean hasTransactions(String category) {
+        return getCategoryTransactionCount(category) > 0;
     }
 
     public List<Transaction> getIncomeTransactions() {
-        return transactions.stream()
-                .filter(t -> t.getType() == TransactionType.INCOME)
-                .collect(Collectors.toList());  // Исправлено с toList() на collect(Collectors.toList())
+        return getTransactionsByType(TransactionType.INCOME);
     }
 
     public List<Transaction> getExpenseTransactions() {
-        return transactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .collect(Collectors.toList());  // Исправлено с toList() на collect(Collectors.toList())
+        return getTransactionsByType(TransactionType.EXPENSE);
+    }
+
+    private List<Transaction> getTransactionsByType(TransactionType type) {
+        List<Transaction> result = new ArrayList<>();
+        for (TransactionSegment segment : sealedSegments) {
+            Category[] local = segmentCategories.get(segment);
+            for (int row = 0; row < segment.size(); row++) {
+                if (segment.getType(row) == type && !isDeleted(segment, row)) {
+                    result.add(get(segment, local, row));
+                }
+            }
+        }
+
+        transactions.stream()
+                .filter(t -> t != null && t.getType() == type)
+                .forEach(result::add);
+        return result;
     }
 
     public double getTotalIncome() {
-        return getIncomeTransactions().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toDouble(totalIncome);
+    }
+
+    public long getTotalIncomeCents() {
+        return totalIncome;
     }
 
     public double getTotalExpenses() {
-        return getExpenseTransactions().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toDouble(totalExpense);
+    }
+
+    public long getTotalExpensesCents() {
+        return totalExpense;
+    }
+
+    // Сумма транзакций категории заданного типа за всё время
+    public double getCategoryTotal(String category, TransactionType type) {
+        return Money.toDouble(getCategoryTotalCents(category, type));
+    }
+
+    public long getCategoryTotalCents(String category, TransactionType type) {
+        CategoryIndex entry = findEntry(category);
+        return entry != null ? entry.totals[type.ordinal()] : 0;
     }
 
     @Override
     public String toString() {
         return String.format("Кошелек пользователя %s: баланс=%.2f, транзакций=%d",
-                owner, getBalance(), transactions.size());
+                owner, getBalance(), getTransactionCount());
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package finance.mngmt.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Итоги одного кошелька для общей аналитики: суммы по категориям за все время и бюджеты.
+// Для выгруженного кошелька читается из сводки в его файле, без истории транзакций.
+public final class WalletSummary {
+    private final String owner;
+    private final String[] categories;
+    private final long[] incomeCents;
+    private final long[] expenseCents;
+    private final List<BudgetStatus> budgets;
+
+    public WalletSummary(String owner, String[] categories, long[] incomeCents, long[] expenseCents,
+                         List<BudgetStatus> budgets) {
+        this.owner = owner;
+        this.categories = categories;
+        this.incomeCents = incomeCents;
+        this.expenseCents = expenseCents;
+        this.budgets = Collections.unmodifiableList(budgets);
+    }
+
+    public static WalletSummary of(Wallet wallet) {
+        int count = wallet.getCategories().size();
+        String[] categories = new String[count];
+        long[] income = new long[count];
+        long[] expense = new long[count];
+        int i = 0;
+        for (String category : wallet.getCategories()) {
+            categories[i] = category;
+            income[i] = wallet.getCategoryTotalCents(category, TransactionType.INCOME);
+            expense[i++] = wallet.getCategoryTotalCents(category, TransactionType.EXPENSE);
+        }
+        List<BudgetStatus> budgets = new ArrayList<>(wallet.getBudgets().size());
+        for (Budget budget : wallet.getBudgets().values()) {
+            budgets.add(new BudgetStatus(budget, wallet.getCategoryTotalCents(budget.getCategory(),
+                    TransactionType.EXPENSE)));
+        }
+        return new WalletSummary(wallet.getOwner(), categories, income, expense, budgets);
+    }
+
+    public String getOwner() { return owner; }
+    public int getCategoryCount() { return categories.length; }
+    public String getCategory(int index) { return categories[index]; }
+    public long getIncomeCents(int index) { return incomeCents[index]; }
+    public long getExpenseCents(int index) { return expenseCents[index]; }
+    public List<BudgetStatus> getBudgets() { return budgets; }
+
+    public long getTotalIncomeCents() {
+        long total = 0;
+        for (long cents : incomeCents) {
+            total += cents;
+        }
+        return total;
+    }
+
+    public long getTotalExpenseCents() {
+        long total = 0;
+        for (long cents : expenseCents) {
+            total += cents;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,170 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Фоновые контрольные точки. Версия данных — seq журнала: если с прошлой точки новых записей
+// не было, точка ничего не делает. Иначе под общей блокировкой с CLI изменившиеся кошельки
+// и индекс пользователей кодируются в память, а запись во временные файлы, fsync и атомарное
+// переименование идут уже без блокировки. В конце из журнала отбрасывается то, что вошло в снимок.
+public class Checkpointer implements Closeable {
+    private final FileStorage storage;
+    private final UserRepository userRepository;
+    private final Lock lock;
+    // Одна точка за раз; вторая в это время просто пропускается
+    private final Lock running = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    private volatile long checkpointVersion;
+    private volatile long lastDurationMillis;
+    private volatile long lastSizeBytes;
+    private volatile int lastWalletCount;
+    private final AtomicLong checkpointCount = new AtomicLong();
+
+    public Checkpointer(FileStorage storage, UserRepository userRepository, Lock lock) {
+        this.storage = storage;
+        this.userRepository = userRepository;
+        this.lock = lock;
+        this.checkpointVersion = storage.getSnapshotSeq();
+    }
+
+    public void start(long intervalMillis) {
+        if (intervalMillis <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpoint, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isDirty() {
+        return storage.getJournal().getLastSeq() > version();
+    }
+
+    private long version() {
+        return Math.max(checkpointVersion, storage.getSnapshotSeq());
+    }
+
+    // Закодированный снимок кошелька и сегменты, на которые он ссылается
+    private static class EncodedWallet {
+        final String username;
+        final byte[] data;
+        final List<TransactionSegment> segments;
+
+        EncodedWallet(String username, byte[] data, List<TransactionSegment> segments) {
+            this.username = username;
+            this.data = data;
+            this.segments = segments;
+        }
+    }
+
+    // true, если точка записана; false, если данные не менялись, точка уже идет или запись не удалась
+    public boolean checkpoint() {
+        if (!running.tryLock()) {
+            return false;
+        }
+        try {
+            return writeCheckpoint();
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private boolean writeCheckpoint() {
+        long start = System.nanoTime();
+        Journal journal = storage.getJournal();
+        long seq;
+        long journalPosition;
+        byte[] index;
+        List<EncodedWallet> wallets = new ArrayList<>();
+
+        lock.lock();
+        try {
+            long version = version();
+            if (journal.getLastSeq() <= version) {
+                return false;
+            }
+            journal.sync();
+            seq = journal.getLastSeq();
+            journalPosition = journal.getPosition();
+
+            List<User> users = userRepository.getAllUsers();
+            for (User user : users) {
+                if (user.isWalletLoaded() && journal.getLastSeq(user.getUsername()) > version) {
+                    Wallet wallet = user.getWallet();
+                    wallets.add(new EncodedWallet(user.getUsername(),
+                            SnapshotCodec.encodeWallet(wallet, seq), wallet.getSealedSegments()));
+                }
+            }
+            index = SnapshotCodec.encodeUsers(users, seq);
+        } catch (IOException e) {
+            System.err.println("Ошибка контрольной точки: " + e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+
+        long size = index.length;
+        try {
+            WalletRepository walletRepository = storage.getWalletRepository();
+            for (EncodedWallet wallet : wallets) {
+                if (walletRepository.saveEncoded(wallet.username, wallet.data, seq, wallet.segments)) {
+                    size += wallet.data.length;
+                }
+            }
+            SnapshotCodec.writeAtomically(storage.getUsersFile(), index);
+        } catch (IOException e) {
+            System.err.println("Ошибка контрольной точки: " + e.getMessage());
+            return false;
+        }
+
+        lock.lock();
+        try {
+            journal.discardBefore(journalPosition);
+            checkpointVersion = seq;
+        } finally {
+            lock.unlock();
+        }
+
+        lastDurationMillis = (System.nanoTime() - start) / 1_000_000;
+        lastSizeBytes = size;
+        lastWalletCount = wallets.size();
+        checkpointCount.incrementAndGet();
+        return true;
+    }
+
+    public long getCheckpointVersion() { return version(); }
+    public long getLastDurationMillis() { return lastDurationMillis; }
+    public long getLastSizeBytes() { return lastSizeBytes; }
+    public int getLastWalletCount() { return lastWalletCount; }
+    public long getCheckpointCount() { return checkpointCount.get(); }
+
+    // Останавливает фоновый поток, дожидаясь текущей точки; вызывающий поток не должен
+    // держать общую блокировку, иначе текущая точка не сможет завершиться
+    @Override
+    public void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+    }
+}
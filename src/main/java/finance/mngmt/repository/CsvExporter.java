@@ -0,0 +1,173 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+// Экспорт CSV без printf: строка собирается в переиспользуемый StringBuilder, кодируется
+// в UTF-8 прямо в байтовый буфер и уходит в FileChannel блоками по 64 КБ
+// (или через GZIPOutputStream, если файл сжимается).
+class CsvExporter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final OutputStream gzip;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder row = new StringBuilder(256);
+    // Тот же разделитель дробной части, что давал %.2f в текущей локали
+    private final char decimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+    private int rows;
+
+    CsvExporter(Path file, boolean compress) throws IOException {
+        this(file, compress, false);
+    }
+
+    // append: строки дописываются в конец существующего файла
+    CsvExporter(Path file, boolean compress, boolean append) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        this.gzip = compress ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) : null;
+    }
+
+    void exportWallet(Wallet wallet) throws IOException {
+        writeHeader();
+        try {
+            wallet.forEachTransaction(transaction -> {
+                try {
+                    writeTransaction(transaction);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writeLine("");
+        writeLine(CsvImporter.BUDGETS_MARKER);
+        writeLine(CsvImporter.BUDGETS_HEADER);
+        for (Budget budget : wallet.getBudgets().values()) {
+            row.setLength(0);
+            row.append(budget.getCategory()).append(';');
+            Money.appendPlain(row, budget.getLimitCents(), decimalSeparator);
+            row.append(';');
+            Money.appendPlain(row, budget.getCurrentSpendingCents(), decimalSeparator);
+            row.append(';');
+            Money.appendPlain(row, budget.getRemainingCents(), decimalSeparator);
+            endRow();
+        }
+    }
+
+    void writeTransaction(Transaction transaction) throws IOException {
+        row.setLength(0);
+        row.append(transaction.getType().getDescription()).append(';');
+        appendDate(row, transaction.getDate());
+        row.append(';').append(transaction.getCategory()).append(';');
+        Money.appendPlain(row, transaction.getAmountCents(), decimalSeparator);
+        row.append(';').append(transaction.getDescription());
+        endRow();
+        rows++;
+    }
+
+    void writeHeader() throws IOException {
+        writeLine(CsvImporter.TRANSACTIONS_HEADER);
+    }
+
+    // Записанное гарантированно на диске (только для несжатых файлов)
+    void sync() throws IOException {
+        drain();
+        channel.force(true);
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    private void writeLine(String line) throws IOException {
+        row.setLength(0);
+        row.append(line);
+        endRow();
+    }
+
+    // Кодирует строку в UTF-8 без промежуточного byte[]
+    private void endRow() throws IOException {
+        row.append('\n');
+        for (int i = 0; i < row.length(); i++) {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            char c = row.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < row.length()
+                    && Character.isLowSurrogate(row.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, row.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        if (gzip != null) {
+            gzip.write(buffer.array(), 0, buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+            if (gzip != null) {
+                gzip.close();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    // dd.MM.yyyy HH:mm, как Transaction.getFormattedDate()
+    static void appendDate(StringBuilder out, LocalDateTime date) {
+        appendTwoDigits(out, date.getDayOfMonth());
+        out.append('.');
+        appendTwoDigits(out, date.getMonthValue());
+        out.append('.');
+        int year = date.getYear();
+        if (year >= 0 && year < 1000) {
+            out.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        out.append(year).append(' ');
+        appendTwoDigits(out, date.getHour());
+        out.append(':');
+        appendTwoDigits(out, date.getMinute());
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
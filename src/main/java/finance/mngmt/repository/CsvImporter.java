@@ -0,0 +1,210 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+// Потоковый импорт CSV: файл читается кусками по chunkRows строк, куски разбираются
+// в пуле потоков, а готовые пакеты добавляются в кошелек и журнал строго по порядку
+// в вызывающем потоке. В памяти одновременно не больше 2 * threads кусков.
+class CsvImporter {
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+
+    static final String TRANSACTIONS_HEADER = "Тип;Дата;Категория;Сумма;Описание";
+    static final String BUDGETS_MARKER = "Бюджеты:";
+    static final String BUDGETS_HEADER = "Категория;Лимит;Потрачено;Остаток";
+
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final Journal journal;
+    private final int threads;
+    private final int chunkRows;
+
+    private int imported;
+    private int rejected;
+
+    CsvImporter(Journal journal, int threads, int chunkRows) {
+        this.journal = journal;
+        this.threads = Math.max(1, threads);
+        this.chunkRows = Math.max(1, chunkRows);
+    }
+
+    // Разобранный кусок: транзакции в порядке строк и отклоненные строки
+    private static class Chunk {
+        final List<Transaction> transactions;
+        final List<String> rejectedLines = new ArrayList<>();
+
+        Chunk(int capacity) {
+            this.transactions = new ArrayList<>(capacity);
+        }
+    }
+
+    void importFile(User user, Path file) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "csv-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+
+        try (BufferedReader reader = open(file)) {
+            List<String> lines = new ArrayList<>(chunkRows);
+            boolean readingBudgets = false;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(BUDGETS_MARKER)) {
+                    readingBudgets = true;
+                    reader.readLine(); // Пропускаем заголовок
+                    break;
+                }
+                if (line.trim().isEmpty() || line.equals(TRANSACTIONS_HEADER)) {
+                    continue;
+                }
+
+                lines.add(line);
+                if (lines.size() == chunkRows) {
+                    submit(pool, inFlight, lines);
+                    lines = new ArrayList<>(chunkRows);
+                    if (inFlight.size() >= 2 * threads) {
+                        apply(user, await(inFlight.poll()));
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(pool, inFlight, lines);
+            }
+            while (!inFlight.isEmpty()) {
+                apply(user, await(inFlight.poll()));
+            }
+
+            // Бюджетов в файле единицы, их разбираем последовательно
+            while (readingBudgets && (line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.equals(BUDGETS_HEADER)) {
+                    continue;
+                }
+                importBudget(user, line);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("Импортировано транзакций: %d, отклонено строк: %d (%d мс, %d строк/с)%n",
+                imported, rejected, millis, (imported + rejected) * 1000L / millis);
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    int getImported() {
+        return imported;
+    }
+
+    int getRejected() {
+        return rejected;
+    }
+
+    private void submit(ExecutorService pool, Deque<Future<Chunk>> inFlight, List<String> lines) {
+        inFlight.add(pool.submit(() -> parseChunk(lines)));
+    }
+
+    private Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Импорт прерван");
+        }
+    }
+
+    private void apply(User user, Chunk chunk) {
+        if (!chunk.transactions.isEmpty()) {
+            journal.logTransactions(user.getUsername(), chunk.transactions);
+            user.getWallet().addTransactions(chunk.transactions);
+            imported += chunk.transactions.size();
+        }
+        for (String line : chunk.rejectedLines) {
+            if (rejected++ < MAX_REPORTED_ERRORS) {
+                System.err.println("Ошибка при чтении строки: " + line);
+            }
+        }
+    }
+
+    private static Chunk parseChunk(List<String> lines) {
+        Chunk chunk = new Chunk(lines.size());
+        for (String line : lines) {
+            Transaction transaction = parseTransaction(line);
+            if (transaction != null) {
+                chunk.transactions.add(transaction);
+            } else {
+                chunk.rejectedLines.add(line);
+            }
+        }
+        return chunk;
+    }
+
+    // Тип;Дата;Категория;Сумма;Описание — null, если строку разобрать не удалось
+    static Transaction parseTransaction(String line) {
+        int typeEnd = line.indexOf(';');
+        int dateEnd = typeEnd < 0 ? -1 : line.indexOf(';', typeEnd + 1);
+        int categoryEnd = dateEnd < 0 ? -1 : line.indexOf(';', dateEnd + 1);
+        int amountEnd = categoryEnd < 0 ? -1 : line.indexOf(';', categoryEnd + 1);
+        if (amountEnd < 0) {
+            return null;
+        }
+        int descriptionEnd = line.indexOf(';', amountEnd + 1);
+        if (descriptionEnd < 0) {
+            descriptionEnd = line.length();
+        }
+
+        try {
+            TransactionType type = line.startsWith("Доход;") ?
+                    TransactionType.INCOME : TransactionType.EXPENSE;
+            LocalDateTime date = LocalDateTime.parse(line.substring(typeEnd + 1, dateEnd), DATE_FORMAT);
+            String category = line.substring(dateEnd + 1, categoryEnd);
+            long amount = Money.parse(line.substring(categoryEnd + 1, amountEnd));
+            String description = line.substring(amountEnd + 1, descriptionEnd);
+
+            return Transaction.ofCents(TransactionIds.next(), amount, type, category, date, description);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void importBudget(User user, String line) {
+        String[] parts = line.split(";");
+        if (parts.length >= 4) {
+            try {
+                String category = parts[0];
+                long limit = Money.parse(parts[1]);
+                long spent = Money.parse(parts[2]);
+
+                Budget budget = new Budget(category, 0);
+                budget.setLimitCents(limit);
+                budget.setCurrentSpendingCents(spent);
+                journal.logRestoreBudget(user.getUsername(), budget);
+                user.getWallet().restoreBudget(category, limit, spent, budget.getWarningThreshold());
+            } catch (UncheckedIOException e) {
+                throw e;
+            } catch (Exception e) {
+                System.err.println("Ошибка при чтении бюджета: " + line);
+            }
+        }
+    }
+}
@@ -4,173 +4,242 @@ import finance.mngmt.model.*;
 
 import java.io.*;
 import java.nio.file.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.util.*;
 
 public class FileStorage {
     private static final String DATA_DIR = "data";
-    private static final String USERS_FILE = DATA_DIR + "/users.ser";
-    private static final String CSV_EXPORT_DIR = DATA_DIR + "/exports";
+    private static final String USERS_FILE = "users.dat";
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String WALLETS_DIR = "wallets";
+    private static final String CSV_EXPORT_DIR = "exports";
+    private static final String INCREMENTAL_EXPORT_DIR = "incremental";
+
+    private final Path dataDir;
+    private final Path usersFile;
+    private final Path exportDir;
+    private final Path walletsDir;
+    private final Journal journal;
+    private final WalletRepository walletRepository;
+    private final IncrementalExporter incrementalExporter;
+    // seq журнала, покрытый индексом пользователей на диске
+    private long snapshotSeq;
 
     public FileStorage() {
+        this(Paths.get(DATA_DIR));
+    }
+
+    public FileStorage(Path dataDir) {
+        this.dataDir = dataDir;
+        this.usersFile = dataDir.resolve(USERS_FILE);
+        this.exportDir = dataDir.resolve(CSV_EXPORT_DIR);
+        this.walletsDir = dataDir.resolve(WALLETS_DIR);
         createDirectories();
+
+        // Политика fsync журнала: -Dfinance.journal.sync=ALWAYS|GROUP|NONE
+        Journal.SyncPolicy syncPolicy = Journal.SyncPolicy.valueOf(
+                System.getProperty("finance.journal.sync", "GROUP").toUpperCase());
+        this.journal = new Journal(dataDir.resolve(JOURNAL_FILE), syncPolicy,
+                Integer.getInteger("finance.journal.groupSize", 32),
+                Long.getLong("finance.journal.groupMillis", 200L));
+        this.walletRepository = new WalletRepository(walletsDir, journal);
+        this.incrementalExporter = new IncrementalExporter(exportDir.resolve(INCREMENTAL_EXPORT_DIR));
+
+        // Режим сегментов: -Dfinance.storage.segments=true, старые транзакции читаются из отображенных файлов
+        if (Boolean.getBoolean("finance.storage.segments")) {
+            walletRepository.enableSegments(Integer.getInteger("finance.storage.sealAfterDays", 90),
+                    Integer.getInteger("finance.storage.segmentRows", 1000));
+        }
+        // Кошельки с большим хвостом держатся в памяти сжатыми блоками: -Dfinance.storage.compactRows (0 — выключить)
+        walletRepository.enableCompaction(Integer.getInteger("finance.storage.compactRows", 4096));
     }
 
     private void createDirectories() {
         try {
-            Files.createDirectories(Paths.get(DATA_DIR));
-            Files.createDirectories(Paths.get(CSV_EXPORT_DIR));
+            Files.createDirectories(dataDir);
+            Files.createDirectories(exportDir);
+            Files.createDirectories(walletsDir);
         } catch (IOException e) {
             System.err.println("Ошибка при создании директорий: " + e.getMessage());
         }
     }
 
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public WalletRepository getWalletRepository() {
+        return walletRepository;
+    }
+
+    // Контрольная точка: индекс пользователей и загруженные кошельки (незагруженные на диске
+    // не менялись). Журнал очищается только если всё записано целиком.
     public void saveUsers(Map<String, User> users) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(USERS_FILE))) {
-            oos.writeObject(users);
+        journal.sync();
+        long seq = journal.getLastSeq();
+
+        try {
+            for (User user : users.values()) {
+                if (user.isWalletLoaded()) {
+                    walletRepository.save(user.getWallet(), seq);
+                }
+            }
+            SnapshotCodec.writeUsers(usersFile, users.values(), seq);
+            journal.reset();
+            snapshotSeq = seq;
             System.out.println("Данные пользователей сохранены");
         } catch (IOException e) {
             System.err.println("Ошибка при сохранении пользователей: " + e.getMessage());
         }
     }
 
-    @SuppressWarnings("unchecked")
+    // Индекс пользователей + записи журнала, сделанные после него. Кошельки не читаются,
+    // кроме тех, к которым относятся записи журнала.
     public Map<String, User> loadUsers() {
-        File file = new File(USERS_FILE);
-        if (!file.exists()) {
-            return new HashMap<>();
+        Map<String, User> users = new HashMap<>();
+        long indexSeq = 0;
+
+        if (Files.exists(usersFile)) {
+            try {
+                SnapshotCodec.Snapshot snapshot = SnapshotCodec.readUsers(usersFile);
+                users = snapshot.getUsers();
+                indexSeq = snapshot.getJournalSeq();
+            } catch (IOException e) {
+                System.err.println("Ошибка при загрузке пользователей: " + e.getMessage());
+            }
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(USERS_FILE))) {
-            Map<String, User> users = (Map<String, User>) ois.readObject();
-            System.out.println("Данные пользователей загружены: " + users.size() + " пользователей");
-            return users;
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Ошибка при загрузке пользователей: " + e.getMessage());
-            return new HashMap<>();
+        snapshotSeq = indexSeq;
+        int replayed = journal.replay(users, indexSeq, walletRepository);
+        if (replayed > 0) {
+            System.out.println("Восстановлено из журнала записей: " + replayed);
         }
+        System.out.println("Данные пользователей загружены: " + users.size() + " пользователей");
+        return users;
+    }
+
+    public long getSnapshotSeq() {
+        return snapshotSeq;
+    }
+
+    Path getUsersFile() {
+        return usersFile;
     }
 
+    public void close() {
+        journal.close();
+    }
+
+    // Имя с окончанием .gz — файл сжимается на лету
     public void exportToCSV(User user, String filename) {
-        if (!filename.toLowerCase().endsWith(".csv")) {
-            filename += ".csv";
+        String lower = filename.toLowerCase();
+        boolean compress = lower.endsWith(".gz");
+        if (!lower.endsWith(".csv") && !lower.endsWith(".csv.gz")) {
+            filename = compress ? filename.substring(0, filename.length() - 3) + ".csv.gz" : filename + ".csv";
         }
 
-        String filepath = CSV_EXPORT_DIR + "/" + filename;
-
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filepath))) {
-            // Записываем заголовок
-            writer.println("Тип;Дата;Категория;Сумма;Описание");
-
-            // Записываем транзакции
-            for (Transaction transaction : user.getWallet().getTransactions()) {
-                writer.printf("%s;%s;%s;%.2f;%s%n",
-                        transaction.getType().getDescription(),
-                        transaction.getFormattedDate(),
-                        transaction.getCategory(),
-                        transaction.getAmount(),
-                        transaction.getDescription()
-                );
-            }
-
-            // Записываем бюджеты
-            writer.println("\nБюджеты:");
-            writer.println("Категория;Лимит;Потрачено;Остаток");
-            for (Budget budget : user.getWallet().getBudgets().values()) {
-                writer.printf("%s;%.2f;%.2f;%.2f%n",
-                        budget.getCategory(),
-                        budget.getLimit(),
-                        budget.getCurrentSpending(),
-                        budget.getRemaining()
-                );
-            }
+        Path filepath = exportDir.resolve(filename);
+        long start = System.nanoTime();
 
-            System.out.println("Данные экспортированы в: " + filepath);
+        try (CsvExporter exporter = new CsvExporter(filepath, compress)) {
+            exporter.exportWallet(user.getWallet());
+            System.out.printf("Экспортировано транзакций: %d (%d мс)%n",
+                    exporter.getRows(), (System.nanoTime() - start) / 1_000_000);
         } catch (IOException e) {
             System.err.println("Ошибка при экспорте в CSV: " + e.getMessage());
+            return;
+        }
+        System.out.println("Данные экспортированы в: " + filepath);
+    }
+
+    // Дописывает в exports/incremental/<пользователь>/<сегодня>.csv (или .jsonl) транзакции,
+    // появившиеся после прошлого инкрементального экспорта в этом формате
+    public void exportIncremental(User user) {
+        exportIncremental(user, false);
+    }
+
+    public void exportIncremental(User user, boolean json) {
+        LocalDate today = LocalDate.now();
+        IncrementalExporter.Format format = json ? IncrementalExporter.Format.JSON : IncrementalExporter.Format.CSV;
+        try {
+            int exported = incrementalExporter.export(user, today, format);
+            if (exported == 0) {
+                System.out.println("Новых транзакций для экспорта нет");
+            } else {
+                System.out.println("Новых транзакций: " + exported + ", дописаны в: "
+                        + incrementalExporter.fileFor(user, today, format));
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при инкрементальном экспорте: " + e.getMessage());
         }
     }
 
     public void importFromCSV(User user, String filename) {
-        String filepath = CSV_EXPORT_DIR + "/" + filename;
-        if (!filepath.toLowerCase().endsWith(".csv")) {
-            filepath += ".csv";
+        String lower = filename.toLowerCase();
+        if (!lower.endsWith(".csv") && !lower.endsWith(".csv.gz")) {
+            filename += ".csv";
         }
 
-        File file = new File(filepath);
-        if (!file.exists()) {
+        Path filepath = exportDir.resolve(filename);
+        if (!Files.exists(filepath)) {
             System.err.println("Файл не найден: " + filepath);
             return;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
-            String line;
-            boolean readingBudgets = false;
+        // Число потоков разбора: -Dfinance.import.threads, по умолчанию по числу процессоров
+        CsvImporter importer = new CsvImporter(journal,
+                Integer.getInteger("finance.import.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("finance.import.chunkRows", 4096));
+        try {
+            importer.importFile(user, filepath);
+            walletRepository.compactIfLarge(user.getWallet());
+            System.out.println("Данные импортированы из: " + filepath);
+        } catch (IOException e) {
+            System.err.println("Ошибка при импорте из CSV: " + e.getMessage());
+        }
+    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    // Имя с окончанием .gz — файл сжимается на лету
+    public void exportToJSON(User user, String filename) {
+        Path filepath = exportDir.resolve(jsonFileName(filename));
+        long start = System.nanoTime();
 
-                if (line.equals("Бюджеты:")) {
-                    readingBudgets = true;
-                    reader.readLine(); // Пропускаем заголовок
-                    continue;
-                }
+        try {
+            int exported = JsonWalletCodec.write(user.getWallet(), filepath,
+                    filepath.getFileName().toString().endsWith(".gz"));
+            System.out.printf("Экспортировано транзакций: %d (%d мс)%n",
+                    exported, (System.nanoTime() - start) / 1_000_000);
+            System.out.println("Данные экспортированы в: " + filepath);
+        } catch (IOException e) {
+            System.err.println("Ошибка при экспорте в JSON: " + e.getMessage());
+        }
+    }
 
-                if (!readingBudgets) {
-                    // Читаем транзакции
-                    if (line.equals("Тип;Дата;Категория;Сумма;Описание")) {
-                        continue;
-                    }
-
-                    String[] parts = line.split(";");
-                    if (parts.length >= 5) {
-                        try {
-                            TransactionType type = parts[0].equals("Доход") ?
-                                    TransactionType.INCOME : TransactionType.EXPENSE;
-
-                            LocalDateTime date = LocalDateTime.parse(parts[1],
-                                    DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"));
-
-                            String category = parts[2];
-                            double amount = Double.parseDouble(parts[3].replace(',', '.'));
-                            String description = parts[4];
-
-                            Transaction transaction = new Transaction(
-                                    UUID.randomUUID().toString(),
-                                    amount, type, category, date, description
-                            );
-                            user.getWallet().addTransaction(transaction);
-                        } catch (Exception e) {
-                            System.err.println("Ошибка при чтении строки: " + line);
-                        }
-                    }
-                } else {
-                    // Читаем бюджеты
-                    if (line.equals("Категория;Лимит;Потрачено;Остаток")) {
-                        continue;
-                    }
-
-                    String[] parts = line.split(";");
-                    if (parts.length >= 4) {
-                        try {
-                            String category = parts[0];
-                            double limit = Double.parseDouble(parts[1].replace(',', '.'));
-                            double spent = Double.parseDouble(parts[2].replace(',', '.'));
-
-                            Budget budget = new Budget(category, limit);
-                            budget.setCurrentSpending(spent);
-                            user.getWallet().getBudgets().put(category, budget);
-                        } catch (Exception e) {
-                            System.err.println("Ошибка при чтении бюджета: " + line);
-                        }
-                    }
-                }
-            }
+    public void importFromJSON(User user, String filename) {
+        Path filepath = exportDir.resolve(jsonFileName(filename));
+        if (!Files.exists(filepath)) {
+            System.err.println("Файл не найден: " + filepath);
+            return;
+        }
 
+        long start = System.nanoTime();
+        JsonWalletCodec codec = new JsonWalletCodec();
+        try {
+            codec.read(user, filepath, journal);
+            walletRepository.compactIfLarge(user.getWallet());
+            System.out.printf("Импортировано транзакций: %d, пропущено: %d (%d мс)%n",
+                    codec.getImported(), codec.getSkipped(), (System.nanoTime() - start) / 1_000_000);
             System.out.println("Данные импортированы из: " + filepath);
         } catch (IOException e) {
-            System.err.println("Ошибка при импорте из CSV: " + e.getMessage());
+            System.err.println("Ошибка при импорте из JSON: " + e.getMessage());
+        }
+    }
+
+    private static String jsonFileName(String filename) {
+        String lower = filename.toLowerCase();
+        if (lower.endsWith(".json") || lower.endsWith(".json.gz")) {
+            return filename;
         }
+        return lower.endsWith(".gz") ? filename.substring(0, filename.length() - 3) + ".json.gz" : filename + ".json";
     }
-}
\ No newline at end of file
+}
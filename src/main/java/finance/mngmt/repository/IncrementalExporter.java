@@ -0,0 +1,211 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Инкрементальный экспорт: для каждого пользователя и формата хранится отметка (watermark) —
+// наибольший выгруженный числовой id. Id растут по времени создания транзакции, а не по ее дате,
+// поэтому транзакции, добавленные задним числом (импорт CSV), тоже попадают в следующую выгрузку.
+// Каждый запуск дописывает в файл <каталог пользователя>/<дата>.csv (или .jsonl — по объекту
+// JSON на строку) только транзакции новее отметки.
+// Транзакции со строковыми id (старые UUID, id из импорта JSON) учитываются списком в файле отметки.
+// Ограничение: транзакции из импорта JSON с числовыми id старше отметки (созданные раньше
+// в другом кошельке) считаются уже выгруженными.
+class IncrementalExporter {
+    enum Format {
+        CSV("csv", "watermark"),
+        JSON("jsonl", "watermark-json");
+
+        final String extension;
+        final String watermarkFile;
+
+        Format(String extension, String watermarkFile) {
+            this.extension = extension;
+            this.watermarkFile = watermarkFile;
+        }
+    }
+
+    private static final String ID_PREFIX = "id ";
+
+    private final Path baseDir;
+
+    IncrementalExporter(Path baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    // Отметка: наибольший выгруженный числовой id и выгруженные строковые id
+    private static class Watermark {
+        long lastId = -1;
+        final Set<String> textIds = new HashSet<>();
+        // Отметка старого формата (время последней выгруженной транзакции): строковые id
+        // с датой не позже нее уже выгружены
+        long legacyMilli = Long.MIN_VALUE;
+        final Set<String> legacyIds = new HashSet<>();
+
+        boolean isExported(Transaction transaction) {
+            if (textIds.contains(transaction.getId())) {
+                return true;
+            }
+            long transactionMilli = SnapshotCodec.toEpochMilli(transaction.getDate());
+            return transactionMilli < legacyMilli
+                    || (transactionMilli == legacyMilli && legacyIds.contains(transaction.getId()));
+        }
+    }
+
+    // Куда дописываются строки: CSV или JSON Lines
+    private interface Output extends Closeable {
+        void write(Transaction transaction) throws IOException;
+
+        void sync() throws IOException;
+    }
+
+    // Возвращает число выгруженных транзакций
+    int export(User user, LocalDate day, Format format) throws IOException {
+        Path dir = baseDir.resolve(WalletRepository.escape(user.getUsername()));
+        Files.createDirectories(dir);
+        Path watermarkFile = dir.resolve(format.watermarkFile);
+        Watermark watermark = readWatermark(watermarkFile);
+        long from = watermark.lastId;
+
+        Path file = fileFor(user, day, format);
+        boolean newFile = !Files.exists(file) || Files.size(file) == 0;
+        Output[] output = new Output[1];
+        int[] rows = new int[1];
+
+        Consumer<Transaction> export = transaction -> {
+            try {
+                if (output[0] == null) {
+                    output[0] = open(file, format, newFile);
+                }
+                output[0].write(transaction);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows[0]++;
+            if (transaction.hasNumericId()) {
+                watermark.lastId = Math.max(watermark.lastId, transaction.getNumericId());
+            }
+        };
+        Consumer<Transaction> exportText = transaction -> {
+            if (watermark.isExported(transaction)) {
+                watermark.textIds.add(transaction.getId());
+                return;
+            }
+            export.accept(transaction);
+            watermark.textIds.add(transaction.getId());
+        };
+
+        try {
+            user.getWallet().forEachTransactionCreatedAfter(from, export, exportText);
+            if (output[0] == null) {
+                if (watermark.legacyMilli != Long.MIN_VALUE) {
+                    writeWatermark(watermarkFile, watermark);
+                }
+                return 0;
+            }
+            // Сначала данные на диск, потом отметка: при сбое между ними строки выгрузятся повторно, но не потеряются
+            output[0].sync();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (output[0] != null) {
+                output[0].close();
+            }
+        }
+
+        writeWatermark(watermarkFile, watermark);
+        return rows[0];
+    }
+
+    Path fileFor(User user, LocalDate day, Format format) {
+        return baseDir.resolve(WalletRepository.escape(user.getUsername())).resolve(day + "." + format.extension);
+    }
+
+    private static Output open(Path file, Format format, boolean newFile) throws IOException {
+        if (format == Format.JSON) {
+            FileOutputStream stream = new FileOutputStream(file.toFile(), true);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            return new Output() {
+                @Override
+                public void write(Transaction transaction) throws IOException {
+                    JsonWalletCodec.writeLine(writer, transaction);
+                }
+
+                @Override
+                public void sync() throws IOException {
+                    writer.flush();
+                    stream.getChannel().force(false);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+
+        CsvExporter exporter = new CsvExporter(file, false, true);
+        if (newFile) {
+            exporter.writeHeader();
+        }
+        return new Output() {
+            @Override
+            public void write(Transaction transaction) throws IOException {
+                exporter.writeTransaction(transaction);
+            }
+
+            @Override
+            public void sync() throws IOException {
+                exporter.sync();
+            }
+
+            @Override
+            public void close() throws IOException {
+                exporter.close();
+            }
+        };
+    }
+
+    private static Watermark readWatermark(Path file) throws IOException {
+        Watermark watermark = new Watermark();
+        if (!Files.exists(file)) {
+            return watermark;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return watermark;
+        }
+        try {
+            String first = lines.get(0).trim();
+            if (first.startsWith(ID_PREFIX)) {
+                watermark.lastId = Long.parseLong(first.substring(ID_PREFIX.length()));
+                watermark.textIds.addAll(lines.subList(1, lines.size()));
+            } else {
+                // Старый формат: время последней выгруженной транзакции и id с этим временем.
+                // Числовые id, созданные не позже этого времени, считаются выгруженными.
+                watermark.legacyMilli = Long.parseLong(first);
+                watermark.lastId = TransactionIds.lastAt(watermark.legacyMilli);
+                watermark.legacyIds.addAll(lines.subList(1, lines.size()));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Поврежден файл отметки " + file);
+        }
+        return watermark;
+    }
+
+    private static void writeWatermark(Path file, Watermark watermark) throws IOException {
+        List<String> lines = new ArrayList<>(watermark.textIds.size() + 1);
+        lines.add(ID_PREFIX + watermark.lastId);
+        lines.addAll(watermark.textIds);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,665 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Журнал изменений (write-ahead log): каждое изменение дописывается в конец файла
+// небольшой записью вида [длина][crc32][seq][тип][данные]. Запись делается до изменения
+// данных в памяти; если записать не удалось, log* бросает UncheckedIOException, недописанные
+// байты обрезаются, и операция отклоняется.
+public class Journal implements Closeable {
+
+    public enum SyncPolicy {
+        ALWAYS, // fsync после каждой записи
+        GROUP,  // fsync раз в groupSize записей или раз в groupMillis мс
+        NONE    // fsync только при закрытии и контрольной точке
+    }
+
+    // Типы записей
+    static final byte REGISTER_USER = 1;
+    static final byte CHANGE_PASSWORD = 2;
+    static final byte ADD_TRANSACTION = 3;
+    static final byte TRANSFER = 4;
+    static final byte ADD_CATEGORY = 5;
+    static final byte REMOVE_CATEGORY = 6;
+    static final byte SET_BUDGET = 7;
+    static final byte EDIT_BUDGET = 8;
+    static final byte REMOVE_BUDGET = 9;
+    static final byte RESTORE_BUDGET = 10;
+    // Те же записи с суммами в копейках (long). Записи 3, 4, 7, 8, 10 с double пишутся только
+    // старыми версиями и читаются для совместимости
+    static final byte ADD_TRANSACTION_CENTS = 11;
+    static final byte TRANSFER_CENTS = 12;
+    static final byte SET_BUDGET_CENTS = 13;
+    static final byte EDIT_BUDGET_CENTS = 14;
+    static final byte RESTORE_BUDGET_CENTS = 15;
+    static final byte REMOVE_TRANSACTIONS = 16;
+
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+
+    private final Path file;
+    private final SyncPolicy syncPolicy;
+    private final int groupSize;
+    private final long groupMillis;
+
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 crc = new CRC32();
+    // Кадры, собранные в пакет и еще не записанные в файл
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private int pendingRecords;
+
+    private FileChannel channel;
+    private long lastSeq;
+    // seq последней записи, затронувшей кошелек пользователя (для контрольных точек)
+    private final Map<String, Long> userSeqs = new HashMap<>();
+    private int unsyncedRecords;
+    private long lastSyncTime;
+
+    public Journal(Path file, SyncPolicy syncPolicy, int groupSize, long groupMillis) {
+        this.file = file;
+        this.syncPolicy = syncPolicy;
+        this.groupSize = Math.max(1, groupSize);
+        this.groupMillis = groupMillis;
+        this.lastSyncTime = System.currentTimeMillis();
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = Math.max(this.lastSeq, lastSeq);
+    }
+
+    // 0, если с запуска записей о пользователе не было
+    public long getLastSeq(String username) {
+        return userSeqs.getOrDefault(username, 0L);
+    }
+
+    // Запись изменений
+
+    public void logRegister(String username, String password) {
+        try {
+            begin(REGISTER_USER, username);
+            record.writeUTF(password);
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    public void logChangePassword(String username, String password) {
+        try {
+            begin(CHANGE_PASSWORD, username);
+            record.writeUTF(password);
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    public void logTransaction(String username, Transaction transaction) {
+        try {
+            begin(ADD_TRANSACTION_CENTS, username);
+            writeTransaction(transaction);
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    // Пакет транзакций (импорт) уходит в файл крупными блоками, а не отдельным write() на запись.
+    // Пакет записывается целиком или никак: при ошибке уже записанные блоки обрезаются
+    public void logTransactions(String username, List<Transaction> transactions) {
+        long seqMark = lastSeq;
+        long positionMark = -1;
+        try {
+            positionMark = channel().size();
+            for (Transaction transaction : transactions) {
+                begin(ADD_TRANSACTION_CENTS, username);
+                writeTransaction(transaction);
+                frame();
+                if (pending.size() >= MAX_PENDING_BYTES) {
+                    flush();
+                }
+            }
+            flush();
+        } catch (IOException e) {
+            pending.reset();
+            pendingRecords = 0;
+            if (positionMark >= 0) {
+                truncateAfterFailure(positionMark, e);
+            }
+            lastSeq = seqMark;
+            throw failure(e);
+        }
+    }
+
+    // Перевод пишется одной записью, чтобы после сбоя не остались половинки
+    public void logTransfer(String fromUsername, Transaction senderTransaction,
+                            String toUsername, Transaction receiverTransaction) {
+        try {
+            begin(TRANSFER_CENTS, fromUsername);
+            writeTransaction(senderTransaction);
+            record.writeUTF(toUsername);
+            userSeqs.put(toUsername, lastSeq + pendingRecords + 1);
+            writeTransaction(receiverTransaction);
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    // Удаление пачкой — одна запись: [число id][id...]
+    public void logRemoveTransactions(String username, Collection<String> transactionIds) {
+        try {
+            begin(REMOVE_TRANSACTIONS, username);
+            record.writeInt(transactionIds.size());
+            for (String transactionId : transactionIds) {
+                record.writeUTF(transactionId);
+            }
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    public void logAddCategory(String username, String category) {
+        logCategory(ADD_CATEGORY, username, category);
+    }
+
+    public void logRemoveCategory(String username, String category) {
+        logCategory(REMOVE_CATEGORY, username, category);
+    }
+
+    public void logSetBudget(String username, String category, long limitCents) {
+        logBudget(SET_BUDGET_CENTS, username, category, limitCents);
+    }
+
+    public void logEditBudget(String username, String category, long limitCents) {
+        logBudget(EDIT_BUDGET_CENTS, username, category, limitCents);
+    }
+
+    public void logRemoveBudget(String username, String category) {
+        logCategory(REMOVE_BUDGET, username, category);
+    }
+
+    // Бюджет целиком (лимит, потрачено, порог) — при импорте, где потраченное берется из файла
+    public void logRestoreBudget(String username, Budget budget) {
+        try {
+            begin(RESTORE_BUDGET_CENTS, username);
+            record.writeUTF(budget.getCategory());
+            record.writeLong(budget.getLimitCents());
+            record.writeLong(budget.getCurrentSpendingCents());
+            record.writeDouble(budget.getWarningThreshold());
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    private void logCategory(byte type, String username, String category) {
+        try {
+            begin(type, username);
+            record.writeUTF(category);
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    private void logBudget(byte type, String username, String category, long limitCents) {
+        try {
+            begin(type, username);
+            record.writeUTF(category);
+            record.writeLong(limitCents);
+            commit();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    private void begin(byte type, String username) throws IOException {
+        recordBytes.reset();
+        record.writeLong(lastSeq + pendingRecords + 1);
+        userSeqs.put(username, lastSeq + pendingRecords + 1);
+        record.writeByte(type);
+        record.writeUTF(username);
+    }
+
+    private void writeTransaction(Transaction transaction) throws IOException {
+        record.writeUTF(transaction.getId());
+        record.writeLong(transaction.getAmountCents());
+        record.writeByte(transaction.getType().ordinal());
+        record.writeUTF(transaction.getCategory());
+        record.writeLong(SnapshotCodec.toEpochMilli(transaction.getDate()));
+        record.writeUTF(transaction.getDescription());
+    }
+
+    private void commit() throws IOException {
+        frame();
+        flush();
+    }
+
+    private void frame() throws IOException {
+        record.flush();
+        byte[] payload = recordBytes.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+
+        pendingOut.writeInt(payload.length);
+        pendingOut.writeInt((int) crc.getValue());
+        pendingOut.write(payload);
+        pendingRecords++;
+    }
+
+    private void flush() throws IOException {
+        if (pendingRecords == 0) {
+            return;
+        }
+        FileChannel out = channel();
+        long start = out.size();
+        try {
+            ByteBuffer frames = ByteBuffer.wrap(pending.toByteArray());
+            while (frames.hasRemaining()) {
+                out.write(frames);
+            }
+            unsyncedRecords += pendingRecords;
+            if (syncPolicy == SyncPolicy.ALWAYS) {
+                force();
+            } else if (syncPolicy == SyncPolicy.GROUP
+                    && (unsyncedRecords >= groupSize
+                    || System.currentTimeMillis() - lastSyncTime >= groupMillis)) {
+                force();
+            }
+            lastSeq += pendingRecords;
+        } catch (IOException e) {
+            // Отклоненные записи не должны примениться при восстановлении
+            truncateAfterFailure(start, e);
+            throw e;
+        } finally {
+            pending.reset();
+            pendingRecords = 0;
+        }
+    }
+
+    private void truncateAfterFailure(long position, IOException failure) {
+        try {
+            channel().truncate(position);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        unsyncedRecords = 0;
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    // Сброс накопленных записей на диск (group commit)
+    public void sync() {
+        if (channel == null || unsyncedRecords == 0) {
+            return;
+        }
+
+        try {
+            force();
+        } catch (IOException e) {
+            reportError(e);
+        }
+    }
+
+    // Длина журнала с учетом всех записанных записей
+    public long getPosition() {
+        try {
+            if (channel != null) {
+                return channel.size();
+            }
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            reportError(e);
+            return 0;
+        }
+    }
+
+    // Отбрасывает начало журнала до position (оно уже в снимке). Записи, сделанные после
+    // снимка, переносятся в новый файл, который атомарно заменяет старый.
+    public void discardBefore(long position) {
+        long size = getPosition();
+        if (size <= position) {
+            reset();
+            return;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < size - position) {
+                    copied += source.transferTo(position + copied, size - position - copied, target);
+                }
+                target.force(true);
+            }
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            reportError(e);
+        }
+    }
+
+    // Вызывается после успешной записи снимка: всё до lastSeq уже в снимке
+    public void reset() {
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            Files.deleteIfExists(file);
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            reportError(e);
+        }
+    }
+
+    // Восстановление: применяет записи новее снимков. Пользовательские записи сравниваются
+    // с seq индекса пользователей, записи кошелька — с seq файла этого кошелька; нужные
+    // кошельки подгружаются по ходу. Оборванный хвост (сбой посреди записи) отбрасывается.
+    public int replay(Map<String, User> users, long indexSeq, WalletRepository wallets) {
+        setLastSeq(indexSeq);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        Replay replay = new Replay(users, indexSeq, wallets);
+        long validLength = 0;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] buffer = new byte[256];
+
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                try {
+                    in.readFully(buffer, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream data = new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+                long seq = data.readLong();
+                replay.apply(seq, data);
+                lastSeq = Math.max(lastSeq, seq);
+                validLength += FRAME_HEADER_SIZE + length;
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при чтении журнала: " + e.getMessage());
+        }
+
+        truncateTo(validLength);
+        return replay.applied;
+    }
+
+    private final class Replay {
+        private final Map<String, User> users;
+        private final long indexSeq;
+        private final WalletRepository wallets;
+        private final Map<String, Long> walletSeqs = new HashMap<>();
+        private int applied;
+
+        Replay(Map<String, User> users, long indexSeq, WalletRepository wallets) {
+            this.users = users;
+            this.indexSeq = indexSeq;
+            this.wallets = wallets;
+        }
+
+        void apply(long seq, DataInputStream data) throws IOException {
+            byte type = data.readByte();
+            String username = data.readUTF();
+
+            if (type == REGISTER_USER) {
+                String password = data.readUTF();
+                if (seq > indexSeq && !users.containsKey(username)) {
+                    users.put(username, new User(username, password, null));
+                    applied++;
+                }
+                return;
+            }
+
+            User user = users.get(username);
+            if (user == null) {
+                System.err.println("Журнал: пользователь не найден: " + username);
+                return;
+            }
+
+            if (type == CHANGE_PASSWORD) {
+                String password = data.readUTF();
+                if (seq > indexSeq) {
+                    user.setPassword(password);
+                    applied++;
+                }
+                return;
+            }
+
+            Wallet wallet = walletFor(user, seq);
+
+            switch (type) {
+                case ADD_TRANSACTION:
+                case ADD_TRANSACTION_CENTS: {
+                    Transaction transaction = readTransaction(data, type == ADD_TRANSACTION_CENTS);
+                    if (wallet != null) {
+                        wallet.addTransaction(transaction);
+                    }
+                    break;
+                }
+                case TRANSFER:
+                case TRANSFER_CENTS: {
+                    boolean cents = type == TRANSFER_CENTS;
+                    Transaction senderTransaction = readTransaction(data, cents);
+                    User receiver = users.get(data.readUTF());
+                    Transaction receiverTransaction = readTransaction(data, cents);
+                    if (wallet != null) {
+                        wallet.addTransaction(senderTransaction);
+                    }
+                    Wallet receiverWallet = receiver != null ? walletFor(receiver, seq) : null;
+                    if (receiverWallet != null) {
+                        receiverWallet.addTransaction(receiverTransaction);
+                        if (wallet == null) {
+                            applied++;
+                        }
+                    }
+                    break;
+                }
+                case REMOVE_TRANSACTIONS: {
+                    int count = data.readInt();
+                    List<String> transactionIds = new ArrayList<>(Math.min(count, 1024));
+                    for (int i = 0; i < count; i++) {
+                        transactionIds.add(data.readUTF());
+                    }
+                    if (wallet != null) {
+                        wallet.removeTransactions(transactionIds);
+                    }
+                    break;
+                }
+                case ADD_CATEGORY: {
+                    String category = data.readUTF();
+                    if (wallet != null) {
+                        wallet.addCategory(category);
+                    }
+                    break;
+                }
+                case REMOVE_CATEGORY: {
+                    String category = data.readUTF();
+                    if (wallet != null) {
+                        wallet.removeCategory(category);
+                    }
+                    break;
+                }
+                case SET_BUDGET:
+                case SET_BUDGET_CENTS: {
+                    String category = data.readUTF();
+                    long limit = readAmount(data, type == SET_BUDGET_CENTS);
+                    if (wallet != null) {
+                        wallet.setBudgetCents(category, limit);
+                    }
+                    break;
+                }
+                case EDIT_BUDGET:
+                case EDIT_BUDGET_CENTS: {
+                    String category = data.readUTF();
+                    long limit = readAmount(data, type == EDIT_BUDGET_CENTS);
+                    if (wallet != null) {
+                        wallet.editBudgetCents(category, limit);
+                    }
+                    break;
+                }
+                case REMOVE_BUDGET: {
+                    String category = data.readUTF();
+                    if (wallet != null) {
+                        wallet.removeBudget(category);
+                    }
+                    break;
+                }
+                case RESTORE_BUDGET:
+                case RESTORE_BUDGET_CENTS: {
+                    boolean cents = type == RESTORE_BUDGET_CENTS;
+                    String category = data.readUTF();
+                    long limit = readAmount(data, cents);
+                    long spent = readAmount(data, cents);
+                    double threshold = data.readDouble();
+                    if (wallet != null) {
+                        wallet.restoreBudget(category, limit, spent, threshold);
+                    }
+                    break;
+                }
+                default:
+                    System.err.println("Журнал: неизвестный тип записи " + type);
+                    return;
+            }
+
+            if (wallet != null) {
+                applied++;
+            }
+        }
+
+        // Кошелек пользователя, если запись seq в нем еще не учтена, иначе null
+        private Wallet walletFor(User user, long seq) {
+            String username = user.getUsername();
+            if (!user.isWalletLoaded()) {
+                try {
+                    SnapshotCodec.WalletSnapshot snapshot = wallets != null ? wallets.load(username) : null;
+                    user.setWallet(snapshot != null ? snapshot.getWallet() : new Wallet(username));
+                    walletSeqs.put(username, snapshot != null ? snapshot.getJournalSeq() : 0L);
+                } catch (IOException e) {
+                    // Кошелек остается незагруженным, чтобы не перезаписать его файл пустым
+                    System.err.println("Журнал: не удалось загрузить кошелек " + username + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            // Кошельки, прочитанные вместе с индексом (users.dat версии 1), покрыты его seq
+            if (seq <= walletSeqs.getOrDefault(username, indexSeq)) {
+                return null;
+            }
+            userSeqs.put(username, seq);
+            return user.getWallet();
+        }
+    }
+
+    // cents: сумма записана в копейках (long), иначе — double старых записей
+    private Transaction readTransaction(DataInputStream data, boolean cents) throws IOException {
+        String id = data.readUTF();
+        long amount = readAmount(data, cents);
+        TransactionType type = TransactionType.values()[data.readByte()];
+        String category = data.readUTF();
+        LocalDateTime date = SnapshotCodec.fromEpochMilli(data.readLong());
+        String description = data.readUTF();
+        return Transaction.ofCents(id, amount, type, category, date, description);
+    }
+
+    private static long readAmount(DataInputStream data, boolean cents) throws IOException {
+        return cents ? data.readLong() : Money.toCents(data.readDouble());
+    }
+
+    private void truncateTo(long validLength) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (ch.size() > validLength) {
+                System.err.println("Журнал: отброшен поврежденный хвост ("
+                        + (ch.size() - validLength) + " байт)");
+                ch.truncate(validLength);
+            }
+        } catch (IOException e) {
+            reportError(e);
+        }
+    }
+
+    private static UncheckedIOException failure(IOException e) {
+        return new UncheckedIOException("Ошибка при записи журнала: " + e.getMessage(), e);
+    }
+
+    // Ошибки обслуживания журнала (fsync по расписанию, обрезка после снимка) операции не отклоняют
+    private void reportError(IOException e) {
+        System.err.println("Ошибка при записи журнала: " + e.getMessage());
+    }
+
+    @Override
+    public void close() {
+        sync();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                reportError(e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package finance.mngmt.repository;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Обмен кошельками в JSON через потоковый API Gson (JsonWriter/JsonReader), без построения
+// дерева: транзакции пишутся и читаются по одной, в памяти только текущий пакет.
+//
+// {"format": "finance-wallet", "version": 1, "owner": "...",
+//  "categories": ["..."],
+//  "transactions": [{"id", "type": "INCOME|EXPENSE", "amount", "category", "date": ISO-8601, "description"}],
+//  "budgets": [{"category", "limit", "spent", "warningThreshold"}]}
+//
+// В отличие от CSV сохраняются id, точное время и сумма, категории без транзакций и порог бюджета.
+class JsonWalletCodec {
+    static final String FORMAT = "finance-wallet";
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 4096;
+
+    private int imported;
+    private int skipped;
+
+    // Возвращает число записанных транзакций
+    static int write(Wallet wallet, Path file, boolean compress) throws IOException {
+        try (OutputStream fileOut = Files.newOutputStream(file);
+             OutputStream out = compress ? new GZIPOutputStream(fileOut, BUFFER_SIZE) : fileOut;
+             JsonWriter json = new JsonWriter(new BufferedWriter(
+                     new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            json.beginObject();
+            json.name("format").value(FORMAT);
+            json.name("version").value(VERSION);
+            json.name("owner").value(wallet.getOwner());
+
+            json.name("categories").beginArray();
+            for (String category : new TreeSet<>(wallet.getCategories())) {
+                json.value(category);
+            }
+            json.endArray();
+
+            int[] count = new int[1];
+            json.name("transactions").beginArray();
+            try {
+                wallet.forEachTransaction(transaction -> {
+                    try {
+                        writeTransaction(json, transaction);
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            json.endArray();
+
+            json.name("budgets").beginArray();
+            for (Budget budget : wallet.getBudgets().values()) {
+                json.beginObject();
+                json.name("category").value(budget.getCategory());
+                json.name("limit");
+                writeAmount(json, budget.getLimitCents());
+                json.name("spent");
+                writeAmount(json, budget.getCurrentSpendingCents());
+                json.name("warningThreshold").value(budget.getWarningThreshold());
+                json.endObject();
+            }
+            json.endArray();
+
+            json.endObject();
+            return count[0];
+        }
+    }
+
+    private static void writeTransaction(JsonWriter json, Transaction transaction) throws IOException {
+        json.beginObject();
+        json.name("id").value(transaction.getId());
+        json.name("type").value(transaction.getType().name());
+        json.name("amount");
+        writeAmount(json, transaction.getAmountCents());
+        json.name("category").value(transaction.getCategory());
+        json.name("date").value(transaction.getDate().toString());
+        json.name("description").value(transaction.getDescription());
+        json.endObject();
+    }
+
+    // Транзакция отдельной строкой (JSON Lines), для дописывания в файл инкрементального экспорта
+    static void writeLine(Writer out, Transaction transaction) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        writeTransaction(json, transaction);
+        json.flush();
+        out.write('\n');
+    }
+
+    // Сумма пишется числом с двумя знаками прямо из копеек, без double
+    private static void writeAmount(JsonWriter json, long cents) throws IOException {
+        StringBuilder number = new StringBuilder(24);
+        Money.appendPlain(number, cents, '.');
+        json.jsonValue(number.toString());
+    }
+
+    // Число JSON читается как строка и разбирается в копейки без double
+    private static long readAmount(JsonReader json) throws IOException {
+        return Money.parse(json.nextString());
+    }
+
+    // Добавляет содержимое файла в кошелек пользователя. Транзакции, которые уже есть в кошельке
+    // (тот же id и дата), пропускаются, поэтому повторный импорт того же файла ничего не дублирует.
+    // Дубликаты ищутся по индексам кошелька (Wallet.containsTransaction), а не по копии всех id:
+    // память зависит от размера пакета, а не от размера кошелька и файла.
+    void read(User user, Path file, Journal journal) throws IOException {
+        boolean compressed = file.getFileName().toString().toLowerCase().endsWith(".gz");
+        Wallet wallet = user.getWallet();
+        String username = user.getUsername();
+        List<Budget> budgets = new ArrayList<>();
+
+        try (InputStream fileIn = Files.newInputStream(file);
+             InputStream in = compressed ? new GZIPInputStream(fileIn, BUFFER_SIZE) : fileIn;
+             JsonReader json = new JsonReader(new BufferedReader(
+                     new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "format":
+                        if (!FORMAT.equals(json.nextString())) {
+                            throw new IOException("Файл не является экспортом кошелька: " + file);
+                        }
+                        break;
+                    case "version":
+                        int version = json.nextInt();
+                        if (version > VERSION) {
+                            throw new IOException("Неподдерживаемая версия файла " + file + ": " + version);
+                        }
+                        break;
+                    case "categories":
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            String category = json.nextString();
+                            if (!wallet.getCategories().contains(category)) {
+                                journal.logAddCategory(username, category);
+                                wallet.addCategory(category);
+                            }
+                        }
+                        json.endArray();
+                        break;
+                    case "transactions":
+                        readTransactions(json, wallet, username, journal);
+                        break;
+                    case "budgets":
+                        // Бюджеты применяются после транзакций, чтобы «потрачено» совпало с файлом
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            Budget budget = readBudget(json);
+                            if (budget != null) {
+                                budgets.add(budget);
+                            }
+                        }
+                        json.endArray();
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IllegalStateException | NumberFormatException | ArithmeticException e) {
+            throw new IOException("Неверный формат JSON: " + e.getMessage(), e);
+        }
+
+        for (Budget budget : budgets) {
+            journal.logRestoreBudget(username, budget);
+            wallet.restoreBudget(budget.getCategory(), budget.getLimitCents(),
+                    budget.getCurrentSpendingCents(), budget.getWarningThreshold());
+        }
+    }
+
+    private void readTransactions(JsonReader json, Wallet wallet, String username, Journal journal)
+            throws IOException {
+        List<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+        // id текущего пакета: он еще не добавлен в кошелек, а повтор может встретиться в том же файле.
+        // Повторы из прежних пакетов находит уже сам кошелек.
+        Set<String> batchIds = new HashSet<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            Transaction transaction = readTransaction(json);
+            if (transaction == null || batchIds.contains(transaction.getId())
+                    || wallet.containsTransaction(transaction.getId(), transaction.getDate())) {
+                skipped++;
+                continue;
+            }
+            batch.add(transaction);
+            batchIds.add(transaction.getId());
+            if (batch.size() == BATCH_SIZE) {
+                appendBatch(wallet, username, journal, batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+                batchIds.clear();
+            }
+        }
+        json.endArray();
+        if (!batch.isEmpty()) {
+            appendBatch(wallet, username, journal, batch);
+        }
+    }
+
+    private void appendBatch(Wallet wallet, String username, Journal journal, List<Transaction> batch) {
+        journal.logTransactions(username, batch);
+        wallet.addTransactions(batch);
+        imported += batch.size();
+    }
+
+    // null, если в объекте не хватает обязательных полей
+    private static Transaction readTransaction(JsonReader json) throws IOException {
+        String id = null;
+        TransactionType type = null;
+        Long amount = null;
+        String category = null;
+        LocalDateTime date = null;
+        String description = "";
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "type":
+                    try {
+                        type = TransactionType.valueOf(json.nextString());
+                    } catch (IllegalArgumentException e) {
+                        type = null;
+                    }
+                    break;
+                case "amount":
+                    amount = readAmount(json);
+                    break;
+                case "category":
+                    category = json.nextString();
+                    break;
+                case "date":
+                    try {
+                        date = LocalDateTime.parse(json.nextString());
+                    } catch (DateTimeParseException e) {
+                        date = null;
+                    }
+                    break;
+                case "description":
+                    description = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (type == null || amount == null || category == null || date == null) {
+            return null;
+        }
+        return Transaction.ofCents(id != null ? id : TransactionIds.format(TransactionIds.next()),
+                amount, type, category, date, description);
+    }
+
+    private static Budget readBudget(JsonReader json) throws IOException {
+        String category = null;
+        Long limit = null;
+        long spent = 0;
+        double threshold = Budget.DEFAULT_WARNING_THRESHOLD;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "category":
+                    category = json.nextString();
+                    break;
+                case "limit":
+                    limit = readAmount(json);
+                    break;
+                case "spent":
+                    spent = readAmount(json);
+                    break;
+                case "warningThreshold":
+                    threshold = json.nextDouble();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (category == null || limit == null) {
+            return null;
+        }
+        Budget budget = new Budget(category, 0, threshold);
+        budget.setLimitCents(limit);
+        budget.setCurrentSpendingCents(spent);
+        return budget;
+    }
+
+    int getImported() {
+        return imported;
+    }
+
+    int getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,318 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Запечатанный сегмент транзакций в файле с записями фиксированной длины,
+// читается напрямую из MappedByteBuffer (FileChannel.map).
+//
+// заголовок (64 байта): magic "FMSG" | версия | флаги | число строк | длина записи |
+//                       сумма доходов | сумма расходов | мин. дата | макс. дата | смещение строк
+// записи (48 байт):     дата (epoch ms) | сумма | id: старшие 8 байт | младшие 8 байт |
+//                       категория | смещение описания | тип | вид id | 2 байта выравнивания
+// строки:               таблица категорий, затем описания и нестандартные id ([длина][UTF-8])
+// Суммы с версии 2 — long в копейках; версия 1 хранила double и читается с округлением до копейки.
+// С версии 3 id из TransactionIds хранится числом в старших 8 байтах (вид id 3).
+public class MappedTransactionSegment implements TransactionSegment {
+    static final int MAGIC = 0x464D5347;
+    static final short VERSION = 3;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+
+    private static final int DATE = 0;
+    private static final int AMOUNT = 8;
+    private static final int ID_HIGH = 16;
+    private static final int ID_LOW = 24;
+    private static final int CATEGORY = 32;
+    private static final int DESCRIPTION = 36;
+    private static final int TYPE = 40;
+    private static final int ID_KIND = 41;
+
+    private static final byte ID_UUID = 1;
+    private static final byte ID_STRING = 2;
+    private static final byte ID_NUMERIC = 3;
+    private static final int NO_STRING = -1;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final short version;
+    private final int size;
+    private final long totalIncome;
+    private final long totalExpense;
+    private final long maxDate;
+    private final long stringsOffset;
+    private final String[] categories;
+    private final Map<String, Integer> categoryIds;
+
+    private MappedTransactionSegment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+
+        this.version = buffer.getShort(4);
+        if (buffer.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+            throw new IOException("Неизвестный формат сегмента " + file);
+        }
+        this.size = buffer.getInt(8);
+        if (buffer.getInt(12) != RECORD_SIZE) {
+            throw new IOException("Неверная длина записи в сегменте " + file);
+        }
+        this.totalIncome = version == 1 ? Money.toCents(buffer.getDouble(16)) : buffer.getLong(16);
+        this.totalExpense = version == 1 ? Money.toCents(buffer.getDouble(24)) : buffer.getLong(24);
+        this.maxDate = buffer.getLong(40);
+        this.stringsOffset = buffer.getLong(48);
+
+        int position = (int) stringsOffset;
+        this.categories = new String[buffer.getInt(position)];
+        this.categoryIds = new HashMap<>(categories.length * 2);
+        position += 4;
+        for (int i = 0; i < categories.length; i++) {
+            int length = buffer.getInt(position);
+            categories[i] = decode(position + 4, length);
+            categoryIds.put(categories[i], i);
+            position += 4 + length;
+        }
+    }
+
+    public static MappedTransactionSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedTransactionSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Записывает транзакции (отсортированные по дате) в новый файл сегмента
+    public static void write(Path file, List<Transaction> transactions) throws IOException {
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        for (Transaction transaction : transactions) {
+            categories.putIfAbsent(transaction.getCategory(), categories.size());
+        }
+
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream strings = new DataOutputStream(stringBytes);
+        strings.writeInt(categories.size());
+        for (String category : categories.keySet()) {
+            SnapshotCodec.writeString(strings, category);
+        }
+
+        ByteBuffer records = ByteBuffer.allocate(transactions.size() * RECORD_SIZE);
+        long totalIncome = 0;
+        long totalExpense = 0;
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+
+        for (Transaction transaction : transactions) {
+            long date = SnapshotCodec.toEpochMilli(transaction.getDate());
+            minDate = Math.min(minDate, date);
+            maxDate = Math.max(maxDate, date);
+            if (transaction.getType() == TransactionType.INCOME) {
+                totalIncome += transaction.getAmountCents();
+            } else {
+                totalExpense += transaction.getAmountCents();
+            }
+
+            int base = records.position();
+            records.putLong(base + DATE, date);
+            records.putLong(base + AMOUNT, transaction.getAmountCents());
+
+            String id = transaction.hasNumericId() ? null : transaction.getId();
+            if (id == null) {
+                records.putLong(base + ID_HIGH, transaction.getNumericId());
+                records.put(base + ID_KIND, ID_NUMERIC);
+            } else if (SnapshotCodec.isCanonicalUuid(id)) {
+                UUID uuid = UUID.fromString(id);
+                records.putLong(base + ID_HIGH, uuid.getMostSignificantBits());
+                records.putLong(base + ID_LOW, uuid.getLeastSignificantBits());
+                records.put(base + ID_KIND, ID_UUID);
+            } else {
+                records.putLong(base + ID_LOW, stringBytes.size());
+                SnapshotCodec.writeString(strings, id);
+                records.put(base + ID_KIND, ID_STRING);
+            }
+
+            records.putInt(base + CATEGORY, categories.get(transaction.getCategory()));
+            if (transaction.getDescription().isEmpty()) {
+                records.putInt(base + DESCRIPTION, NO_STRING);
+            } else {
+                records.putInt(base + DESCRIPTION, stringBytes.size());
+                SnapshotCodec.writeString(strings, transaction.getDescription());
+            }
+            records.put(base + TYPE, (byte) transaction.getType().ordinal());
+            records.position(base + RECORD_SIZE);
+        }
+        strings.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0);
+        header.putInt(transactions.size());
+        header.putInt(RECORD_SIZE);
+        header.putLong(totalIncome);
+        header.putLong(totalExpense);
+        header.putLong(minDate);
+        header.putLong(maxDate);
+        header.putLong(HEADER_SIZE + (long) records.capacity());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            header.clear();
+            records.flip();
+            ByteBuffer stringsBuffer = ByteBuffer.wrap(stringBytes.toByteArray());
+            while (header.hasRemaining() || records.hasRemaining() || stringsBuffer.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, records, stringsBuffer});
+            }
+            channel.force(true);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int record(int row) {
+        return HEADER_SIZE + row * RECORD_SIZE;
+    }
+
+    @Override
+    public long getEpochMilli(int row) {
+        return buffer.getLong(record(row) + DATE);
+    }
+
+    @Override
+    public long getAmountCents(int row) {
+        if (version == 1) {
+            return Money.toCents(buffer.getDouble(record(row) + AMOUNT));
+        }
+        return buffer.getLong(record(row) + AMOUNT);
+    }
+
+    @Override
+    public TransactionType getType(int row) {
+        return TYPES[buffer.get(record(row) + TYPE)];
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        return buffer.getInt(record(row) + CATEGORY);
+    }
+
+    @Override
+    public int findCategory(String category) {
+        Integer id = categoryIds.get(category);
+        return id != null ? id : -1;
+    }
+
+    @Override
+    public String getCategoryName(int categoryId) {
+        return categories[categoryId];
+    }
+
+    @Override
+    public long getNumericId(int row) {
+        int base = record(row);
+        return buffer.get(base + ID_KIND) == ID_NUMERIC ? buffer.getLong(base + ID_HIGH) : -1;
+    }
+
+    @Override
+    public String getId(int row) {
+        int base = record(row);
+        if (buffer.get(base + ID_KIND) == ID_NUMERIC) {
+            return TransactionIds.format(buffer.getLong(base + ID_HIGH));
+        }
+        if (buffer.get(base + ID_KIND) == ID_UUID) {
+            return new UUID(buffer.getLong(base + ID_HIGH), buffer.getLong(base + ID_LOW)).toString();
+        }
+        return readString(buffer.getLong(base + ID_LOW));
+    }
+
+    public String getDescription(int row) {
+        int offset = buffer.getInt(record(row) + DESCRIPTION);
+        return offset == NO_STRING ? "" : readString(offset);
+    }
+
+    @Override
+    public int indexOf(String transactionId) {
+        long numericId = TransactionIds.parse(transactionId);
+        if (numericId >= 0) {
+            for (int row = 0; row < size; row++) {
+                int base = record(row);
+                if (buffer.getLong(base + ID_HIGH) == numericId && buffer.get(base + ID_KIND) == ID_NUMERIC) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        if (SnapshotCodec.isCanonicalUuid(transactionId)) {
+            UUID uuid = UUID.fromString(transactionId);
+            long high = uuid.getMostSignificantBits();
+            long low = uuid.getLeastSignificantBits();
+            for (int row = 0; row < size; row++) {
+                int base = record(row);
+                if (buffer.getLong(base + ID_LOW) == low && buffer.getLong(base + ID_HIGH) == high
+                        && buffer.get(base + ID_KIND) == ID_UUID) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        for (int row = 0; row < size; row++) {
+            if (buffer.get(record(row) + ID_KIND) == ID_STRING && getId(row).equals(transactionId)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getTotalCents(TransactionType type) {
+        return type == TransactionType.INCOME ? totalIncome : totalExpense;
+    }
+
+    @Override
+    public long getMaxEpochMilli() {
+        return maxDate;
+    }
+
+    @Override
+    public Transaction get(int row) {
+        int base = record(row);
+        if (buffer.get(base + ID_KIND) == ID_NUMERIC) {
+            return Transaction.ofCents(buffer.getLong(base + ID_HIGH), getAmountCents(row), getType(row),
+                    categories[getCategoryId(row)], SnapshotCodec.fromEpochMilli(getEpochMilli(row)),
+                    getDescription(row));
+        }
+        return Transaction.ofCents(getId(row), getAmountCents(row), getType(row),
+                categories[getCategoryId(row)], SnapshotCodec.fromEpochMilli(getEpochMilli(row)),
+                getDescription(row));
+    }
+
+    // offset отсчитывается от начала области строк
+    private String readString(long offset) {
+        int position = (int) (stringsOffset + offset);
+        return decode(position + 4, buffer.getInt(position));
+    }
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,590 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Двоичный формат снимков (вместо Java-сериализации).
+//
+// users.dat, версия 2 — только учетные данные:
+//   заголовок: magic "FMSN" | версия схемы (short) | флаги (short) | seq журнала (long)
+//   пользователи: имя | пароль
+// wallets/<имя>.wallet — кошелек одного пользователя:
+//   заголовок: magic "FMSW" | версия схемы (short) | флаги (short) | seq журнала (long)
+//   категории: таблица строк, дальше категории везде хранятся индексом в ней
+//   кошелек:   категории | бюджеты | сводка | блок транзакций [количество][длина в байтах][строки]
+//   сегменты:  имена файлов запечатанных сегментов (с версии 2 файла кошелька)
+// Суммы с версии 3 файла кошелька — long в копейках (см. Money), раньше были double.
+// С версии 4 id из TransactionIds пишется 8 байтами (вид id 3), UUID старых данных — 16 байтами.
+// С версии 5 перед транзакциями лежит сводка — доходы и расходы по категориям, чтобы общую
+// аналитику можно было посчитать по файлу без чтения транзакций и сегментов (readWalletSummary).
+// С версии 6 после имени файла сегмента лежат отметки его удаленных строк:
+// [число слов][слова BitSet.toLongArray()].
+// Сжатые блоки кошелька (ColumnarTransactionSegment) живут только в памяти и пишутся в блок
+// транзакций вместе с хвостом.
+//
+// Версия 1 users.dat хранила кошельки всех пользователей внутри себя, она читается для совместимости.
+public class SnapshotCodec {
+    static final int USERS_MAGIC = 0x464D534E;
+    static final int WALLET_MAGIC = 0x464D5357;
+    static final short USERS_VERSION = 2;
+    static final short WALLET_VERSION = 6;
+
+    private static final byte ID_UUID = 1;
+    private static final byte ID_STRING = 2;
+    private static final byte ID_NUMERIC = 3;
+
+    public static class Snapshot {
+        private final long journalSeq;
+        private final Map<String, User> users;
+
+        Snapshot(long journalSeq, Map<String, User> users) {
+            this.journalSeq = journalSeq;
+            this.users = users;
+        }
+
+        public long getJournalSeq() { return journalSeq; }
+        public Map<String, User> getUsers() { return users; }
+    }
+
+    public static class WalletSnapshot {
+        private final long journalSeq;
+        private final Wallet wallet;
+
+        WalletSnapshot(long journalSeq, Wallet wallet) {
+            this.journalSeq = journalSeq;
+            this.wallet = wallet;
+        }
+
+        public long getJournalSeq() { return journalSeq; }
+        public Wallet getWallet() { return wallet; }
+    }
+
+    // Все снимки пишутся во временный файл, сбрасываются на диск и атомарно переименовываются
+    // поверх старых: после сбоя на месте остается либо старый, либо новый файл целиком
+    public static void writeUsers(Path file, Collection<User> users, long journalSeq) throws IOException {
+        writeAtomically(file, out -> writeUsers(out, users, journalSeq));
+    }
+
+    static byte[] encodeUsers(Collection<User> users, long journalSeq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeUsers(out, users, journalSeq);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUsers(DataOutputStream out, Collection<User> users, long journalSeq) throws IOException {
+        writeHeader(out, USERS_MAGIC, USERS_VERSION, journalSeq);
+
+        out.writeInt(users.size());
+        for (User user : users) {
+            writeString(out, user.getUsername());
+            writeString(out, user.getPassword());
+        }
+    }
+
+    // Кошельки (кроме файлов версии 1) не загружаются: User.isWalletLoaded() == false
+    public static Snapshot readUsers(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        try {
+            short version = readHeader(in, file, USERS_MAGIC, USERS_VERSION);
+            long journalSeq = in.getLong();
+
+            String[] strings = version == 1 ? readStringTable(in) : null;
+
+            int userCount = in.getInt();
+            Map<String, User> users = new HashMap<>(userCount * 2);
+            for (int i = 0; i < userCount; i++) {
+                String username = readString(in);
+                String password = readString(in);
+                Wallet wallet = version == 1
+                        ? readWalletBody(in, username, strings, false, false, Integer.MAX_VALUE) : null;
+                users.put(username, new User(username, password, wallet));
+            }
+
+            return new Snapshot(journalSeq, users);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Файл снимка обрезан: " + file, e);
+        }
+    }
+
+    public static void writeWallet(Path file, Wallet wallet, long journalSeq) throws IOException {
+        writeAtomically(file, out -> writeWallet(out, wallet, journalSeq));
+    }
+
+    static byte[] encodeWallet(Wallet wallet, long journalSeq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeWallet(out, wallet, journalSeq);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeWallet(DataOutputStream out, Wallet wallet, long journalSeq) throws IOException {
+        Map<String, Integer> strings = buildStringTable(wallet);
+        writeHeader(out, WALLET_MAGIC, WALLET_VERSION, journalSeq);
+
+        out.writeInt(strings.size());
+        for (String s : strings.keySet()) {
+            writeString(out, s);
+        }
+        writeWalletBody(out, wallet, strings);
+
+        List<MappedTransactionSegment> segments = mappedSegments(wallet);
+        out.writeInt(segments.size());
+        for (MappedTransactionSegment segment : segments) {
+            writeString(out, segment.getFile().getFileName().toString());
+            long[] deleted = wallet.getDeletedRows(segment).toLongArray();
+            out.writeInt(deleted.length);
+            for (long word : deleted) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static void writeAtomically(Path file, byte[] data) throws IOException {
+        writeAtomically(file, out -> out.write(data));
+    }
+
+    private static void writeAtomically(Path file, BodyWriter body) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            body.write(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<MappedTransactionSegment> mappedSegments(Wallet wallet) {
+        List<MappedTransactionSegment> mapped = new ArrayList<>();
+        for (TransactionSegment segment : wallet.getSealedSegments()) {
+            if (segment instanceof MappedTransactionSegment) {
+                mapped.add((MappedTransactionSegment) segment);
+            }
+        }
+        return mapped;
+    }
+
+    public static WalletSnapshot readWallet(Path file, String owner) throws IOException {
+        return readWallet(file, owner, Integer.MAX_VALUE);
+    }
+
+    // Если в блоке транзакций не меньше compactRows строк, он читается сразу в сжатый блок,
+    // без создания объектов Transaction
+    public static WalletSnapshot readWallet(Path file, String owner, int compactRows) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        try {
+            short version = readHeader(in, file, WALLET_MAGIC, WALLET_VERSION);
+            long journalSeq = in.getLong();
+            String[] strings = readStringTable(in);
+            Wallet wallet = readWalletBody(in, owner, strings, version >= 3, version >= 5, compactRows);
+
+            if (version >= 2) {
+                int segmentCount = in.getInt();
+                for (int i = 0; i < segmentCount; i++) {
+                    MappedTransactionSegment segment = MappedTransactionSegment.open(file.resolveSibling(readString(in)));
+                    long[] deleted = new long[version >= 6 ? in.getInt() : 0];
+                    for (int word = 0; word < deleted.length; word++) {
+                        deleted[word] = in.getLong();
+                    }
+                    wallet.attachSegment(segment, BitSet.valueOf(deleted));
+                }
+            }
+            return new WalletSnapshot(journalSeq, wallet);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Файл кошелька обрезан: " + file, e);
+        }
+    }
+
+    // Сводка кошелька из файла: читается только начало файла до блока транзакций, сегменты
+    // не открываются. null для файлов до версии 5, где сводки нет.
+    public static WalletSummary readWalletSummary(Path file, String owner) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // Начало файла, которого обычно хватает; если сводка длиннее, читаем вдвое больше
+            for (long length = Math.min(size, 1 << 16); ; length = Math.min(size, length * 2)) {
+                ByteBuffer in = ByteBuffer.allocate((int) length);
+                while (in.hasRemaining()) {
+                    if (channel.read(in, in.position()) < 0) {
+                        break;
+                    }
+                }
+                in.flip();
+                try {
+                    return readWalletSummary(in, file, owner);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    if (length == size) {
+                        throw new IOException("Файл кошелька обрезан: " + file, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static WalletSummary readWalletSummary(ByteBuffer in, Path file, String owner) throws IOException {
+        short version = readHeader(in, file, WALLET_MAGIC, WALLET_VERSION);
+        if (version < 5) {
+            return null;
+        }
+        in.getLong(); // seq журнала
+        String[] strings = readStringTable(in);
+        int listedCategories = in.getInt(); // список категорий повторяет сводку
+        in.position(in.position() + listedCategories * 4);
+
+        int budgetCount = in.getInt();
+        Budget[] budgets = new Budget[budgetCount];
+        for (int i = 0; i < budgetCount; i++) {
+            String category = strings[in.getInt()];
+            long limit = in.getLong();
+            long spent = in.getLong();
+            budgets[i] = new Budget(category, 0, in.getDouble());
+            budgets[i].setLimitCents(limit);
+            budgets[i].setCurrentSpendingCents(spent);
+        }
+
+        int categoryCount = in.getInt();
+        String[] categories = new String[categoryCount];
+        long[] income = new long[categoryCount];
+        long[] expense = new long[categoryCount];
+        Map<String, Long> expenseByCategory = new HashMap<>(categoryCount * 2);
+        for (int i = 0; i < categoryCount; i++) {
+            categories[i] = strings[in.getInt()];
+            income[i] = in.getLong();
+            expense[i] = in.getLong();
+            expenseByCategory.put(categories[i], expense[i]);
+        }
+
+        List<BudgetStatus> budgetStatuses = new ArrayList<>(budgetCount);
+        for (Budget budget : budgets) {
+            budgetStatuses.add(new BudgetStatus(budget,
+                    expenseByCategory.getOrDefault(budget.getCategory(), 0L)));
+        }
+        return new WalletSummary(owner, categories, income, expense, budgetStatuses);
+    }
+
+    private static void writeHeader(DataOutputStream out, int magic, short version,
+                                    long journalSeq) throws IOException {
+        out.writeInt(magic);
+        out.writeShort(version);
+        out.writeShort(0);
+        out.writeLong(journalSeq);
+    }
+
+    private static short readHeader(ByteBuffer in, Path file, int magic, short maxVersion) throws IOException {
+        if (in.getInt() != magic) {
+            throw new IOException("Неизвестный формат файла " + file);
+        }
+        short version = in.getShort();
+        if (version < 1 || version > maxVersion) {
+            throw new IOException("Неподдерживаемая версия файла " + file + ": " + version);
+        }
+        in.getShort(); // флаги, пока не используются
+        return version;
+    }
+
+    private static String[] readStringTable(ByteBuffer in) {
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    private static Map<String, Integer> buildStringTable(Wallet wallet) {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (String category : wallet.getCategories()) {
+            strings.putIfAbsent(category, strings.size());
+        }
+        for (String category : wallet.getBudgets().keySet()) {
+            strings.putIfAbsent(category, strings.size());
+        }
+        for (TransactionSegment segment : wallet.getSealedSegments()) {
+            if (segment instanceof ColumnarTransactionSegment) {
+                for (int row = 0; row < segment.size(); row++) {
+                    strings.putIfAbsent(segment.getCategoryName(segment.getCategoryId(row)), strings.size());
+                }
+            }
+        }
+        for (Transaction transaction : wallet.getLiveTransactions()) {
+            strings.putIfAbsent(transaction.getCategory(), strings.size());
+        }
+        return strings;
+    }
+
+    private static void writeWalletBody(DataOutputStream out, Wallet wallet,
+                                    Map<String, Integer> strings) throws IOException {
+        Set<String> categories = wallet.getCategories();
+        out.writeInt(categories.size());
+        for (String category : categories) {
+            out.writeInt(strings.get(category));
+        }
+
+        Collection<Budget> budgets = wallet.getBudgets().values();
+        out.writeInt(budgets.size());
+        for (Budget budget : budgets) {
+            out.writeInt(strings.get(budget.getCategory()));
+            out.writeLong(budget.getLimitCents());
+            out.writeLong(budget.getCurrentSpendingCents());
+            out.writeDouble(budget.getWarningThreshold());
+        }
+
+        // Сводка: суммы по категориям в копейках
+        out.writeInt(categories.size());
+        for (String category : categories) {
+            out.writeInt(strings.get(category));
+            out.writeLong(wallet.getCategoryTotalCents(category, TransactionType.INCOME));
+            out.writeLong(wallet.getCategoryTotalCents(category, TransactionType.EXPENSE));
+        }
+
+        // Блок транзакций собирается отдельно, чтобы записать его длину перед ним
+        // Запечатанные транзакции лежат в файлах сегментов, здесь сжатые блоки и «живой» хвост
+        List<Transaction> transactions = wallet.getLiveTransactions();
+        int count = transactions.size();
+        ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(transactions.size() * 48 + 16);
+        DataOutputStream block = new DataOutputStream(blockBytes);
+        for (TransactionSegment segment : wallet.getSealedSegments()) {
+            if (segment instanceof ColumnarTransactionSegment) {
+                ColumnarTransactionSegment columns = (ColumnarTransactionSegment) segment;
+                for (int row = 0; row < columns.size(); row++) {
+                    writeId(block, columns.getId(row));
+                    block.writeByte(columns.getType(row).ordinal());
+                    block.writeLong(columns.getAmountCents(row));
+                    block.writeInt(strings.get(columns.getCategoryName(columns.getCategoryId(row))));
+                    block.writeLong(columns.getEpochMilli(row));
+                    writeString(block, columns.getDescription(row));
+                }
+                count += columns.size();
+            }
+        }
+        for (Transaction transaction : transactions) {
+            writeId(block, transaction);
+            block.writeByte(transaction.getType().ordinal());
+            block.writeLong(transaction.getAmountCents());
+            block.writeInt(strings.get(transaction.getCategory()));
+            block.writeLong(toEpochMilli(transaction.getDate()));
+            writeString(block, transaction.getDescription());
+        }
+        block.flush();
+
+        out.writeInt(count);
+        out.writeInt(blockBytes.size());
+        blockBytes.writeTo(out);
+    }
+
+    private static Wallet readWalletBody(ByteBuffer in, String owner, String[] strings, boolean cents,
+                                         boolean summary, int compactRows) throws IOException {
+        Wallet wallet = new Wallet(owner);
+
+        int categoryCount = in.getInt();
+        Set<String> categories = new HashSet<>(categoryCount * 2);
+        for (int i = 0; i < categoryCount; i++) {
+            categories.add(strings[in.getInt()]);
+        }
+        // Стандартные категории, которые пользователь удалил, не восстанавливаем
+        for (String category : new ArrayList<>(wallet.getCategories())) {
+            if (!categories.contains(category)) {
+                wallet.removeCategory(category);
+            }
+        }
+        for (String category : categories) {
+            wallet.addCategory(category);
+        }
+
+        int budgetCount = in.getInt();
+        String[] budgetCategories = new String[budgetCount];
+        long[] budgetAmounts = new long[budgetCount * 2];
+        double[] budgetThresholds = new double[budgetCount];
+        for (int i = 0; i < budgetCount; i++) {
+            budgetCategories[i] = strings[in.getInt()];
+            budgetAmounts[i * 2] = readAmount(in, cents);
+            budgetAmounts[i * 2 + 1] = readAmount(in, cents);
+            budgetThresholds[i] = in.getDouble();
+        }
+        if (summary) {
+            // Суммы пересчитываются при добавлении транзакций
+            int summaryCount = in.getInt();
+            in.position(in.position() + summaryCount * 20);
+        }
+
+        int transactionCount = in.getInt();
+        int blockLength = in.getInt();
+        int blockEnd = in.position() + blockLength;
+        TransactionType[] types = TransactionType.values();
+        int read = 0;
+        if (transactionCount >= compactRows) {
+            readCompacted(in, wallet, strings, cents, transactionCount);
+            read = transactionCount;
+        }
+        for (int i = read; i < transactionCount; i++) {
+            String id = readId(in);
+            TransactionType type = types[in.get()];
+            long amount = readAmount(in, cents);
+            String category = strings[in.getInt()];
+            LocalDateTime date = fromEpochMilli(in.getLong());
+            String description = readString(in);
+            wallet.addTransaction(Transaction.ofCents(id, amount, type, category, date, description));
+        }
+        if (in.position() != blockEnd) {
+            throw new IOException("Поврежден блок транзакций пользователя " + owner);
+        }
+
+        // Бюджеты восстанавливаем после транзакций, чтобы не посчитать траты дважды
+        for (int i = 0; i < budgetCount; i++) {
+            wallet.restoreBudget(budgetCategories[i], budgetAmounts[i * 2], budgetAmounts[i * 2 + 1],
+                    budgetThresholds[i]);
+        }
+
+        return wallet;
+    }
+
+    private static void readCompacted(ByteBuffer in, Wallet wallet, String[] strings, boolean cents,
+                                      int transactionCount) throws IOException {
+        TransactionType[] types = TransactionType.values();
+        ColumnarTransactionSegment.Builder builder = new ColumnarTransactionSegment.Builder(transactionCount);
+        for (int i = 0; i < transactionCount; i++) {
+            byte kind = in.get();
+            long high = 0;
+            long low = 0;
+            String id = null;
+            if (kind == ID_UUID || kind == ID_NUMERIC) {
+                high = in.getLong();
+                low = kind == ID_UUID ? in.getLong() : 0;
+            } else if (kind == ID_STRING) {
+                id = readString(in);
+            } else {
+                throw new IOException("Неизвестный тип идентификатора: " + kind);
+            }
+            TransactionType type = types[in.get()];
+            long amount = readAmount(in, cents);
+            String category = strings[in.getInt()];
+            long epochMilli = in.getLong();
+            String description = readString(in);
+            if (kind == ID_NUMERIC) {
+                builder.appendNumeric(high, type, amount, category, epochMilli, description);
+            } else if (id == null) {
+                builder.appendUuid(high, low, type, amount, category, epochMilli, description);
+            } else {
+                builder.append(id, type, amount, category, epochMilli, description);
+            }
+        }
+        wallet.attachSegment(builder.build());
+    }
+
+    // Файлы до версии 3 хранили суммы в double
+    private static long readAmount(ByteBuffer in, boolean cents) {
+        return cents ? in.getLong() : Money.toCents(in.getDouble());
+    }
+
+    private static void writeId(DataOutputStream out, Transaction transaction) throws IOException {
+        if (transaction.hasNumericId()) {
+            out.writeByte(ID_NUMERIC);
+            out.writeLong(transaction.getNumericId());
+        } else {
+            writeId(out, transaction.getId());
+        }
+    }
+
+    // Числовые id хранятся 8 байтами, UUID — 16 байтами вместо 36-символьной строки
+    private static void writeId(DataOutputStream out, String id) throws IOException {
+        long numericId = TransactionIds.parse(id);
+        if (numericId >= 0) {
+            out.writeByte(ID_NUMERIC);
+            out.writeLong(numericId);
+        } else if (isCanonicalUuid(id)) {
+            out.writeByte(ID_UUID);
+            out.writeLong(parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18));
+            out.writeLong(parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36));
+        } else {
+            out.writeByte(ID_STRING);
+            writeString(out, id);
+        }
+    }
+
+    private static String readId(ByteBuffer in) throws IOException {
+        byte kind = in.get();
+        if (kind == ID_NUMERIC) {
+            return TransactionIds.format(in.getLong());
+        }
+        if (kind == ID_UUID) {
+            return new UUID(in.getLong(), in.getLong()).toString();
+        }
+        if (kind == ID_STRING) {
+            return readString(in);
+        }
+        throw new IOException("Неизвестный тип идентификатора: " + kind);
+    }
+
+    // Только каноническая запись (как у UUID.toString), иначе при чтении получится другая строка
+    static boolean isCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | Character.digit(s.charAt(i), 16);
+        }
+        return value;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == 0) {
+            return "";
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    static long toEpochMilli(LocalDateTime date) {
+        return date.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromEpochMilli(long epochMilli) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMilli, 1000L),
+                (int) Math.floorMod(epochMilli, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -1,23 +1,142 @@
 package finance.mngmt.repository;
 
 import finance.mngmt.model.User;
+import finance.mngmt.model.Wallet;
+import finance.mngmt.model.WalletSummary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 public class UserRepository {
+    // Грубая оценка размера кошелька в памяти
+    private static final long WALLET_BASE_BYTES = 2048;
+    private static final long TRANSACTION_BYTES = 256;
+    private static final long CATEGORY_BYTES = 96;
+    private static final long BUDGET_BYTES = 128;
+
     private Map<String, User> users;
+    private final WalletRepository walletRepository;
+
+    // Загруженные кошельки в порядке последнего обращения (LRU). 0 — без ограничения.
+    private final LinkedHashMap<String, User> residentWallets = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pinnedWallets = new HashSet<>();
+    private final int maxWallets;
+    private final long maxWalletBytes;
+
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
 
     public UserRepository() {
+        this(null);
+    }
+
+    public UserRepository(WalletRepository walletRepository) {
+        this(walletRepository, 0, 0);
+    }
+
+    public UserRepository(WalletRepository walletRepository, int maxWallets, long maxWalletBytes) {
         this.users = new HashMap<>();
+        this.walletRepository = walletRepository;
+        this.maxWallets = maxWallets;
+        this.maxWalletBytes = maxWalletBytes;
     }
 
     public void addUser(User user) {
         users.put(user.getUsername(), user);
+        if (user.isWalletLoaded()) {
+            residentWallets.put(user.getUsername(), user);
+            evictIfNeeded(user.getUsername());
+        }
     }
 
     public User getUser(String username) {
         return users.get(username);
     }
 
+    // Кошелек пользователя: из памяти или с диска при первом обращении.
+    // При переполнении давно не использованные кошельки сохраняются и выгружаются.
+    public Wallet loadWallet(User user) {
+        String username = user.getUsername();
+
+        if (user.isWalletLoaded()) {
+            cacheHits++;
+            if (residentWallets.get(username) == null) {
+                residentWallets.put(username, user);
+            }
+            return user.getWallet();
+        }
+
+        cacheMisses++;
+        Wallet wallet = null;
+        if (walletRepository != null) {
+            try {
+                SnapshotCodec.WalletSnapshot snapshot = walletRepository.load(username);
+                wallet = snapshot != null ? snapshot.getWallet() : null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось загрузить кошелек пользователя " + username, e);
+            }
+        }
+        user.setWallet(wallet != null ? wallet : new Wallet(username));
+        residentWallets.put(username, user);
+        evictIfNeeded(username);
+
+        return user.getWallet();
+    }
+
+    // Закрепленный кошелек (текущего пользователя) не выгружается
+    public void pinWallet(String username) {
+        pinnedWallets.add(username);
+    }
+
+    public void unpinWallet(String username) {
+        pinnedWallets.remove(username);
+        evictIfNeeded(null);
+    }
+
+    private void evictIfNeeded(String justLoaded) {
+        if (walletRepository == null || (maxWallets <= 0 && maxWalletBytes <= 0)) {
+            return;
+        }
+
+        long residentBytes = maxWalletBytes > 0 ? getResidentWalletBytes() : 0;
+        Iterator<User> iterator = residentWallets.values().iterator();
+
+        while (iterator.hasNext() && isOverCapacity(residentBytes)) {
+            User candidate = iterator.next();
+            String username = candidate.getUsername();
+            if (username.equals(justLoaded) || pinnedWallets.contains(username)) {
+                continue;
+            }
+
+            long walletBytes = estimateBytes(candidate.getWallet());
+            try {
+                walletRepository.save(candidate.getWallet());
+            } catch (IOException e) {
+                System.err.println("Ошибка при выгрузке кошелька " + username + ": " + e.getMessage());
+                return;
+            }
+
+            iterator.remove();
+            candidate.setWallet(null);
+            residentBytes -= walletBytes;
+            cacheEvictions++;
+        }
+    }
+
+    private boolean isOverCapacity(long residentBytes) {
+        return (maxWallets > 0 && residentWallets.size() > maxWallets)
+                || (maxWalletBytes > 0 && residentBytes > maxWalletBytes);
+    }
+
+    static long estimateBytes(Wallet wallet) {
+        return WALLET_BASE_BYTES
+                + wallet.getLiveTransactionCount() * TRANSACTION_BYTES
+                + wallet.getCategories().size() * CATEGORY_BYTES
+                + wallet.getBudgets().size() * BUDGET_BYTES;
+    }
+
     public boolean userExists(String username) {
         return users.containsKey(username);
     }
@@ -27,15 +146,44 @@ public class UserRepository {
         return user != null && user.checkPassword(password);
     }
 
+    // Итоги кошелька для общей аналитики. Кошелек не загружается и не попадает в кэш: загруженный
+    // считается в памяти, выгруженный — по сводке из файла. Можно вызывать из нескольких потоков
+    // сразу, пока кошельки не меняются.
+    public WalletSummary getWalletSummary(User user) throws IOException {
+        Wallet wallet = user.getWallet();
+        if (wallet != null) {
+            return WalletSummary.of(wallet);
+        }
+        return walletRepository != null
+                ? walletRepository.loadSummary(user.getUsername())
+                : WalletSummary.of(new Wallet(user.getUsername()));
+    }
+
     public List<User> getAllUsers() {
         return new ArrayList<>(users.values());
     }
 
     public void removeUser(String username) {
         users.remove(username);
+        residentWallets.remove(username);
+        pinnedWallets.remove(username);
     }
 
     public int getUserCount() {
         return users.size();
     }
+
+    // Статистика кэша кошельков
+    public long getCacheHits() { return cacheHits; }
+    public long getCacheMisses() { return cacheMisses; }
+    public long getCacheEvictions() { return cacheEvictions; }
+    public int getResidentWalletCount() { return residentWallets.size(); }
+
+    public long getResidentWalletBytes() {
+        long bytes = 0;
+        for (User user : residentWallets.values()) {
+            bytes += estimateBytes(user.getWallet());
+        }
+        return bytes;
+    }
 }
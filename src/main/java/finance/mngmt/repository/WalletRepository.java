@@ -1,4 +1,174 @@
 package finance.mngmt.repository;
 
+import finance.mngmt.model.Transaction;
+import finance.mngmt.model.TransactionSegment;
+import finance.mngmt.model.Wallet;
+import finance.mngmt.model.WalletSummary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Кошельки хранятся по одному файлу на пользователя: data/wallets/<имя>.wallet.
+// В режиме сегментов старые транзакции при сохранении запечатываются в <имя>.<seq>-<n>.seg
 public class WalletRepository {
+    private static final String EXTENSION = ".wallet";
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    private final Path walletsDir;
+    private final Journal journal;
+    private int sealAfterDays;
+    private int minSegmentRows;
+    private int compactRows;
+    // seq журнала, с которым каждый кошелек последний раз записан в этом процессе
+    private final Map<String, Long> savedSeqs = new HashMap<>();
+
+    public WalletRepository(Path walletsDir) {
+        this(walletsDir, null);
+    }
+
+    public WalletRepository(Path walletsDir, Journal journal) {
+        this.walletsDir = walletsDir;
+        this.journal = journal;
+    }
+
+    // Транзакции старше sealAfterDays дней уходят в сегмент, когда их набирается minSegmentRows
+    public void enableSegments(int sealAfterDays, int minSegmentRows) {
+        this.sealAfterDays = sealAfterDays;
+        this.minSegmentRows = Math.max(1, minSegmentRows);
+    }
+
+    // Хвост из compactRows и более транзакций хранится сжатым блоком (0 — не сжимать)
+    public void enableCompaction(int compactRows) {
+        this.compactRows = compactRows;
+    }
+
+    public boolean exists(String username) {
+        return Files.exists(fileFor(username));
+    }
+
+    // null, если кошелек еще ни разу не сохранялся
+    public SnapshotCodec.WalletSnapshot load(String username) throws IOException {
+        Path file = fileFor(username);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return SnapshotCodec.readWallet(file, username, compactRows > 0 ? compactRows : Integer.MAX_VALUE);
+    }
+
+    // Сводка кошелька без чтения транзакций; файл старой версии без сводки читается целиком.
+    // Кошелек, который ни разу не сохранялся, пуст.
+    public WalletSummary loadSummary(String username) throws IOException {
+        Path file = fileFor(username);
+        if (!Files.exists(file)) {
+            return WalletSummary.of(new Wallet(username));
+        }
+        WalletSummary summary = SnapshotCodec.readWalletSummary(file, username);
+        return summary != null ? summary : WalletSummary.of(load(username).getWallet());
+    }
+
+    // Кошелек в памяти уже содержит все записи журнала, сделанные до этого момента
+    public void save(Wallet wallet) throws IOException {
+        save(wallet, journal != null ? journal.getLastSeq() : 0);
+    }
+
+    public synchronized void save(Wallet wallet, long journalSeq) throws IOException {
+        Path file = fileFor(wallet.getOwner());
+        if (sealAfterDays > 0) {
+            sealOldTransactions(wallet, file, journalSeq);
+        }
+        compactIfLarge(wallet);
+        SnapshotCodec.writeWallet(file, wallet, journalSeq);
+        savedSeqs.put(wallet.getOwner(), journalSeq);
+        deleteUnusedSegments(wallet.getSealedSegments(), file);
+    }
+
+    // Запись снимка, закодированного заранее (фоновая контрольная точка). Если кошелек уже
+    // сохранен с тем же или более новым seq (например, при вытеснении), старый снимок не пишется.
+    synchronized boolean saveEncoded(String username, byte[] data, long journalSeq,
+                                     List<TransactionSegment> segments) throws IOException {
+        if (savedSeqs.getOrDefault(username, -1L) >= journalSeq) {
+            return false;
+        }
+        Path file = fileFor(username);
+        SnapshotCodec.writeAtomically(file, data);
+        savedSeqs.put(username, journalSeq);
+        deleteUnusedSegments(segments, file);
+        return true;
+    }
+
+    void compactIfLarge(Wallet wallet) {
+        if (compactRows > 0 && wallet.getLiveTransactionCount() >= compactRows) {
+            wallet.compact();
+        }
+    }
+
+    private void sealOldTransactions(Wallet wallet, Path file, long journalSeq) throws IOException {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(sealAfterDays);
+        List<Transaction> old = wallet.getUnsealedTransactionsBefore(cutoff);
+        if (old.size() < minSegmentRows) {
+            return;
+        }
+
+        // Сначала пишется сегмент, потом файл кошелька со ссылкой на него
+        Path segmentFile;
+        int n = wallet.getSealedSegments().size();
+        do {
+            segmentFile = file.resolveSibling(baseName(file) + "." + journalSeq + "-" + n++ + SEGMENT_EXTENSION);
+        } while (Files.exists(segmentFile));
+
+        MappedTransactionSegment.write(segmentFile, old);
+        wallet.seal(MappedTransactionSegment.open(segmentFile), cutoff);
+    }
+
+    private void deleteUnusedSegments(List<TransactionSegment> sealedSegments, Path file) {
+        Set<Path> used = new HashSet<>();
+        for (TransactionSegment segment : sealedSegments) {
+            if (segment instanceof MappedTransactionSegment) {
+                used.add(((MappedTransactionSegment) segment).getFile().getFileName());
+            }
+        }
+
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(walletsDir,
+                baseName(file) + ".*" + SEGMENT_EXTENSION)) {
+            for (Path segment : segments) {
+                if (!used.contains(segment.getFileName())) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при удалении старых сегментов: " + e.getMessage());
+        }
+    }
+
+    private static String baseName(Path walletFile) {
+        String name = walletFile.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    public synchronized void delete(String username) throws IOException {
+        savedSeqs.remove(username);
+        Files.deleteIfExists(fileFor(username));
+    }
+
+    Path fileFor(String username) {
+        return walletsDir.resolve(escape(username) + EXTENSION);
+    }
+
+    // Имя файла: латиница в нижнем регистре, цифры и '-' как есть, остальное — _XX (байты UTF-8),
+    // чтобы имена пользователей не пересекались на нечувствительных к регистру файловых системах
+    static String escape(String username) {
+        StringBuilder name = new StringBuilder(username.length() + EXTENSION.length());
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-') {
+                name.append((char) b);
+            } else {
+                name.append('_').append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+        }
+        return name.toString();
+    }
 }
@@ -0,0 +1,105 @@
+package finance.mngmt.service;
+
+import finance.mngmt.exception.AuthorizationException;
+import finance.mngmt.model.*;
+import finance.mngmt.repository.UserRepository;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Общая аналитика по всем пользователям: итоги каждого кошелька считаются отдельной задачей
+// в общем ForkJoinPool (выгруженные кошельки — по сводке из файла, без загрузки истории),
+// затем итоги сливаются в один AdminReport. Доступна только администратору (UserService.isAdmin)
+public class AdminAnalyticsService {
+    static final int MOST_EXCEEDED_BUDGETS = 5;
+
+    private final UserService userService;
+    private final UserRepository userRepository;
+
+    public AdminAnalyticsService(UserService userService, UserRepository userRepository) {
+        this.userService = userService;
+        this.userRepository = userRepository;
+    }
+
+    public AdminReport getAdminReport() {
+        if (!userService.isAdmin()) {
+            throw new AuthorizationException("Команда доступна только администратору");
+        }
+
+        List<User> users = userRepository.getAllUsers();
+        List<Future<WalletSummary>> tasks = new ArrayList<>(users.size());
+        for (User user : users) {
+            tasks.add(ForkJoinPool.commonPool().submit(() -> userRepository.getWalletSummary(user)));
+        }
+
+        Map<String, Long> expenses = new HashMap<>();
+        Map<String, long[]> budgets = new HashMap<>(); // [бюджетов, превышено, сумма превышения]
+        int[] healthCounts = new int[StatisticsService.HEALTH_LEVELS.length];
+        long totalIncome = 0;
+        long totalExpenses = 0;
+        int failed = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            WalletSummary summary;
+            try {
+                summary = tasks.get(i).get();
+            } catch (ExecutionException e) {
+                System.err.println("Ошибка при чтении кошелька " + users.get(i).getUsername() + ": "
+                        + e.getCause().getMessage());
+                failed++;
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Аналитика прервана", e);
+            }
+
+            for (int c = 0; c < summary.getCategoryCount(); c++) {
+                if (summary.getExpenseCents(c) != 0) {
+                    expenses.merge(summary.getCategory(c), summary.getExpenseCents(c), Long::sum);
+                }
+            }
+            for (BudgetStatus budget : summary.getBudgets()) {
+                long[] overrun = budgets.computeIfAbsent(budget.getCategory(), category -> new long[3]);
+                overrun[0]++;
+                if (budget.isExceeded()) {
+                    overrun[1]++;
+                    overrun[2] += budget.getSpentCents() - budget.getLimitCents();
+                }
+            }
+            long income = summary.getTotalIncomeCents();
+            long expense = summary.getTotalExpenseCents();
+            healthCounts[StatisticsService.healthLevel(StatisticsService.savingsRate(income, expense))]++;
+            totalIncome += income;
+            totalExpenses += expense;
+        }
+
+        return new AdminReport(tasks.size() - failed, failed, totalIncome, totalExpenses,
+                sortedAmounts(expenses), StatisticsService.HEALTH_LEVELS, healthCounts, mostExceeded(budgets));
+    }
+
+    private static CategoryAmounts sortedAmounts(Map<String, Long> amounts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(amounts.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        CategoryAmounts.Builder builder = new CategoryAmounts.Builder(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    // Категории с превышенными бюджетами: сначала по числу превышений, затем по сумме превышения
+    private static List<AdminReport.BudgetOverrun> mostExceeded(Map<String, long[]> budgets) {
+        List<AdminReport.BudgetOverrun> overruns = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : budgets.entrySet()) {
+            long[] overrun = entry.getValue();
+            if (overrun[1] > 0) {
+                overruns.add(new AdminReport.BudgetOverrun(entry.getKey(), (int) overrun[0], (int) overrun[1],
+                        overrun[2]));
+            }
+        }
+        overruns.sort(Comparator.comparingInt(AdminReport.BudgetOverrun::getExceededCount).reversed()
+                .thenComparing(Comparator.comparingLong(AdminReport.BudgetOverrun::getOverspendCents).reversed()));
+        return overruns.size() > MOST_EXCEEDED_BUDGETS
+                ? new ArrayList<>(overruns.subList(0, MOST_EXCEEDED_BUDGETS)) : overruns;
+    }
+}
@@ -2,45 +2,90 @@ package finance.mngmt.service;
 
 import finance.mngmt.model.*;
 import finance.mngmt.exception.*;
+import finance.mngmt.repository.Journal;
 import finance.mngmt.repository.UserRepository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class FinanceService {
     private final UserService userService;
     private final AlertService alertService;
+    private final Journal journal;
+    private final ResultCache cache;
 
     public FinanceService(UserService userService, AlertService alertService) {
+        this(userService, alertService, null);
+    }
+
+    public FinanceService(UserService userService, AlertService alertService, Journal journal) {
+        this(userService, alertService, journal, new ResultCache());
+    }
+
+    public FinanceService(UserService userService, AlertService alertService, Journal journal, ResultCache cache) {
         this.userService = userService;
         this.alertService = alertService;
+        this.journal = journal;
+        this.cache = cache;
     }
 
-    public void addIncome(double amount, String category, String description) {
-        validateTransaction(amount, category);
+    // Суммы в копейках, см. Money
+    public void addIncome(long amountCents, String category, String description) {
+        validateTransaction(amountCents, category);
 
         User user = userService.getCurrentUser();
-        Transaction transaction = new Transaction(amount, TransactionType.INCOME, category, description);
+        Transaction transaction = Transaction.ofCents(TransactionIds.next(), amountCents, TransactionType.INCOME,
+                category, LocalDateTime.now(), description);
+        if (journal != null) {
+            journal.logTransaction(user.getUsername(), transaction);
+        }
         user.getWallet().addTransaction(transaction);
 
         alertService.checkBalanceAlerts(user.getWallet());
-        System.out.printf("Доход добавлен: %.2f в категории '%s'%n", amount, category);
+        System.out.printf("Доход добавлен: %s в категории '%s'%n", Money.format(amountCents), category);
     }
 
-    public void addExpense(double amount, String category, String description) {
-        validateTransaction(amount, category);
+    public void addExpense(long amountCents, String category, String description) {
+        validateTransaction(amountCents, category);
 
         User user = userService.getCurrentUser();
-        Transaction transaction = new Transaction(amount, TransactionType.EXPENSE, category, description);
+        Transaction transaction = Transaction.ofCents(TransactionIds.next(), amountCents, TransactionType.EXPENSE,
+                category, LocalDateTime.now(), description);
+        if (journal != null) {
+            journal.logTransaction(user.getUsername(), transaction);
+        }
         user.getWallet().addTransaction(transaction);
 
         // Проверяем бюджеты и баланс
         alertService.checkBudgetAlerts(user.getWallet());
         alertService.checkBalanceAlerts(user.getWallet());
 
-        System.out.printf("Расход добавлен: %.2f в категории '%s'%n", amount, category);
+        System.out.printf("Расход добавлен: %s в категории '%s'%n", Money.format(amountCents), category);
+    }
+
+    // Возвращает число удаленных транзакций. Запись в журнал делается до удаления;
+    // id, которых нет в кошельке, при повторе журнала просто ничего не удаляют
+    public int removeTransactions(Collection<String> transactionIds) {
+        if (!userService.isAuthenticated()) {
+            throw new AuthorizationException("Пользователь не авторизован");
+        }
+        if (transactionIds.isEmpty()) {
+            throw new ValidationException("Не указаны id транзакций");
+        }
+
+        User user = userService.getCurrentUser();
+        if (journal != null) {
+            journal.logRemoveTransactions(user.getUsername(), transactionIds);
+        }
+        int removed = user.getWallet().removeTransactions(transactionIds);
+        if (removed == 0) {
+            throw new ValidationException("Транзакции не найдены: " + String.join(", ", transactionIds));
+        }
+
+        alertService.checkBalanceAlerts(user.getWallet());
+        System.out.println("Удалено транзакций: " + removed);
+        return removed;
     }
 
     public void addCategory(String category) {
@@ -49,46 +94,60 @@ public class FinanceService {
         }
 
         User user = userService.getCurrentUser();
+        if (journal != null) {
+            journal.logAddCategory(user.getUsername(), category);
+        }
         user.getWallet().addCategory(category);
         System.out.println("Категория '" + category + "' добавлена");
     }
 
     public void removeCategory(String category) {
         User user = userService.getCurrentUser();
+        if (journal != null) {
+            journal.logRemoveCategory(user.getUsername(), category);
+        }
         user.getWallet().removeCategory(category);
         System.out.println("Категория '" + category + "' удалена");
     }
 
-    public void setBudget(String category, double limit) {
-        validateBudget(limit);
+    public void setBudget(String category, long limitCents) {
+        validateBudget(limitCents);
 
         User user = userService.getCurrentUser();
-        user.getWallet().setBudget(category, limit);
-        System.out.printf("Бюджет установлен: категория '%s', лимит %.2f%n", category, limit);
+        if (journal != null) {
+            journal.logSetBudget(user.getUsername(), category, limitCents);
+        }
+        user.getWallet().setBudgetCents(category, limitCents);
+        System.out.printf("Бюджет установлен: категория '%s', лимит %s%n", category, Money.format(limitCents));
     }
 
-    public void editBudget(String category, double newLimit) {
-        validateBudget(newLimit);
+    public void editBudget(String category, long newLimitCents) {
+        validateBudget(newLimitCents);
 
         User user = userService.getCurrentUser();
-        Map<String, Budget> budgets = user.getWallet().getBudgets();
 
-        if (!budgets.containsKey(category)) {
+        if (user.getWallet().getBudget(category) == null) {
             throw new CategoryNotFoundException("Бюджет для категории '" + category + "' не найден");
         }
 
-        budgets.get(category).setLimit(newLimit);
-        System.out.printf("Бюджет обновлен: категория '%s', новый лимит %.2f%n", category, newLimit);
+        if (journal != null) {
+            journal.logEditBudget(user.getUsername(), category, newLimitCents);
+        }
+        user.getWallet().editBudgetCents(category, newLimitCents);
+        System.out.printf("Бюджет обновлен: категория '%s', новый лимит %s%n", category, Money.format(newLimitCents));
     }
 
     public void removeBudget(String category) {
         User user = userService.getCurrentUser();
+        if (journal != null) {
+            journal.logRemoveBudget(user.getUsername(), category);
+        }
         user.getWallet().removeBudget(category);
         System.out.println("Бюджет для категории '" + category + "' удален");
     }
 
-    private void validateTransaction(double amount, String category) {
-        if (amount <= 0) {
+    private void validateTransaction(long amountCents, String category) {
+        if (amountCents <= 0) {
             throw new ValidationException("Сумма должна быть положительной");
         }
 
@@ -101,117 +160,56 @@ public class FinanceService {
         }
     }
 
-    private void validateBudget(double limit) {
-        if (limit <= 0) {
+    private void validateBudget(long limitCents) {
+        if (limitCents <= 0) {
             throw new ValidationException("Лимит бюджета должен быть положительным");
         }
     }
 
-    public Map<String, Object> getStatistics(LocalDate startDate, LocalDate endDate) {
+    public PeriodStatistics getStatistics(LocalDate startDate, LocalDate endDate) {
         User user = userService.getCurrentUser();
         Wallet wallet = user.getWallet();
 
-        Map<String, Object> stats = new HashMap<>();
-
-        // Фильтруем транзакции по дате
-        List<Transaction> filteredTransactions = wallet.getTransactions().stream()
-                .filter(t -> !t.getDate().toLocalDate().isBefore(startDate))
-                .filter(t -> !t.getDate().toLocalDate().isAfter(endDate))
-                .collect(Collectors.toList());
-
-        // Общие доходы и расходы
-        double totalIncome = filteredTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-
-        double totalExpenses = filteredTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-
-        // Доходы по категориям
-        Map<String, Double> incomeByCategory = filteredTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.INCOME)
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategory,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-
-        // Расходы по категориям
-        Map<String, Double> expensesByCategory = filteredTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategory,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-
-        stats.put("totalIncome", totalIncome);
-        stats.put("totalExpenses", totalExpenses);
-        stats.put("balance", totalIncome - totalExpenses);
-        stats.put("incomeByCategory", incomeByCategory);
-        stats.put("expensesByCategory", expensesByCategory);
-        stats.put("period", startDate + " - " + endDate);
-        stats.put("transactionCount", filteredTransactions.size());
-
-        return stats;
-    }
-
-    public Map<String, Map<String, Object>> getCategoryStatistics(List<String> categories) {
+        // Суммы за период складываются из корзин по дням, месяцам и годам кошелька
+        return cache.get(wallet, "stats", startDate, endDate, List.of(), () ->
+                PeriodAggregate.of(wallet.getPeriodTotals(startDate, endDate)).toStatistics(startDate, endDate));
+    }
+
+    // Статистика по категориям в порядке запроса
+    public Map<String, CategoryStatistics> getCategoryStatistics(List<String> categories) {
         User user = userService.getCurrentUser();
         Wallet wallet = user.getWallet();
+        return cache.get(wallet, "category_stats", null, null, categories,
+                () -> computeCategoryStatistics(wallet, categories));
+    }
 
-        Map<String, Map<String, Object>> result = new HashMap<>();
+    private Map<String, CategoryStatistics> computeCategoryStatistics(Wallet wallet, List<String> categories) {
+        Map<String, CategoryStatistics> result = new LinkedHashMap<>();
 
         for (String category : categories) {
-            if (!wallet.getCategories().contains(category)) {
+            if (!wallet.getCategoryDictionary().contains(category)) {
                 throw new CategoryNotFoundException("Категория не найдена: " + category);
             }
 
-            Map<String, Object> categoryStats = new HashMap<>();
-
-            double categoryIncome = wallet.getTransactions().stream()
-                    .filter(t -> t.getType() == TransactionType.INCOME)
-                    .filter(t -> t.getCategory().equals(category))
-                    .mapToDouble(Transaction::getAmount)
-                    .sum();
-
-            double categoryExpenses = wallet.getTransactions().stream()
-                    .filter(t -> t.getType() == TransactionType.EXPENSE)
-                    .filter(t -> t.getCategory().equals(category))
-                    .mapToDouble(Transaction::getAmount)
-                    .sum();
-
-            categoryStats.put("income", categoryIncome);
-            categoryStats.put("expenses", categoryExpenses);
-            categoryStats.put("balance", categoryIncome - categoryExpenses);
-
-            // Информация о бюджете
-            Budget budget = wallet.getBudgets().get(category);
-            if (budget != null) {
-                categoryStats.put("budgetLimit", budget.getLimit());
-                categoryStats.put("budgetSpent", budget.getCurrentSpending());
-                categoryStats.put("budgetRemaining", budget.getRemaining());
-                categoryStats.put("budgetExceeded", budget.isExceeded());  // boolean значение
-            }
-
-            result.put(category, categoryStats);
+            long categoryExpenses = wallet.getCategoryTotalCents(category, TransactionType.EXPENSE);
+            Budget budget = wallet.getBudget(category);
+            result.put(category, new CategoryStatistics(category,
+                    wallet.getCategoryTotalCents(category, TransactionType.INCOME), categoryExpenses,
+                    budget != null ? new BudgetStatus(budget, categoryExpenses) : null));
         }
 
-        return result;
+        return Collections.unmodifiableMap(result);
     }
 
     public List<Transaction> getTransactionsByDateRange(LocalDate startDate, LocalDate endDate) {
         User user = userService.getCurrentUser();
 
-        return user.getWallet().getTransactions().stream()
-                .filter(t -> !t.getDate().toLocalDate().isBefore(startDate))
-                .filter(t -> !t.getDate().toLocalDate().isAfter(endDate))
-                .sorted((t1, t2) -> t2.getDate().compareTo(t1.getDate())) // Сначала новые
-                .collect(Collectors.toList());
+        List<Transaction> result = user.getWallet().getTransactionsForPeriod(startDate, endDate);
+        Collections.reverse(result); // Сначала новые
+        return result;
     }
 
-    public void transferMoney(String toUsername, double amount, String description,
+    public void transferMoney(String toUsername, long amountCents, String description,
                               UserRepository userRepository) {
         User sender = userService.getCurrentUser();
         User receiver = userRepository.getUser(toUsername);
@@ -224,29 +222,36 @@ public class FinanceService {
             throw new ValidationException("Нельзя перевести деньги самому себе");
         }
 
-        if (amount <= 0) {
+        if (amountCents <= 0) {
             throw new ValidationException("Сумма перевода должна быть положительной");
         }
 
-        if (sender.getWallet().getBalance() < amount) {
+        if (sender.getWallet().getBalanceCents() < amountCents) {
             throw new InsufficientFundsException("Недостаточно средств для перевода");
         }
 
+        // Кошелек получателя читается с диска только сейчас, когда перевод точно состоится
+        userRepository.loadWallet(receiver);
+
         // Создаем транзакции
-        Transaction senderTransaction = new Transaction(
-                amount, TransactionType.EXPENSE, "Перевод",
+        LocalDateTime now = LocalDateTime.now();
+        Transaction senderTransaction = Transaction.ofCents(
+                TransactionIds.next(), amountCents, TransactionType.EXPENSE, "Перевод", now,
                 "Перевод пользователю " + toUsername + ": " + description
         );
 
-        Transaction receiverTransaction = new Transaction(
-                amount, TransactionType.INCOME, "Перевод",
+        Transaction receiverTransaction = Transaction.ofCents(
+                TransactionIds.next(), amountCents, TransactionType.INCOME, "Перевод", now,
                 "Перевод от пользователя " + sender.getUsername() + ": " + description
         );
 
-        // Добавляем транзакции
+        // Сначала журнал, затем оба кошелька
+        if (journal != null) {
+            journal.logTransfer(sender.getUsername(), senderTransaction, toUsername, receiverTransaction);
+        }
         sender.getWallet().addTransaction(senderTransaction);
         receiver.getWallet().addTransaction(receiverTransaction);
 
-        System.out.printf("Перевод выполнен: %.2f пользователю %s%n", amount, toUsername);
+        System.out.printf("Перевод выполнен: %s пользователю %s%n", Money.format(amountCents), toUsername);
     }
 }
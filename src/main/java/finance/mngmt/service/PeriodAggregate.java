@@ -0,0 +1,85 @@
+package finance.mngmt.service;
+
+import finance.mngmt.model.Category;
+import finance.mngmt.model.CategoryAmounts;
+import finance.mngmt.model.PeriodStatistics;
+import finance.mngmt.model.PeriodTotals;
+import finance.mngmt.model.TransactionType;
+import java.time.LocalDate;
+
+// Все показатели статистики и отчета за период — за один проход по суммам категорий
+// (PeriodTotals): итоги и число транзакций по типам, суммы по категориям и самые затратные
+// категории. Топ копится в заранее выделенных массивах вставкой, без сортировки всех категорий.
+class PeriodAggregate implements PeriodTotals.CategoryVisitor {
+    static final int TOP_EXPENSE_CATEGORIES = 5;
+
+    final PeriodTotals totals;
+    long incomeCents;
+    long expenseCents;
+    int incomeCount;
+    int expenseCount;
+    private final CategoryAmounts.Builder incomeByCategory = new CategoryAmounts.Builder(8);
+    private final CategoryAmounts.Builder expensesByCategory = new CategoryAmounts.Builder(16);
+
+    private final String[] topNames = new String[TOP_EXPENSE_CATEGORIES];
+    private final long[] topAmounts = new long[TOP_EXPENSE_CATEGORIES];
+    private int topSize;
+
+    private PeriodAggregate(PeriodTotals totals) {
+        this.totals = totals;
+    }
+
+    static PeriodAggregate of(PeriodTotals totals) {
+        PeriodAggregate aggregate = new PeriodAggregate(totals);
+        totals.forEachCategory(aggregate);
+        return aggregate;
+    }
+
+    @Override
+    public void visit(Category category, TransactionType type, long amountCents, int count) {
+        if (type == TransactionType.INCOME) {
+            incomeCents += amountCents;
+            incomeCount += count;
+            incomeByCategory.add(category.getName(), amountCents);
+        } else {
+            expenseCents += amountCents;
+            expenseCount += count;
+            expensesByCategory.add(category.getName(), amountCents);
+            offerTop(category.getName(), amountCents);
+        }
+    }
+
+    private void offerTop(String name, long amountCents) {
+        int position = topSize;
+        while (position > 0 && topAmounts[position - 1] < amountCents) {
+            position--;
+        }
+        if (position == TOP_EXPENSE_CATEGORIES) {
+            return;
+        }
+        int last = Math.min(topSize, TOP_EXPENSE_CATEGORIES - 1);
+        System.arraycopy(topNames, position, topNames, position + 1, last - position);
+        System.arraycopy(topAmounts, position, topAmounts, position + 1, last - position);
+        topNames[position] = name;
+        topAmounts[position] = amountCents;
+        topSize = Math.min(topSize + 1, TOP_EXPENSE_CATEGORIES);
+    }
+
+    long periodSpentCents(String category) {
+        return totals.getCategoryTotalCents(category, TransactionType.EXPENSE);
+    }
+
+    PeriodStatistics toStatistics(LocalDate startDate, LocalDate endDate) {
+        return new PeriodStatistics(startDate, endDate, incomeCents, expenseCents, incomeCount + expenseCount,
+                incomeByCategory.build(), expensesByCategory.build());
+    }
+
+    // Самые затратные категории по убыванию суммы
+    CategoryAmounts topExpenseCategories() {
+        CategoryAmounts.Builder top = new CategoryAmounts.Builder(topSize);
+        for (int i = 0; i < topSize; i++) {
+            top.add(topNames[i], topAmounts[i]);
+        }
+        return top.build();
+    }
+}
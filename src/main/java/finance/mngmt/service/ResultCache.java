@@ -0,0 +1,106 @@
+package finance.mngmt.service;
+
+import finance.mngmt.model.Wallet;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Кэш результатов статистики и отчетов в порядке последнего обращения (LRU).
+// Ключ — владелец, отметка состояния кошелька (Wallet.getStamp), вид результата, период и категории:
+// после любого изменения кошелька отметка другая, и старые записи просто вытесняются.
+// Результаты неизменяемые, поэтому одну запись можно отдавать многократно.
+public class ResultCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    // maxEntries = 0 — кэш отключен
+    public ResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static final class Key {
+        final String owner;
+        final long stamp;
+        final String kind;
+        final LocalDate startDate;
+        final LocalDate endDate;
+        final List<String> categories;
+
+        Key(String owner, long stamp, String kind, LocalDate startDate, LocalDate endDate, List<String> categories) {
+            this.owner = owner;
+            this.stamp = stamp;
+            this.kind = kind;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.categories = categories;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return stamp == key.stamp && owner.equals(key.owner) && kind.equals(key.kind)
+                    && Objects.equals(startDate, key.startDate) && Objects.equals(endDate, key.endDate)
+                    && categories.equals(key.categories);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(owner, stamp, kind, startDate, endDate, categories);
+        }
+    }
+
+    // Результат из кэша или вычисленный compute; исключение из compute ничего не кэширует
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(Wallet wallet, String kind, LocalDate startDate, LocalDate endDate,
+                           List<String> categories, Supplier<T> compute) {
+        if (maxEntries <= 0) {
+            misses++;
+            return compute.get();
+        }
+        Key key = new Key(wallet.getOwner(), wallet.getStamp(), kind, startDate, endDate,
+                List.copyOf(categories));
+        Object cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+            return (T) cached;
+        }
+        misses++;
+        T result = compute.get();
+        entries.put(key, result);
+        Iterator<Object> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    // Статистика кэша
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized int size() { return entries.size(); }
+
+    // Доля попаданий в процентах
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests > 0 ? hits * 100.0 / requests : 0;
+    }
+}
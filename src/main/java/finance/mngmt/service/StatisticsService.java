@@ -4,213 +4,161 @@ import finance.mngmt.model.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class StatisticsService {
+    // Уровни финансового здоровья от лучшего к худшему (см. healthLevel)
+    static final String[] HEALTH_LEVELS = {"Отличное", "Хорошее", "Удовлетворительное", "Требует внимания"};
 
-    public Map<String, Object> generateFullReport(Wallet wallet, LocalDate startDate, LocalDate endDate) {
-        Map<String, Object> report = new HashMap<>();
-
-        // Основная статистика
-        report.put("owner", wallet.getOwner());
-        report.put("period", startDate + " - " + endDate);
-        report.put("generatedAt", LocalDateTime.now());
-
-        // Баланс
-        report.put("currentBalance", wallet.getBalance());
-        report.put("totalIncome", wallet.getTotalIncome());
-        report.put("totalExpenses", wallet.getTotalExpenses());
-
-        // Транзакции за период
-        List<Transaction> periodTransactions = wallet.getTransactions().stream()
-                .filter(t -> !t.getDate().toLocalDate().isBefore(startDate))
-                .filter(t -> !t.getDate().toLocalDate().isAfter(endDate))
-                .collect(Collectors.toList());
-
-        double periodIncome = periodTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-
-        double periodExpenses = periodTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-
-        report.put("periodIncome", periodIncome);
-        report.put("periodExpenses", periodExpenses);
-        report.put("periodBalance", periodIncome - periodExpenses);
-
-        // Доходы по категориям за период
-        Map<String, Double> incomeByCategory = periodTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.INCOME)
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategory,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-
-        // Расходы по категориям за период
-        Map<String, Double> expensesByCategory = periodTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategory,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-
-        report.put("incomeByCategory", incomeByCategory);
-        report.put("expensesByCategory", expensesByCategory);
+    private final ResultCache cache;
+
+    public StatisticsService() {
+        this(new ResultCache());
+    }
+
+    public StatisticsService(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    // Повторный отчет за тот же период по неизмененному кошельку берется из кэша;
+    // время формирования ставится на каждый запрос, а не берется из кэшированного отчета
+    public FinancialReport generateFullReport(Wallet wallet, LocalDate startDate, LocalDate endDate) {
+        return cache.get(wallet, "report", startDate, endDate, List.of(),
+                () -> computeFullReport(wallet, startDate, endDate)).withGeneratedAt(LocalDateTime.now());
+    }
+
+    private FinancialReport computeFullReport(Wallet wallet, LocalDate startDate, LocalDate endDate) {
+        // Суммы за период берутся из корзин по дням, месяцам и годам кошелька, а все показатели
+        // отчета считаются за один проход по ним
+        PeriodAggregate period = PeriodAggregate.of(wallet.getPeriodTotals(startDate, endDate));
 
         // Бюджеты
-        Map<String, Map<String, Object>> budgetsReport = new HashMap<>();
+        List<BudgetStatus> budgets = new ArrayList<>(wallet.getBudgets().size());
         for (Budget budget : wallet.getBudgets().values()) {
-            Map<String, Object> budgetInfo = new HashMap<>();
-            budgetInfo.put("limit", budget.getLimit());
-            budgetInfo.put("spent", budget.getCurrentSpending());
-            budgetInfo.put("remaining", budget.getRemaining());
-            budgetInfo.put("exceeded", budget.isExceeded());
-            budgetInfo.put("warning", budget.isWarning());
-
-            // Расходы по этой категории за период
-            double categoryPeriodExpenses = periodTransactions.stream()
-                    .filter(t -> t.getType() == TransactionType.EXPENSE)
-                    .filter(t -> t.getCategory().equals(budget.getCategory()))
-                    .mapToDouble(Transaction::getAmount)
-                    .sum();
-
-            budgetInfo.put("periodSpent", categoryPeriodExpenses);
-
-            budgetsReport.put(budget.getCategory(), budgetInfo);
+            budgets.add(new BudgetStatus(budget, period.periodSpentCents(budget.getCategory())));
         }
 
-        report.put("budgets", budgetsReport);
-
         // Анализ
-        report.put("analysis", performAnalysis(wallet, periodTransactions));
+        TransactionStats stats = wallet.getTransactionStats(startDate, endDate);
 
-        return report;
+        return new FinancialReport(wallet.getOwner(), LocalDateTime.now(),
+                wallet.getTotalIncomeCents(), wallet.getTotalExpensesCents(),
+                period.toStatistics(startDate, endDate), budgets, performAnalysis(wallet, period, stats));
     }
 
-    private Map<String, Object> performAnalysis(Wallet wallet, List<Transaction> periodTransactions) {
-        Map<String, Object> analysis = new HashMap<>();
-
-        double avgDailyExpense = periodTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .average()
-                .orElse(0);
-
-        analysis.put("avgDailyExpense", avgDailyExpense);
-
-        // Самые затратные категории
-        Map<String, Double> topExpenseCategories = periodTransactions.stream()
-                .filter(t -> t.getType() == TransactionType.EXPENSE)
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategory,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .limit(5)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
-
-        analysis.put("topExpenseCategories", topExpenseCategories);
+    private FinancialReport.Analysis performAnalysis(Wallet wallet, PeriodAggregate period, TransactionStats stats) {
+        double avgExpense = period.expenseCount > 0
+                ? Money.toDouble(period.expenseCents) / period.expenseCount : 0;
 
         // Оценка финансового здоровья
-        double income = wallet.getTotalIncome();
-        double expenses = wallet.getTotalExpenses();
-        double savingsRate = income > 0 ? (income - expenses) / income * 100 : 0;
-
-        String financialHealth;
-        if (savingsRate > 20) financialHealth = "Отличное";
-        else if (savingsRate > 10) financialHealth = "Хорошее";
-        else if (savingsRate > 0) financialHealth = "Удовлетворительное";
-        else financialHealth = "Требует внимания";
+        double savingsRate = savingsRate(wallet.getTotalIncomeCents(), wallet.getTotalExpensesCents());
+        String financialHealth = HEALTH_LEVELS[healthLevel(savingsRate)];
+
+        // Самые затратные категории с мелким и крупным расходом в каждой и крупнейшие расходы за период
+        // (обход транзакций периода, для большого периода — параллельный)
+        CategoryAmounts top = period.topExpenseCategories();
+        CategoryAmounts.Builder smallest = new CategoryAmounts.Builder(top.size());
+        CategoryAmounts.Builder largest = new CategoryAmounts.Builder(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            smallest.add(top.getName(i), stats.getMinCents(top.getName(i), TransactionType.EXPENSE));
+            largest.add(top.getName(i), stats.getMaxCents(top.getName(i), TransactionType.EXPENSE));
+        }
+        return new FinancialReport.Analysis(avgExpense, savingsRate, financialHealth,
+                top, smallest.build(), largest.build(), stats.getLargestExpenses());
+    }
 
-        analysis.put("savingsRate", savingsRate);
-        analysis.put("financialHealth", financialHealth);
+    // Норма сбережений в процентах; 0 без доходов
+    static double savingsRate(long incomeCents, long expenseCents) {
+        double income = Money.toDouble(incomeCents);
+        double expenses = Money.toDouble(expenseCents);
+        return income > 0 ? (income - expenses) / income * 100 : 0;
+    }
 
-        return analysis;
+    // Номер уровня в HEALTH_LEVELS
+    static int healthLevel(double savingsRate) {
+        if (savingsRate > 20) return 0;
+        if (savingsRate > 10) return 1;
+        if (savingsRate > 0) return 2;
+        return 3;
     }
 
-    public void printReport(Map<String, Object> report) {
+    public void printReport(FinancialReport report) {
+        PeriodStatistics period = report.getPeriod();
         System.out.println("\n" + "=".repeat(60));
         System.out.println("ОТЧЕТ ПО ФИНАНСАМ");
         System.out.println("=".repeat(60));
 
-        System.out.printf("Владелец: %s%n", report.get("owner"));
-        System.out.printf("Период: %s%n", report.get("period"));
-        System.out.printf("Сгенерирован: %s%n", report.get("generatedAt"));
+        System.out.printf("Владелец: %s%n", report.getOwner());
+        System.out.printf("Период: %s%n", period);
+        System.out.printf("Сгенерирован: %s%n", report.getGeneratedAt());
 
         System.out.println("\n--- ОБЩАЯ ИНФОРМАЦИЯ ---");
-        System.out.printf("Текущий баланс: %,.2f%n", report.get("currentBalance"));
-        System.out.printf("Общий доход: %,.2f%n", report.get("totalIncome"));
-        System.out.printf("Общие расходы: %,.2f%n", report.get("totalExpenses"));
+        System.out.printf("Текущий баланс: %,.2f%n", report.getCurrentBalance());
+        System.out.printf("Общий доход: %,.2f%n", report.getTotalIncome());
+        System.out.printf("Общие расходы: %,.2f%n", report.getTotalExpenses());
 
         System.out.printf("\n--- ЗА ПЕРИОД ---%n");
-        System.out.printf("Доход за период: %,.2f%n", report.get("periodIncome"));
-        System.out.printf("Расход за период: %,.2f%n", report.get("periodExpenses"));
-        System.out.printf("Баланс за период: %,.2f%n", report.get("periodBalance"));
-
-        // Доходы по категориям
-        @SuppressWarnings("unchecked")
-        Map<String, Double> incomeByCategory = (Map<String, Double>) report.get("incomeByCategory");
-        if (!incomeByCategory.isEmpty()) {
-            System.out.println("\n--- ДОХОДЫ ПО КАТЕГОРИЯМ ---");
-            incomeByCategory.forEach((category, amount) ->
-                    System.out.printf("  %-20s %,.2f%n", category + ":", amount));
-        }
+        System.out.printf("Доход за период: %,.2f%n", period.getTotalIncome());
+        System.out.printf("Расход за период: %,.2f%n", period.getTotalExpenses());
+        System.out.printf("Баланс за период: %,.2f%n", period.getBalance());
 
-        // Расходы по категориям
-        @SuppressWarnings("unchecked")
-        Map<String, Double> expensesByCategory = (Map<String, Double>) report.get("expensesByCategory");
-        if (!expensesByCategory.isEmpty()) {
-            System.out.println("\n--- РАСХОДЫ ПО КАТЕГОРИЯМ ---");
-            expensesByCategory.forEach((category, amount) ->
-                    System.out.printf("  %-20s %,.2f%n", category + ":", amount));
-        }
+        // Доходы и расходы по категориям
+        printAmounts("\n--- ДОХОДЫ ПО КАТЕГОРИЯМ ---", period.getIncomeByCategory());
+        printAmounts("\n--- РАСХОДЫ ПО КАТЕГОРИЯМ ---", period.getExpensesByCategory());
 
         // Бюджеты
-        @SuppressWarnings("unchecked")
-        Map<String, Map<String, Object>> budgets = (Map<String, Map<String, Object>>) report.get("budgets");
-        if (!budgets.isEmpty()) {
+        if (!report.getBudgets().isEmpty()) {
             System.out.println("\n--- БЮДЖЕТЫ ---");
             System.out.printf("%-20s %-15s %-15s %-15s %s%n",
                     "Категория", "Лимит", "Потрачено", "Осталось", "Статус");
             System.out.println("-".repeat(80));
 
-            budgets.forEach((category, info) -> {
-                String status = (boolean) info.get("exceeded") ? "ПРЕВЫШЕН" :
-                        (boolean) info.get("warning") ? "ВНИМАНИЕ" : "OK";
+            for (BudgetStatus budget : report.getBudgets()) {
+                String status = budget.isExceeded() ? "ПРЕВЫШЕН" :
+                        budget.isWarning() ? "ВНИМАНИЕ" : "OK";
                 System.out.printf("%-20s %,-15.2f %,-15.2f %,-15.2f %s%n",
-                        category,
-                        (double) info.get("limit"),
-                        (double) info.get("spent"),
-                        (double) info.get("remaining"),
+                        budget.getCategory(),
+                        budget.getLimit(),
+                        budget.getSpent(),
+                        budget.getRemaining(),
                         status);
-            });
+            }
         }
 
         // Анализ
-        @SuppressWarnings("unchecked")
-        Map<String, Object> analysis = (Map<String, Object>) report.get("analysis");
+        FinancialReport.Analysis analysis = report.getAnalysis();
         System.out.println("\n--- АНАЛИЗ ---");
-        System.out.printf("Средний дневной расход: %,.2f%n", analysis.get("avgDailyExpense"));
-        System.out.printf("Норма сбережений: %.1f%%%n", analysis.get("savingsRate"));
-        System.out.printf("Финансовое здоровье: %s%n", analysis.get("financialHealth"));
+        System.out.printf("Средний дневной расход: %,.2f%n", analysis.getAvgExpense());
+        System.out.printf("Норма сбережений: %.1f%%%n", analysis.getSavingsRate());
+        System.out.printf("Финансовое здоровье: %s%n", analysis.getFinancialHealth());
 
-        @SuppressWarnings("unchecked")
-        Map<String, Double> topCategories = (Map<String, Double>) analysis.get("topExpenseCategories");
-        if (!topCategories.isEmpty()) {
+        CategoryAmounts top = analysis.getTopExpenseCategories();
+        if (!top.isEmpty()) {
             System.out.println("\nТоп-5 затратных категорий:");
-            topCategories.forEach((category, amount) ->
-                    System.out.printf("  %-20s %,.2f%n", category + ":", amount));
+            for (int i = 0; i < top.size(); i++) {
+                System.out.printf("  %-20s %,.2f (от %,.2f до %,.2f)%n", top.getName(i) + ":", top.getAmount(i),
+                        analysis.getSmallestExpenses().getAmount(i),
+                        analysis.getLargestExpensesByCategory().getAmount(i));
+            }
+        }
+
+        if (!analysis.getLargestExpenses().isEmpty()) {
+            System.out.println("\nКрупнейшие расходы:");
+            for (Transaction transaction : analysis.getLargestExpenses()) {
+                System.out.printf("  %-20s %,.2f  %s%n", transaction.getCategory() + ":",
+                        transaction.getAmount(), transaction.getDate().toLocalDate());
+            }
         }
 
         System.out.println("=".repeat(60));
     }
-}
\ No newline at end of file
+
+    private static void printAmounts(String title, CategoryAmounts amounts) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        System.out.println(title);
+        for (int i = 0; i < amounts.size(); i++) {
+            System.out.printf("  %-20s %,.2f%n", amounts.getName(i) + ":", amounts.getAmount(i));
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package finance.mngmt.service;
 
 import finance.mngmt.model.User;
+import finance.mngmt.repository.Journal;
 import finance.mngmt.repository.UserRepository;
 import finance.mngmt.exception.AuthorizationException;
 import finance.mngmt.exception.ValidationException;
 
 public class UserService {
     private final UserRepository userRepository;
+    private final Journal journal;
+    // Имя администратора (-Dfinance.adminUser). Если такого пользователя еще нет, его создает
+    // первая регистрация с этим именем (первый запуск с параметром), дальше имя занято как любое другое
+    private final String adminUsername;
     private User currentUser;
 
     public UserService(UserRepository userRepository) {
+        this(userRepository, null);
+    }
+
+    public UserService(UserRepository userRepository, Journal journal) {
+        this(userRepository, journal, null);
+    }
+
+    public UserService(UserRepository userRepository, Journal journal, String adminUsername) {
         this.userRepository = userRepository;
+        this.journal = journal;
+        this.adminUsername = adminUsername;
     }
 
     public void register(String username, String password, String confirmPassword) {
@@ -20,9 +35,15 @@ public class UserService {
             throw new AuthorizationException("Пользователь с таким именем уже существует");
         }
 
-        User user = new User(username, password);
-        userRepository.addUser(user);
-        System.out.println("Пользователь " + username + " успешно зарегистрирован");
+        if (journal != null) {
+            journal.logRegister(username, password);
+        }
+        userRepository.addUser(new User(username, password));
+        if (username.equals(adminUsername)) {
+            System.out.println("Пользователь " + username + " зарегистрирован как администратор");
+        } else {
+            System.out.println("Пользователь " + username + " успешно зарегистрирован");
+        }
     }
 
     public void login(String username, String password) {
@@ -31,12 +52,15 @@ public class UserService {
         }
 
         currentUser = userRepository.getUser(username);
+        userRepository.loadWallet(currentUser);
+        userRepository.pinWallet(username);
         System.out.println("Добро пожаловать, " + username + "!");
     }
 
     public void logout() {
         if (currentUser != null) {
             System.out.println("До свидания, " + currentUser.getUsername() + "!");
+            userRepository.unpinWallet(currentUser.getUsername());
             currentUser = null;
         }
     }
@@ -49,6 +73,10 @@ public class UserService {
         return currentUser != null;
     }
 
+    public boolean isAdmin() {
+        return currentUser != null && currentUser.getUsername().equals(adminUsername);
+    }
+
     private void validateRegistration(String username, String password, String confirmPassword) {
         if (username == null || username.trim().isEmpty()) {
             throw new ValidationException("Имя пользователя не может быть пустым");
@@ -88,6 +116,9 @@ public class UserService {
             throw new ValidationException("Пароли не совпадают");
         }
 
+        if (journal != null) {
+            journal.logChangePassword(currentUser.getUsername(), newPassword);
+        }
         currentUser.setPassword(newPassword);
         System.out.println("Пароль успешно изменен");
     }
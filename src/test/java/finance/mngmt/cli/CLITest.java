@@ -0,0 +1,65 @@
+package finance.mngmt.cli;
+
+import finance.mngmt.repository.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CLITest {
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testCheckpointCompletesWhileConfirmationIsPending() throws Exception {
+        FileStorage storage = new FileStorage(dataDir);
+        ReentrantLock dataLock = new ReentrantLock();
+        PipedOutputStream input = new PipedOutputStream();
+        CLI cli = new CLI(storage, new PipedInputStream(input), dataLock);
+        Checkpointer checkpointer = new Checkpointer(storage,
+                new UserRepository(storage.getWalletRepository()), dataLock);
+        storage.getJournal().logRegister("alice", "secret");
+
+        // Поток CLI держит блокировку и ждет ответа на подтверждение
+        CountDownLatch prompted = new CountDownLatch(1);
+        ExecutorService cliThread = Executors.newSingleThreadExecutor();
+        Future<Boolean> answer = cliThread.submit(() -> {
+            dataLock.lock();
+            try {
+                prompted.countDown();
+                return cli.confirm("Подтвердить перевод?");
+            } finally {
+                dataLock.unlock();
+            }
+        });
+        try {
+            assertTrue(prompted.await(5, TimeUnit.SECONDS));
+            Future<Boolean> checkpoint = ForkJoinPool.commonPool().submit(checkpointer::checkpoint);
+            assertTrue(checkpoint.get(5, TimeUnit.SECONDS));
+            assertFalse(answer.isDone());
+
+            input.write("y\n".getBytes(StandardCharsets.US_ASCII));
+            input.flush();
+            assertTrue(answer.get(5, TimeUnit.SECONDS));
+        } finally {
+            closeQuietly(input);
+            cliThread.shutdownNow();
+            storage.close();
+        }
+    }
+
+    private static void closeQuietly(PipedOutputStream output) {
+        try {
+            output.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
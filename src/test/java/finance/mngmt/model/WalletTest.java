@@ -0,0 +1,266 @@
+package finance.mngmt.model;
+
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalletTest {
+    private Wallet wallet;
+
+    @BeforeEach
+    void setUp() {
+        wallet = new Wallet("testuser");
+    }
+
+    private Transaction transaction(String id, double amount, TransactionType type, String category) {
+        return new Transaction(id, amount, type, category, LocalDateTime.of(2024, 1, 15, 12, 0), "");
+    }
+
+    @Test
+    void testRunningTotalsFollowAddAndRemove() {
+        wallet.addTransaction(transaction("1", 1000.0, TransactionType.INCOME, "Зарплата"));
+        wallet.addTransactions(Arrays.asList(
+                transaction("2", 200.0, TransactionType.EXPENSE, "Еда"),
+                transaction("3", 50.0, TransactionType.EXPENSE, "Еда")));
+
+        assertEquals(1000.0, wallet.getTotalIncome());
+        assertEquals(250.0, wallet.getTotalExpenses());
+        assertEquals(750.0, wallet.getBalance());
+        assertEquals(250.0, wallet.getCategoryTotal("Еда", TransactionType.EXPENSE));
+
+        wallet.removeTransaction("2");
+        assertEquals(950.0, wallet.getBalance());
+        assertEquals(50.0, wallet.getCategoryTotal("Еда", TransactionType.EXPENSE));
+        assertEquals(0.0, wallet.getCategoryTotal("Такси", TransactionType.EXPENSE));
+        assertTrue(wallet.verifyTotals());
+    }
+
+    @Test
+    void testBulkRemovalRollsBackBudgetsAndTotals() {
+        wallet.setBudget("Еда", 1000.0);
+        List<Transaction> batch = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(transaction("food-" + i, 5.0, TransactionType.EXPENSE, "Еда"));
+            ids.add("food-" + i);
+        }
+        wallet.addTransactions(batch.subList(0, 50));
+        wallet.compact();
+        wallet.addTransactions(batch.subList(50, 100));
+        wallet.addTransaction(transaction("keep", 7.0, TransactionType.EXPENSE, "Еда"));
+        assertEquals(507.0, wallet.getBudget("Еда").getCurrentSpending());
+
+        assertEquals(100, wallet.removeTransactions(ids));
+        assertEquals(7.0, wallet.getBudget("Еда").getCurrentSpending());
+        assertEquals(7.0, wallet.getTotalExpenses());
+        assertEquals(1, wallet.getCategoryTransactionCount("Еда"));
+        assertEquals("keep", wallet.getTransactions().get(0).getId());
+        assertFalse(wallet.removeTransaction("food-1"));
+        assertTrue(wallet.verifyTotals());
+
+        // Надгробие в хвосте пропускается представлением, чтение кошелек не меняет
+        wallet.addTransaction(transaction("next", 3.0, TransactionType.EXPENSE, "Еда"));
+        wallet.addTransaction(transaction("last", 2.0, TransactionType.EXPENSE, "Еда"));
+        assertTrue(wallet.removeTransaction("next"));
+        long stamp = wallet.getStamp();
+        List<Transaction> view = wallet.getTransactions();
+        assertEquals(2, view.size());
+        assertEquals("last", view.get(1).getId());
+        assertEquals(stamp, wallet.getStamp());
+    }
+
+    @Test
+    void testGeneratedIdsAreOrderedAndSurviveCompaction() {
+        long previous = TransactionIds.next();
+        for (int i = 0; i < 10_000; i++) {
+            long id = TransactionIds.next();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        String text = TransactionIds.format(previous);
+        assertEquals(TransactionIds.TEXT_LENGTH, text.length());
+        assertEquals(previous, TransactionIds.parse(text));
+        assertEquals(-1, TransactionIds.parse("import-1"));
+
+        Transaction transaction = new Transaction(10.0, TransactionType.EXPENSE, "Еда", "");
+        assertTrue(transaction.hasNumericId());
+        wallet.addTransaction(transaction);
+        wallet.compact();
+        assertEquals(transaction.getId(), wallet.getTransactions().get(0).getId());
+        assertTrue(wallet.removeTransaction(transaction.getId()));
+    }
+
+    @Test
+    void testTotalsAreExactInCents() {
+        for (int i = 0; i < 10; i++) {
+            wallet.addTransaction(transaction("c" + i, 0.1, TransactionType.EXPENSE, "Еда"));
+        }
+
+        assertEquals(100, wallet.getTotalExpensesCents());
+        assertEquals(1.0, wallet.getTotalExpenses());
+        assertEquals(1235, Money.parse("12,345"));
+        assertEquals("-1,234,567.05", Money.format(-123456705));
+    }
+
+    @Test
+    void testCategoryIndexFollowsMutations() {
+        wallet.addCategory("Хобби");
+        wallet.addTransaction(transaction("1", 100.0, TransactionType.EXPENSE, "Хобби"));
+        wallet.addTransaction(transaction("2", 30.0, TransactionType.EXPENSE, "Еда"));
+
+        assertEquals(1, wallet.getTransactionsByCategory("Хобби").size());
+        wallet.removeCategory("Хобби");
+        assertTrue(wallet.getCategories().contains("Хобби"));
+
+        wallet.removeTransaction("1");
+        assertFalse(wallet.hasTransactions("Хобби"));
+        assertTrue(wallet.getTransactionsByCategory("Хобби").isEmpty());
+        wallet.removeCategory("Хобби");
+        assertFalse(wallet.getCategories().contains("Хобби"));
+        assertEquals("2", wallet.getTransactionsByCategory("Еда").get(0).getId());
+    }
+
+    @Test
+    void testSegmentsAndTailShareCategoryIds() {
+        wallet.setBudget("Хобби", 100.0);
+        wallet.addTransaction(transaction("1", 30.0, TransactionType.EXPENSE, "Хобби"));
+        wallet.compact();
+        wallet.addTransaction(transaction("2", 20.0, TransactionType.EXPENSE, "Хобби"));
+
+        int id = wallet.getCategoryDictionary().idOf("Хобби");
+        assertTrue(id >= 0);
+        for (Transaction transaction : wallet.getTransactions()) {
+            assertEquals(id, transaction.getCategoryId());
+        }
+        assertEquals(50.0, wallet.getBudgets().get("Хобби").getCurrentSpending());
+        assertTrue(wallet.verifyTotals());
+    }
+
+    @Test
+    void testTransactionsViewIsReadOnlyAndVersioned() {
+        wallet.addTransaction(transaction("1", 10.0, TransactionType.EXPENSE, "Еда"));
+        List<Transaction> view = wallet.getTransactions();
+
+        assertEquals(1, view.size());
+        assertThrows(UnsupportedOperationException.class, () -> view.remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> wallet.getBudgets().clear());
+
+        wallet.addTransaction(transaction("2", 5.0, TransactionType.EXPENSE, "Еда"));
+        assertThrows(ConcurrentModificationException.class, view::size);
+        assertEquals(2, wallet.getTransactions().size());
+    }
+
+    @Test
+    void testPeriodQueryIsOrderedByDate() {
+        wallet.addTransaction(new Transaction("march", 10.0, TransactionType.EXPENSE, "Еда",
+                LocalDateTime.of(2024, 3, 1, 0, 0), ""));
+        wallet.addTransaction(new Transaction("january", 20.0, TransactionType.EXPENSE, "Еда",
+                LocalDateTime.of(2024, 1, 31, 23, 59), ""));
+        wallet.addTransaction(new Transaction("february", 30.0, TransactionType.EXPENSE, "Еда",
+                LocalDateTime.of(2024, 2, 10, 8, 0), ""));
+
+        List<Transaction> period = wallet.getTransactionsForPeriod(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 2, 29));
+        assertEquals(2, period.size());
+        assertEquals("january", period.get(0).getId());
+        assertEquals("february", period.get(1).getId());
+
+        wallet.removeTransaction("january");
+        assertEquals(1, wallet.getTransactionsForPeriod(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 2, 29)).size());
+        assertEquals(2, wallet.getTransactionsForPeriod(LocalDate.MIN, LocalDate.MAX).size());
+    }
+
+    @Test
+    void testCompactedWalletAnswersLikeLiveOne() {
+        wallet.addTransaction(new Transaction("late", 500.0, TransactionType.INCOME, "Зарплата",
+                LocalDateTime.of(2024, 2, 1, 10, 0), "Аванс"));
+        wallet.addTransaction(new Transaction(UUID.randomUUID().toString(), 120.0, TransactionType.EXPENSE, "Еда",
+                LocalDateTime.of(2024, 1, 5, 19, 30), "Ужин"));
+        String early = UUID.randomUUID().toString();
+        wallet.addTransaction(new Transaction(early, 80.0, TransactionType.EXPENSE, "Такси",
+                LocalDateTime.of(2024, 1, 3, 8, 15), ""));
+
+        wallet.compact();
+
+        assertEquals(0, wallet.getLiveTransactionCount());
+        assertEquals(3, wallet.getTransactionCount());
+        assertEquals(300.0, wallet.getBalance());
+        assertEquals("Ужин", wallet.getTransactionsByCategory("Еда").get(0).getDescription());
+        List<Transaction> january = wallet.getTransactionsForPeriod(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+        assertEquals(early, january.get(0).getId());
+        assertEquals(LocalDateTime.of(2024, 1, 5, 19, 30), january.get(1).getDate());
+
+        wallet.removeTransaction(early);
+        wallet.addTransaction(transaction("new", 10.0, TransactionType.EXPENSE, "Еда"));
+        wallet.compact();
+        assertEquals(1, wallet.getSealedSegments().size());
+        assertEquals(3, wallet.getTransactionCount());
+        assertFalse(wallet.hasTransactions("Такси"));
+        assertEquals(130.0, wallet.getCategoryTotal("Еда", TransactionType.EXPENSE));
+        assertTrue(wallet.verifyTotals());
+    }
+
+    @Test
+    void testPeriodTotalsMatchPeriodQuery() {
+        LocalDateTime[] dates = {
+                LocalDateTime.of(2023, 12, 31, 23, 59), LocalDateTime.of(2024, 1, 1, 0, 0),
+                LocalDateTime.of(2024, 2, 29, 12, 0), LocalDateTime.of(2024, 3, 15, 9, 0),
+                LocalDateTime.of(2024, 12, 31, 18, 0), LocalDateTime.of(2025, 6, 1, 7, 0)};
+        for (int i = 0; i < dates.length; i++) {
+            wallet.addTransaction(new Transaction("old-" + i, 10.0 + i, TransactionType.EXPENSE, "Еда", dates[i], ""));
+            wallet.addTransaction(new Transaction("inc-" + i, 100.5, TransactionType.INCOME, "Зарплата", dates[i], ""));
+        }
+        wallet.compact();
+        wallet.removeTransaction("old-2");
+        wallet.addTransaction(new Transaction("new", 7.25, TransactionType.EXPENSE, "Такси",
+                LocalDateTime.of(2024, 3, 1, 0, 0), ""));
+
+        LocalDate[][] ranges = {
+                {LocalDate.MIN, LocalDate.MAX}, {LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31)},
+                {LocalDate.of(2024, 2, 29), LocalDate.of(2024, 3, 1)}, {LocalDate.of(2023, 12, 31), LocalDate.of(2025, 5, 31)},
+                {LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31)}, {LocalDate.of(2025, 1, 1), LocalDate.of(2024, 1, 1)}};
+        for (LocalDate[] range : ranges) {
+            PeriodTotals totals = wallet.getPeriodTotals(range[0], range[1]);
+            List<Transaction> period = range[0].isAfter(range[1])
+                    ? List.of() : wallet.getTransactionsForPeriod(range[0], range[1]);
+            long expense = period.stream().filter(t -> t.getType() == TransactionType.EXPENSE)
+                    .mapToLong(Transaction::getAmountCents).sum();
+            assertEquals(period.size(), totals.getTransactionCount());
+            assertEquals(expense, totals.getTotalCents(TransactionType.EXPENSE));
+        }
+        assertEquals(725, wallet.getPeriodTotals(LocalDate.MIN, LocalDate.MAX)
+                .getCategoryTotalCents("Такси", TransactionType.EXPENSE));
+        assertTrue(wallet.verifyTotals());
+    }
+
+    @Test
+    void testTransactionStatsCoverSegmentsAndTail() {
+        for (int i = 1; i <= 8; i++) {
+            wallet.addTransaction(new Transaction("seg-" + i, i * 10.0, TransactionType.EXPENSE, "Еда",
+                    LocalDateTime.of(2024, 1, i, 12, 0), ""));
+        }
+        wallet.compact();
+        wallet.addTransaction(new Transaction("tail", 55.0, TransactionType.EXPENSE, "Еда",
+                LocalDateTime.of(2024, 1, 20, 12, 0), ""));
+        wallet.addTransaction(new Transaction("other", 1.5, TransactionType.EXPENSE, "Такси",
+                LocalDateTime.of(2024, 2, 1, 12, 0), ""));
+
+        TransactionStats stats = wallet.getTransactionStats(LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 31));
+        assertEquals(8, stats.getCount("Еда", TransactionType.EXPENSE));
+        assertEquals(2000, stats.getMinCents("Еда", TransactionType.EXPENSE));
+        assertEquals(8000, stats.getMaxCents("Еда", TransactionType.EXPENSE));
+        assertEquals(0, stats.getCount("Такси", TransactionType.EXPENSE));
+        List<Transaction> largest = stats.getLargestExpenses();
+        assertEquals(TransactionStats.LARGEST_EXPENSES, largest.size());
+        assertEquals("seg-8", largest.get(0).getId());
+        assertEquals("tail", largest.get(3).getId());
+        assertEquals("Еда", largest.get(0).getCategory());
+    }
+}
@@ -0,0 +1,449 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileStorageTest {
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testJournalReplay() {
+        FileStorage storage = new FileStorage(dataDir);
+        Journal journal = storage.getJournal();
+
+        Transaction income = new Transaction(1000.0, TransactionType.INCOME, "Зарплата", "Оклад");
+        journal.logRegister("alice", "secret");
+        journal.logTransaction("alice", income);
+        journal.logSetBudget("alice", "Еда", 300000);
+        journal.logTransaction("alice", new Transaction(200.0, TransactionType.EXPENSE, "Еда", ""));
+        Transaction mistake = new Transaction(50.0, TransactionType.EXPENSE, "Еда", "");
+        journal.logTransaction("alice", mistake);
+        journal.logRemoveTransactions("alice", List.of(mistake.getId()));
+        storage.close();
+
+        Map<String, User> users = new FileStorage(dataDir).loadUsers();
+
+        User alice = users.get("alice");
+        assertNotNull(alice);
+        assertTrue(alice.checkPassword("secret"));
+        assertEquals(2, alice.getWallet().getTransactions().size());
+        assertEquals(income.getId(), alice.getWallet().getTransactions().get(0).getId());
+        assertEquals(800.0, alice.getWallet().getBalance());
+        assertEquals(200.0, alice.getWallet().getBudgets().get("Еда").getCurrentSpending());
+    }
+
+    @Test
+    void testOldJournalRecordsWithDoubleAmountsAreReplayed() throws IOException {
+        // Записи версий до перехода на копейки: суммы записаны как double
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(frames);
+        writeFrame(out, 1, Journal.REGISTER_USER, "olga", data -> data.writeUTF("secret"));
+        writeFrame(out, 2, Journal.SET_BUDGET, "olga", data -> {
+            data.writeUTF("Еда");
+            data.writeDouble(500.0);
+        });
+        writeFrame(out, 3, Journal.ADD_TRANSACTION, "olga", data -> {
+            data.writeUTF("old-1");
+            data.writeDouble(0.1 + 0.2);
+            data.writeByte(TransactionType.EXPENSE.ordinal());
+            data.writeUTF("Еда");
+            data.writeLong(SnapshotCodec.toEpochMilli(LocalDateTime.of(2024, 6, 1, 12, 0)));
+            data.writeUTF("");
+        });
+        Files.write(dataDir.resolve("journal.log"), frames.toByteArray());
+
+        FileStorage storage = new FileStorage(dataDir);
+        Wallet wallet = storage.loadUsers().get("olga").getWallet();
+        assertEquals(30, wallet.getTotalExpensesCents());
+        assertEquals(50000, wallet.getBudget("Еда").getLimitCents());
+        assertEquals(30, wallet.getBudget("Еда").getCurrentSpendingCents());
+
+        // Новые записи идут в копейках и читаются вместе со старыми
+        storage.getJournal().logEditBudget("olga", "Еда", 60050);
+        storage.close();
+        Wallet replayed = new FileStorage(dataDir).loadUsers().get("olga").getWallet();
+        assertEquals(60050, replayed.getBudget("Еда").getLimitCents());
+        assertEquals(30, replayed.getTotalExpensesCents());
+    }
+
+    private interface RecordData {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+    private static void writeFrame(DataOutputStream out, long seq, byte type, String username,
+                                   RecordData body) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeLong(seq);
+        data.writeByte(type);
+        data.writeUTF(username);
+        body.write(data);
+        data.flush();
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        out.writeInt(payload.size());
+        out.writeInt((int) crc.getValue());
+        out.write(payload.toByteArray());
+    }
+
+    @Test
+    void testTornJournalTailIsDiscarded() throws IOException {
+        FileStorage storage = new FileStorage(dataDir);
+        storage.getJournal().logRegister("bob", "secret");
+        storage.getJournal().logTransaction("bob",
+                new Transaction(50.0, TransactionType.INCOME, "Подарок", ""));
+        storage.close();
+
+        // Имитируем сбой посреди записи: обрезаем последние байты
+        Path journalFile = dataDir.resolve("journal.log");
+        byte[] bytes = Files.readAllBytes(journalFile);
+        Files.write(journalFile, Arrays.copyOf(bytes, bytes.length - 3));
+
+        FileStorage reopened = new FileStorage(dataDir);
+        Map<String, User> users = reopened.loadUsers();
+        assertTrue(users.containsKey("bob"));
+        assertFalse(users.get("bob").isWalletLoaded());
+
+        // После восстановления журнал снова пригоден для дозаписи
+        reopened.getJournal().logTransaction("bob",
+                new Transaction(70.0, TransactionType.INCOME, "Подарок", ""));
+        reopened.close();
+        assertEquals(70.0, new FileStorage(dataDir).loadUsers().get("bob").getWallet().getBalance());
+    }
+
+    @Test
+    void testJournalIsReplayedOnlyOverOlderWallets() throws IOException {
+        FileStorage storage = new FileStorage(dataDir);
+        Journal journal = storage.getJournal();
+        journal.logRegister("alice", "secret");
+        journal.logRegister("bob", "secret");
+        Map<String, User> users = storage.loadUsers();
+
+        // Кошелек alice сохранен после записи в журнал, кошелек bob — нет
+        Wallet aliceWallet = new UserRepository(storage.getWalletRepository()).loadWallet(users.get("alice"));
+        Transaction income = new Transaction(100.0, TransactionType.INCOME, "Подарок", "");
+        aliceWallet.addTransaction(income);
+        journal.logTransaction("alice", income);
+        journal.logTransaction("bob", new Transaction(30.0, TransactionType.INCOME, "Подарок", ""));
+        storage.getWalletRepository().save(aliceWallet, journal.getLastSeq());
+        storage.close();
+
+        Map<String, User> reloaded = new FileStorage(dataDir).loadUsers();
+        assertEquals(100.0, reloaded.get("alice").getWallet().getBalance());
+        assertEquals(30.0, reloaded.get("bob").getWallet().getBalance());
+    }
+
+    @Test
+    void testSnapshotRoundTrip() {
+        User alice = new User("alice", "secret");
+        Wallet wallet = alice.getWallet();
+        wallet.addCategory("Хобби");
+        wallet.removeCategory("Такси");
+        wallet.setBudget("Еда", 1000.0);
+        wallet.addTransaction(new Transaction(5000.0, TransactionType.INCOME, "Зарплата", "Оклад"));
+        wallet.addTransaction(new Transaction(300.5, TransactionType.EXPENSE, "Еда", "Продукты"));
+        wallet.addTransaction(new Transaction("import-1", 42.0, TransactionType.EXPENSE, "Хобби",
+                LocalDateTime.of(2024, 1, 15, 10, 30), ""));
+
+        FileStorage storage = new FileStorage(dataDir);
+        storage.saveUsers(Map.of("alice", alice, "bob", new User("bob", "secret")));
+        storage.close();
+        assertFalse(Files.exists(dataDir.resolve("journal.log")));
+
+        FileStorage reopened = new FileStorage(dataDir);
+        Map<String, User> users = reopened.loadUsers();
+        User loaded = users.get("alice");
+        // Кошельки читаются только по требованию
+        assertFalse(loaded.isWalletLoaded());
+        assertFalse(users.get("bob").isWalletLoaded());
+
+        Wallet loadedWallet = new UserRepository(reopened.getWalletRepository()).loadWallet(loaded);
+        assertFalse(users.get("bob").isWalletLoaded());
+        assertTrue(loaded.checkPassword("secret"));
+        assertEquals(wallet.getCategories(), loadedWallet.getCategories());
+        assertEquals(wallet.getBalance(), loadedWallet.getBalance());
+        assertEquals(300.5, loadedWallet.getBudgets().get("Еда").getCurrentSpending());
+
+        Transaction imported = loadedWallet.getTransactions().get(2);
+        assertEquals("import-1", imported.getId());
+        assertEquals(LocalDateTime.of(2024, 1, 15, 10, 30), imported.getDate());
+        assertEquals(wallet.getTransactions().get(0).getId(), loadedWallet.getTransactions().get(0).getId());
+    }
+
+    @Test
+    void testOldTransactionsAreSealedIntoMappedSegments() throws IOException {
+        WalletRepository wallets = new WalletRepository(dataDir);
+        wallets.enableSegments(30, 2);
+
+        Wallet wallet = new Wallet("alice");
+        wallet.addTransaction(new Transaction("old-1", 1000.0, TransactionType.INCOME, "Зарплата",
+                LocalDateTime.of(2020, 3, 1, 9, 0), "Оклад"));
+        String groceries = UUID.randomUUID().toString();
+        wallet.addTransaction(new Transaction(groceries, 250.0, TransactionType.EXPENSE,
+                "Еда", LocalDateTime.of(2020, 3, 2, 18, 0), "Продукты"));
+        wallet.addTransaction(new Transaction(40.0, TransactionType.EXPENSE, "Еда", "Сегодня"));
+        wallets.save(wallet, 1);
+
+        assertEquals(1, wallet.getSealedSegments().size());
+        assertEquals(1, wallet.getLiveTransactionCount());
+
+        Wallet loaded = wallets.load("alice").getWallet();
+        assertEquals(1, loaded.getSealedSegments().size());
+        assertEquals(3, loaded.getTransactionCount());
+        assertEquals(710.0, loaded.getBalance());
+        assertEquals(290.0, loaded.getTotalExpenses());
+        assertEquals(2, loaded.getTransactionsByCategory("Еда").size());
+        assertEquals("Оклад", loaded.getTransactionsByCategory("Зарплата").get(0).getDescription());
+        assertEquals(1, loaded.getTransactionsForPeriod(LocalDate.of(2020, 3, 2), LocalDate.of(2020, 3, 31)).size());
+        assertEquals(3, loaded.getTransactionsForPeriod(LocalDate.of(2020, 1, 1), LocalDate.now()).size());
+
+        // Поиск по id в сегменте идет по дате транзакции
+        assertTrue(loaded.containsTransaction(groceries, LocalDateTime.of(2020, 3, 2, 18, 0)));
+        assertFalse(loaded.containsTransaction(groceries, LocalDateTime.of(2020, 3, 1, 9, 0)));
+
+        // Категорию с запечатанными транзакциями удалить нельзя
+        loaded.removeCategory("Зарплата");
+        assertTrue(loaded.getCategories().contains("Зарплата"));
+
+        // Запечатанная строка только отмечается удаленной: сегмент остается, хвост не растет
+        assertTrue(loaded.removeTransaction("old-1"));
+        assertEquals(1, SnapshotCodec.mappedSegments(loaded).size());
+        assertEquals(1, loaded.getLiveTransactionCount());
+        assertEquals(2, loaded.getTransactionCount());
+        assertEquals(-290.0, loaded.getBalance());
+        assertEquals(0, loaded.getTransactionsByCategory("Зарплата").size());
+        assertFalse(loaded.containsTransaction("old-1", LocalDateTime.of(2020, 3, 1, 9, 0)));
+        assertTrue(loaded.verifyTotals());
+
+        // Отметки сохраняются вместе с кошельком
+        wallets.save(loaded, 2);
+        Wallet reloaded = wallets.load("alice").getWallet();
+        assertEquals(1, SnapshotCodec.mappedSegments(reloaded).size());
+        assertEquals(2, reloaded.getTransactionCount());
+        assertEquals(-290.0, reloaded.getBalance());
+        assertEquals(groceries, reloaded.getTransactions().get(0).getId());
+        long stamp = reloaded.getStamp();
+        assertFalse(reloaded.removeTransaction("old-1"));
+        assertEquals(stamp, reloaded.getStamp());
+        assertTrue(reloaded.verifyTotals());
+
+        // Когда удалено больше половины строк, сегмент уплотняется
+        assertTrue(reloaded.removeTransaction(groceries));
+        assertTrue(reloaded.getSealedSegments().isEmpty());
+        assertEquals(-40.0, reloaded.getBalance());
+        assertTrue(reloaded.verifyTotals());
+    }
+
+    @Test
+    void testCompactedTransactionsRoundTripAndSeal() throws IOException {
+        WalletRepository wallets = new WalletRepository(dataDir);
+        wallets.enableCompaction(2);
+
+        Wallet wallet = new Wallet("alice");
+        wallet.addTransaction(new Transaction("import-1", 1000.0, TransactionType.INCOME, "Зарплата",
+                LocalDateTime.of(2020, 3, 1, 9, 0), "Оклад"));
+        wallet.addTransaction(new Transaction(UUID.randomUUID().toString(), 250.0, TransactionType.EXPENSE,
+                "Еда", LocalDateTime.of(2020, 3, 2, 18, 0), "Продукты"));
+        wallet.addTransaction(new Transaction(40.0, TransactionType.EXPENSE, "Еда", "Сегодня"));
+        wallets.save(wallet, 1);
+        assertEquals(0, wallet.getLiveTransactionCount());
+
+        Wallet loaded = wallets.load("alice").getWallet();
+        assertEquals(0, loaded.getLiveTransactionCount());
+        assertEquals(3, loaded.getTransactionCount());
+        assertEquals(710.0, loaded.getBalance());
+        assertEquals("import-1", loaded.getTransactions().get(0).getId());
+
+        // Старые строки сжатого блока уходят в файл сегмента, новые остаются в памяти
+        wallets.enableSegments(30, 2);
+        wallets.save(loaded, 2);
+        assertEquals(2, loaded.getSealedSegments().size());
+        assertEquals(1, SnapshotCodec.mappedSegments(loaded).size());
+        Wallet reloaded = wallets.load("alice").getWallet();
+        assertEquals(3, reloaded.getTransactionCount());
+        assertEquals(290.0, reloaded.getTotalExpenses());
+        assertTrue(reloaded.verifyTotals());
+    }
+
+    @Test
+    void testChunkedCsvImportKeepsOrderAndIsJournaled() throws IOException {
+        System.setProperty("finance.import.chunkRows", "7");
+        try {
+            FileStorage storage = new FileStorage(dataDir);
+            storage.getJournal().logRegister("dave", "secret");
+            User dave = new User("dave", "secret");
+
+            StringBuilder csv = new StringBuilder(CsvImporter.TRANSACTIONS_HEADER).append('\n');
+            for (int i = 0; i < 100; i++) {
+                csv.append(i % 2 == 0 ? "Доход" : "Расход").append(";01.02.2024 10:15;Еда;")
+                        .append(i).append(",50;").append(i % 3 == 0 ? "" : "строка " + i).append('\n');
+            }
+            csv.append("мусор без полей\n");
+            Files.write(dataDir.resolve("exports").resolve("dave.csv"),
+                    csv.toString().getBytes(StandardCharsets.UTF_8));
+
+            storage.importFromCSV(dave, "dave");
+            assertEquals(100, dave.getWallet().getTransactionCount());
+            assertEquals(99.5, dave.getWallet().getTransactions().get(99).getAmount());
+            assertEquals("", dave.getWallet().getTransactions().get(3).getDescription());
+            assertEquals(101, storage.getJournal().getLastSeq());
+            storage.close();
+
+            User replayed = new FileStorage(dataDir).loadUsers().get("dave");
+            assertEquals(100, replayed.getWallet().getTransactionCount());
+            assertEquals(dave.getWallet().getBalance(), replayed.getWallet().getBalance());
+        } finally {
+            System.clearProperty("finance.import.chunkRows");
+        }
+    }
+
+    @Test
+    void testCompressedCsvExportRoundTrip() {
+        FileStorage storage = new FileStorage(dataDir);
+        User erin = new User("erin", "secret");
+        erin.getWallet().setBudget("Еда", 300.0);
+        erin.getWallet().addTransaction(new Transaction(UUID.randomUUID().toString(), 1234.567,
+                TransactionType.INCOME, "Зарплата", LocalDateTime.of(2024, 3, 5, 9, 7), "Оклад 😀"));
+        erin.getWallet().addTransaction(new Transaction(UUID.randomUUID().toString(), 0.05,
+                TransactionType.EXPENSE, "Еда", LocalDateTime.of(2024, 12, 31, 23, 59), ""));
+
+        storage.exportToCSV(erin, "erin.gz");
+        assertTrue(Files.exists(dataDir.resolve("exports").resolve("erin.csv.gz")));
+
+        User copy = new User("erin", "secret");
+        storage.importFromCSV(copy, "erin.csv.gz");
+        assertEquals(2, copy.getWallet().getTransactionCount());
+        Transaction income = copy.getWallet().getTransactions().get(0);
+        assertEquals(1234.57, income.getAmount());
+        assertEquals("05.03.2024 09:07", income.getFormattedDate());
+        assertEquals("Оклад 😀", income.getDescription());
+        assertEquals(0.05, copy.getWallet().getTransactions().get(1).getAmount());
+        assertEquals(300.0, copy.getWallet().getBudget("Еда").getLimit());
+        assertEquals(0.05, copy.getWallet().getBudget("Еда").getCurrentSpending());
+        storage.close();
+    }
+
+    @Test
+    void testIncrementalExportWritesOnlyNewTransactions() throws IOException {
+        FileStorage storage = new FileStorage(dataDir);
+        User frank = new User("frank", "secret");
+        LocalDateTime minute = LocalDateTime.of(2024, 6, 1, 12, 0);
+        frank.getWallet().addTransaction(new Transaction("a", 10.0, TransactionType.INCOME, "Подарок", minute, ""));
+        frank.getWallet().addTransaction(new Transaction("b", 20.0, TransactionType.INCOME, "Подарок", minute, ""));
+        storage.exportIncremental(frank);
+
+        // Та же минута, но другая транзакция, и одна более поздняя
+        frank.getWallet().addTransaction(new Transaction("c", 30.0, TransactionType.INCOME, "Подарок", minute, ""));
+        frank.getWallet().addTransaction(new Transaction("d", 40.0, TransactionType.EXPENSE, "Еда",
+                minute.plusMinutes(5), ""));
+        storage.exportIncremental(frank);
+        storage.exportIncremental(frank);
+
+        Path file = dataDir.resolve("exports").resolve("incremental").resolve("frank")
+                .resolve(LocalDate.now() + ".csv");
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(5, lines.size());
+        assertEquals(CsvImporter.TRANSACTIONS_HEADER, lines.get(0));
+        assertTrue(lines.get(3).contains("30"));
+        assertTrue(lines.get(4).startsWith("Расход;01.06.2024 12:05"));
+
+        // Транзакция задним числом новее отметки по id и тоже выгружается, в том числе в JSON
+        frank.getWallet().addTransaction(Transaction.ofCents(TransactionIds.next(), 5000, TransactionType.EXPENSE,
+                "Еда", minute.minusDays(30), "Задним числом"));
+        storage.exportIncremental(frank);
+        lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(5).contains("Задним числом"));
+
+        storage.exportIncremental(frank, true);
+        storage.exportIncremental(frank, true);
+        List<String> json = Files.readAllLines(file.resolveSibling(LocalDate.now() + ".jsonl"), StandardCharsets.UTF_8);
+        assertEquals(5, json.size());
+        assertTrue(json.get(4).contains("\"amount\":50.00"));
+        storage.close();
+    }
+
+    @Test
+    void testCheckpointWritesOnlyWhenDirty() {
+        FileStorage storage = new FileStorage(dataDir);
+        UserRepository userRepository = new UserRepository(storage.getWalletRepository());
+        Checkpointer checkpointer = new Checkpointer(storage, userRepository, new ReentrantLock());
+        assertFalse(checkpointer.checkpoint());
+
+        User grace = new User("grace", "secret");
+        userRepository.addUser(grace);
+        storage.getJournal().logRegister("grace", "secret");
+        Transaction income = new Transaction(500.0, TransactionType.INCOME, "Зарплата", "");
+        grace.getWallet().addTransaction(income);
+        storage.getJournal().logTransaction("grace", income);
+
+        assertTrue(checkpointer.checkpoint());
+        assertFalse(checkpointer.isDirty());
+        assertTrue(checkpointer.getLastSizeBytes() > 0);
+        assertEquals(1, checkpointer.getLastWalletCount());
+        assertFalse(Files.exists(dataDir.resolve("journal.log")));
+        assertFalse(checkpointer.checkpoint());
+
+        // Изменение после точки остается в журнале и восстанавливается поверх снимка
+        Transaction expense = new Transaction(120.0, TransactionType.EXPENSE, "Еда", "");
+        grace.getWallet().addTransaction(expense);
+        storage.getJournal().logTransaction("grace", expense);
+        storage.close();
+
+        User restored = new FileStorage(dataDir).loadUsers().get("grace");
+        assertEquals(380.0, restored.getWallet().getBalance());
+    }
+
+    @Test
+    void testJsonRoundTripKeepsIdsBudgetsAndCategories() {
+        FileStorage storage = new FileStorage(dataDir);
+        User heidi = new User("heidi", "secret");
+        Wallet wallet = heidi.getWallet();
+        wallet.addCategory("Хобби");
+        wallet.setBudget("Еда", 300.0);
+        Transaction income = new Transaction(1000.123, TransactionType.INCOME, "Зарплата", "Оклад \"май\"");
+        wallet.addTransaction(income);
+        wallet.addTransaction(new Transaction(120.0, TransactionType.EXPENSE, "Еда", ""));
+        wallet.getBudgets().get("Еда").setWarningThreshold(0.5);
+
+        storage.exportToJSON(heidi, "heidi.gz");
+
+        storage.getJournal().logRegister("ivan", "secret");
+        User ivan = new User("ivan", "secret");
+        storage.importFromJSON(ivan, "heidi.json.gz");
+        storage.importFromJSON(ivan, "heidi.json.gz");
+
+        Wallet copy = ivan.getWallet();
+        assertEquals(2, copy.getTransactionCount());
+        assertEquals(income.getId(), copy.getTransactions().get(0).getId());
+        assertEquals(income.getDate(), copy.getTransactions().get(0).getDate());
+        assertEquals(1000.12, copy.getTransactions().get(0).getAmount());
+        assertTrue(copy.getCategories().contains("Хобби"));
+        assertEquals(120.0, copy.getBudgets().get("Еда").getCurrentSpending());
+        assertEquals(0.5, copy.getBudgets().get("Еда").getWarningThreshold());
+        storage.close();
+
+        Wallet replayed = new FileStorage(dataDir).loadUsers().get("ivan").getWallet();
+        assertEquals(2, replayed.getTransactionCount());
+        assertTrue(replayed.getCategories().contains("Хобби"));
+        assertEquals(120.0, replayed.getBudgets().get("Еда").getCurrentSpending());
+    }
+}
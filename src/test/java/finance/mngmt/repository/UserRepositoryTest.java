@@ -0,0 +1,88 @@
+package finance.mngmt.repository;
+
+import finance.mngmt.model.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserRepositoryTest {
+    @TempDir
+    Path walletsDir;
+
+    private WalletRepository walletRepository;
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        walletRepository = new WalletRepository(walletsDir);
+        userRepository = new UserRepository(walletRepository, 2, 0);
+    }
+
+    @Test
+    void testLeastRecentlyUsedWalletIsEvictedToDisk() {
+        User alice = new User("alice", "1234");
+        User bob = new User("bob", "1234");
+        alice.getWallet().addTransaction(new Transaction(100.0, TransactionType.INCOME, "Подарок", ""));
+        userRepository.addUser(alice);
+        userRepository.addUser(bob);
+
+        userRepository.loadWallet(alice);
+        userRepository.addUser(new User("carol", "1234"));
+
+        assertFalse(bob.isWalletLoaded());
+        assertTrue(alice.isWalletLoaded());
+        assertTrue(walletRepository.exists("bob"));
+        assertEquals(1, userRepository.getCacheEvictions());
+        assertEquals(2, userRepository.getResidentWalletCount());
+
+        // Повторное обращение поднимает кошелек с диска, вытесняя самый старый
+        userRepository.loadWallet(bob);
+        userRepository.loadWallet(userRepository.getUser("carol"));
+        assertFalse(alice.isWalletLoaded());
+        assertEquals(100.0, userRepository.loadWallet(alice).getBalance());
+        assertEquals(2, userRepository.getCacheMisses());
+        assertEquals(2, userRepository.getCacheHits());
+        assertEquals(3, userRepository.getCacheEvictions());
+    }
+
+    @Test
+    void testPinnedWalletIsNotEvicted() {
+        User alice = new User("alice", "1234");
+        userRepository.addUser(alice);
+        userRepository.pinWallet("alice");
+
+        userRepository.addUser(new User("bob", "1234"));
+        userRepository.addUser(new User("carol", "1234"));
+        userRepository.addUser(new User("dave", "1234"));
+
+        assertTrue(alice.isWalletLoaded());
+        assertEquals(2, userRepository.getResidentWalletCount());
+    }
+
+    @Test
+    void testSummaryOfEvictedWalletIsReadWithoutLoading() throws Exception {
+        User alice = new User("alice", "1234");
+        alice.getWallet().setBudget("Еда", 100.0);
+        alice.getWallet().addTransaction(new Transaction(500.0, TransactionType.INCOME, "Зарплата", ""));
+        alice.getWallet().addTransaction(new Transaction(120.5, TransactionType.EXPENSE, "Еда", ""));
+        userRepository.addUser(alice);
+        userRepository.addUser(new User("bob", "1234"));
+        userRepository.addUser(new User("carol", "1234"));
+        assertFalse(alice.isWalletLoaded());
+
+        WalletSummary summary = userRepository.getWalletSummary(alice);
+        assertFalse(alice.isWalletLoaded());
+        assertEquals(50000, summary.getTotalIncomeCents());
+        assertEquals(12050, summary.getTotalExpenseCents());
+        BudgetStatus budget = summary.getBudgets().get(0);
+        assertTrue(budget.isExceeded());
+        assertEquals(12050, budget.getPeriodSpentCents());
+
+        WalletSummary loaded = WalletSummary.of(userRepository.loadWallet(alice));
+        assertEquals(loaded.getTotalExpenseCents(), summary.getTotalExpenseCents());
+        assertEquals(loaded.getCategoryCount(), summary.getCategoryCount());
+    }
+}
@@ -0,0 +1,60 @@
+package finance.mngmt.service;
+
+import finance.mngmt.exception.AuthorizationException;
+import finance.mngmt.model.*;
+import finance.mngmt.repository.UserRepository;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdminAnalyticsServiceTest {
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = new UserRepository();
+        User alice = new User("alice", "1234");
+        alice.getWallet().addTransaction(new Transaction(1000.0, TransactionType.INCOME, "Зарплата", ""));
+        alice.getWallet().addTransaction(new Transaction(300.0, TransactionType.EXPENSE, "Еда", ""));
+        userRepository.addUser(alice);
+    }
+
+    @Test
+    void testAdminStatsAreDisabledWithoutConfiguredAdmin() {
+        UserService userService = new UserService(userRepository);
+        AdminAnalyticsService analytics = new AdminAnalyticsService(userService, userRepository);
+
+        userService.register("admin", "1234", "1234");
+        userService.login("admin", "1234");
+        assertThrows(AuthorizationException.class, analytics::getAdminReport);
+    }
+
+    @Test
+    void testConfiguredAdminIsCreatedByFirstRegistration() {
+        UserService userService = new UserService(userRepository, null, "root");
+        AdminAnalyticsService analytics = new AdminAnalyticsService(userService, userRepository);
+
+        userService.login("alice", "1234");
+        assertThrows(AuthorizationException.class, analytics::getAdminReport);
+        userService.logout();
+
+        // Свежая установка: администратора еще нет, его создает регистрация, повторная — отклоняется
+        userService.register("root", "secret", "secret");
+        assertThrows(AuthorizationException.class, () -> userService.register("root", "1234", "1234"));
+        userService.login("root", "secret");
+        assertEquals(2, analytics.getAdminReport().getWalletCount());
+    }
+
+    @Test
+    void testExistingAdminAccountGetsReport() {
+        userRepository.addUser(new User("root", "secret"));
+        UserService userService = new UserService(userRepository, null, "root");
+        AdminAnalyticsService analytics = new AdminAnalyticsService(userService, userRepository);
+
+        userService.login("root", "secret");
+        AdminReport report = analytics.getAdminReport();
+        assertEquals(2, report.getWalletCount());
+        assertEquals(100000, report.getTotalIncomeCents());
+        assertEquals(30000, report.getExpensesByCategory().getCents("Еда"));
+    }
+}
@@ -1,9 +1,16 @@
 package finance.mngmt.service;
 
 import finance.mngmt.model.*;
+import finance.mngmt.repository.Journal;
 import finance.mngmt.repository.UserRepository;
 import finance.mngmt.exception.*;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,7 +36,7 @@ public class FinanceServiceTest {
 
     @Test
     void testAddIncome() {
-        financeService.addIncome(1000.0, "Зарплата", "Оклад");
+        financeService.addIncome(100000, "Зарплата", "Оклад");
 
         assertEquals(1, testUser.getWallet().getTransactions().size());
         Transaction transaction = testUser.getWallet().getTransactions().get(0);
@@ -43,7 +50,7 @@ public class FinanceServiceTest {
 
     @Test
     void testAddExpense() {
-        financeService.addExpense(500.0, "Еда", "Обед");
+        financeService.addExpense(50000, "Еда", "Обед");
 
         assertEquals(1, testUser.getWallet().getTransactions().size());
         Transaction transaction = testUser.getWallet().getTransactions().get(0);
@@ -58,7 +65,7 @@ public class FinanceServiceTest {
     @Test
     void testAddIncomeWithNegativeAmount() {
         assertThrows(ValidationException.class, () -> {
-            financeService.addIncome(-100.0, "Категория", "");
+            financeService.addIncome(-10000, "Категория", "");
         });
     }
 
@@ -84,7 +91,7 @@ public class FinanceServiceTest {
 
     @Test
     void testSetBudget() {
-        financeService.setBudget("Еда", 5000.0);
+        financeService.setBudget("Еда", 500000);
         assertTrue(testUser.getWallet().getBudgets().containsKey("Еда"));
         assertEquals(5000.0, testUser.getWallet().getBudgets().get("Еда").getLimit());
     }
@@ -92,14 +99,14 @@ public class FinanceServiceTest {
     @Test
     void testSetBudgetWithNegativeLimit() {
         assertThrows(ValidationException.class, () -> {
-            financeService.setBudget("Еда", -100.0);
+            financeService.setBudget("Еда", -10000);
         });
     }
 
     @Test
     void testEditBudget() {
-        financeService.setBudget("Еда", 5000.0);
-        financeService.editBudget("Еда", 6000.0);
+        financeService.setBudget("Еда", 500000);
+        financeService.editBudget("Еда", 600000);
 
         assertEquals(6000.0, testUser.getWallet().getBudgets().get("Еда").getLimit());
     }
@@ -107,7 +114,68 @@ public class FinanceServiceTest {
     @Test
     void testEditNonExistentBudget() {
         assertThrows(CategoryNotFoundException.class, () -> {
-            financeService.editBudget("Несуществующая", 1000.0);
+            financeService.editBudget("Несуществующая", 100000);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testStatisticsAreTyped() {
+        financeService.addIncome(100000, "Зарплата", "Оклад");
+        financeService.addExpense(25050, "Еда", "Обед");
+        financeService.addExpense(4950, "Еда", "Кофе");
+
+        PeriodStatistics stats = financeService.getStatistics(LocalDate.now(), LocalDate.now());
+        assertEquals(3, stats.getTransactionCount());
+        assertEquals(30000, stats.getExpenseCents());
+        assertEquals(700.0, stats.getBalance());
+        assertEquals(1, stats.getExpensesByCategory().size());
+        assertEquals(30000, stats.getExpensesByCategory().getCents("Еда"));
+    }
+
+    @Test
+    void testStatisticsCacheIsInvalidatedByChanges() {
+        ResultCache cache = new ResultCache(2);
+        FinanceService cached = new FinanceService(userService, alertService, null, cache);
+        cached.addExpense(10000, "Еда", "Обед");
+        cached.setBudget("Еда", 100000);
+
+        PeriodStatistics first = cached.getStatistics(LocalDate.now(), LocalDate.now());
+        assertSame(first, cached.getStatistics(LocalDate.now(), LocalDate.now()));
+        assertEquals(1, cache.getHits());
+
+        cached.addExpense(5000, "Еда", "Кофе");
+        assertEquals(15000, cached.getStatistics(LocalDate.now(), LocalDate.now()).getExpenseCents());
+
+        List<String> categories = List.of("Еда");
+        assertEquals(1000.0, cached.getCategoryStatistics(categories).get("Еда").getBudget().getLimit());
+        cached.editBudget("Еда", 200000);
+        assertEquals(2000.0, cached.getCategoryStatistics(categories).get("Еда").getBudget().getLimit());
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getEvictions() > 0);
+        assertEquals(20.0, cache.getHitRate());
+
+        // Повторный отчет берется из кэша, но время формирования у него свое
+        StatisticsService statistics = new StatisticsService(cache);
+        FinancialReport report = statistics.generateFullReport(testUser.getWallet(), LocalDate.now(), LocalDate.now());
+        FinancialReport repeated = statistics.generateFullReport(testUser.getWallet(), LocalDate.now(), LocalDate.now());
+        assertNotSame(report, repeated);
+        assertSame(report.getAnalysis(), repeated.getAnalysis());
+        assertEquals(5000, report.getAnalysis().getSmallestExpenses().getCents("Еда"));
+        assertEquals(10000, report.getAnalysis().getLargestExpensesByCategory().getCents("Еда"));
+        assertFalse(repeated.getGeneratedAt().isBefore(report.getGeneratedAt()));
+    }
+
+    @Test
+    void testFailedJournalWriteRejectsOperation(@TempDir Path dir) {
+        // Каталог вместо файла: любая запись в журнал завершится ошибкой
+        Journal journal = new Journal(dir, Journal.SyncPolicy.ALWAYS, 1, 0);
+        FinanceService journaled = new FinanceService(userService, alertService, journal);
+
+        assertThrows(UncheckedIOException.class, () -> journaled.addIncome(100000, "Зарплата", ""));
+        assertThrows(UncheckedIOException.class, () -> journaled.setBudget("Еда", 50000));
+        assertEquals(0, testUser.getWallet().getTransactions().size());
+        assertTrue(testUser.getWallet().getBudgets().isEmpty());
+        assertEquals(0, journal.getLastSeq());
+    }
+}